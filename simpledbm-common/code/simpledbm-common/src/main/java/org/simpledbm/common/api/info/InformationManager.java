@@ -55,6 +55,15 @@ public interface InformationManager {
      */
     LongStatistic newLongStatistic(String name);
 
+    /**
+     * Allocates a new LongStatistic for a counter that is updated very
+     * frequently by many threads. Such a statistic uses more memory, and
+     * setting its value is not atomic with respect to concurrent updates.
+     * 
+     * @param name Name of the statistic
+     */
+    LongStatistic newStripedLongStatistic(String name);
+
     /**
      * Allocates a new InfoStatistic.
      * 
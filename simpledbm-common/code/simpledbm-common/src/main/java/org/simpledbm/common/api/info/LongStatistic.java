@@ -53,6 +53,13 @@ public interface LongStatistic extends Statistic {
      */
     public void decrement();
 
+    /**
+     * Add to the current value.
+     * 
+     * @param value Amount to be added.
+     */
+    public void add(long value);
+
     /**
      * Set a new value.
      * 
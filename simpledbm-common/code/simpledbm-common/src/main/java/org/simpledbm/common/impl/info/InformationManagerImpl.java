@@ -81,6 +81,10 @@ public class InformationManagerImpl implements InformationManager {
         return newStatistic(name, new LongStatisticImpl(name));
     }
 
+    public LongStatistic newStripedLongStatistic(String name) {
+        return newStatistic(name, new StripedLongStatisticImpl(name));
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
         synchronized (map) {
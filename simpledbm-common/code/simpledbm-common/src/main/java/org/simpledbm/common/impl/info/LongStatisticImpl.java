@@ -68,4 +68,9 @@ public class LongStatisticImpl extends StatisticImpl implements LongStatistic {
         l.decrementAndGet();
         setLastUpdated();
     }
+
+    public void add(long value) {
+        l.addAndGet(value);
+        setLastUpdated();
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * DO NOT REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Contributor(s):
+ *
+ * The Original Software is SimpleDBM (www.simpledbm.org).
+ * The Initial Developer of the Original Software is Dibyendu Majumdar.
+ *
+ * Portions Copyright 2005-2014 Dibyendu Majumdar. All Rights Reserved.
+ *
+ * The contents of this file are subject to the terms of the
+ * Apache License Version 2 (the "APL"). You may not use this
+ * file except in compliance with the License. A copy of the
+ * APL may be obtained from:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the APL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the APL, the GPL or the LGPL.
+ *
+ * Copies of GPL and LGPL may be obtained from:
+ * http://www.gnu.org/licenses/license-list.html
+ */
+package org.simpledbm.common.impl.info;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.simpledbm.common.api.info.LongStatistic;
+
+/**
+ * A LongStatistic for counters that are updated very frequently by many
+ * threads. The value is spread over a number of cells, each updated by a
+ * subset of the threads, and summed when it is read, so a value read while
+ * updates are in progress may not reflect all of them. Unlike
+ * {@link LongStatisticImpl}, {@link #set(long)} is not atomic with respect to
+ * concurrent updates.
+ */
+public class StripedLongStatisticImpl extends StatisticImpl implements
+        LongStatistic {
+
+    /**
+     * Number of cells, a power of two.
+     */
+    static final int CELLS = cellsFor(Runtime.getRuntime()
+            .availableProcessors());
+
+    /**
+     * Distance between cells, so that each cell is in a cache line of its own.
+     */
+    static final int PADDING = 8;
+
+    final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    public StripedLongStatisticImpl(String name) {
+        super(name);
+    }
+
+    static int cellsFor(int processors) {
+        int n = 1;
+        while (n < processors && n < 8) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    private static int cell() {
+        return ((int) Thread.currentThread().getId() & (CELLS - 1)) * PADDING;
+    }
+
+    public long get() {
+        long value = 0;
+        for (int i = 0; i < CELLS; i++) {
+            value += cells.get(i * PADDING);
+        }
+        return value;
+    }
+
+    public void increment() {
+        cells.incrementAndGet(cell());
+        setLastUpdated();
+    }
+
+    @Override
+    public StringBuilder appendTo(StringBuilder sb) {
+        super.appendTo(sb);
+        sb.append(get());
+        return sb;
+    }
+
+    public void set(long value) {
+        for (int i = 1; i < CELLS; i++) {
+            cells.set(i * PADDING, 0);
+        }
+        cells.set(0, value);
+        setLastUpdated();
+    }
+
+    public void decrement() {
+        cells.decrementAndGet(cell());
+        setLastUpdated();
+    }
+
+    public void add(long value) {
+        cells.addAndGet(cell(), value);
+        setLastUpdated();
+    }
+
+    /**
+     * Only writes the update time when it has changed, so that updates from
+     * many threads do not contend on it.
+     */
+    @Override
+    protected void setLastUpdated() {
+        long now = System.currentTimeMillis();
+        if (now != updateTime) {
+            updateTime = now;
+        }
+    }
+}
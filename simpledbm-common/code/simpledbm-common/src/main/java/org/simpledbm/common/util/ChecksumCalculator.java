@@ -31,6 +31,7 @@
  */
 package org.simpledbm.common.util;
 
+import java.nio.ByteBuffer;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
@@ -47,4 +48,42 @@ public final class ChecksumCalculator {
         return checksum.getValue();
     }
 
+    /**
+     * Calculates the checksum of two ranges of bytes as if they were
+     * contiguous. The result is the same as that obtained by calling
+     * {@link #compute(byte[], int, int)} on the concatenated bytes.
+     */
+    public static long compute(byte[] data1, int start1, int length1,
+            byte[] data2, int start2, int length2) {
+        Checksum checksum = new Adler32();
+        checksum.update(data1, start1, length1);
+        checksum.update(data2, start2, length2);
+        return checksum.getValue();
+    }
+
+    /**
+     * Calculates the checksum of a range of bytes held in a ByteBuffer, which
+     * may be a direct buffer. The range is specified by absolute positions, so
+     * the position and limit of the buffer are not used or altered. The result
+     * is the same as that obtained by calling
+     * {@link #compute(byte[], int, int)} on the same bytes.
+     */
+    public static long compute(ByteBuffer data, int start, int length) {
+        if (data.hasArray()) {
+            return compute(data.array(), data.arrayOffset() + start, length);
+        }
+        Checksum checksum = new Adler32();
+        byte[] chunk = new byte[Math.min(length, 512)];
+        ByteBuffer bb = data.duplicate();
+        bb.clear();
+        bb.position(start);
+        while (length > 0) {
+            int n = Math.min(length, chunk.length);
+            bb.get(chunk, 0, n);
+            checksum.update(chunk, 0, n);
+            length -= n;
+        }
+        return checksum.getValue();
+    }
+
 }
@@ -114,6 +114,14 @@ public interface Database {
      */
     public abstract Transaction startTransaction(IsolationMode isolationMode);
 
+    /**
+     * Starts a new Transaction. If asyncCommit is set, the commit does not
+     * wait for the log to be flushed to disk, so that the most recent commits
+     * may be lost after a system failure.
+     */
+    public abstract Transaction startTransaction(IsolationMode isolationMode,
+            boolean asyncCommit);
+
     public abstract TypeSystemFactory getTypeSystemFactory();
 
     /**
@@ -461,6 +461,14 @@ public class DatabaseImpl extends BaseTransactionalModule implements Database {
         return getServer().begin(isolationMode);
     }
 
+    /* (non-Javadoc)
+     * @see org.simpledbm.database.api.Database#startTransaction(org.simpledbm.common.api.tx.IsolationMode, boolean)
+     */
+    public Transaction startTransaction(IsolationMode isolationMode,
+            boolean asyncCommit) {
+        return getServer().begin(isolationMode, asyncCommit);
+    }
+
     private void validateTableDefinition(TableDefinition tableDefinition) {
         /*
          * Check that the table has primary key index
@@ -32,6 +32,7 @@
 package org.simpledbm.rss.api.bm;
 
 import org.simpledbm.rss.api.pm.Page;
+import org.simpledbm.rss.api.pm.PageId;
 import org.simpledbm.rss.api.wal.Lsn;
 
 /**
@@ -119,4 +120,25 @@ public interface BufferAccessBlock {
      */
     public boolean isLatchedShared();
 
+    /**
+     * Checks that a page obtained by
+     * {@link BufferManager#fixOptimistic(PageId, int)} has not been latched
+     * exclusively since it was fixed. Anything read from the page since it was
+     * fixed can only be relied upon if this returns true. Always returns true
+     * if the page is latched.
+     */
+    public boolean validate();
+
+    /**
+     * Acquires a SHARED latch on a page obtained by
+     * {@link BufferManager#fixOptimistic(PageId, int)}, provided that the page
+     * has not been latched exclusively since it was fixed. If it has, the page
+     * is left fixed without a latch, and false is returned.
+     * 
+     * @throws org.simpledbm.common.api.exception.SimpleDBMException If the
+     *             page was not obtained by fixOptimistic, or is already
+     *             latched
+     */
+    public boolean validateAndLatchShared();
+
 }
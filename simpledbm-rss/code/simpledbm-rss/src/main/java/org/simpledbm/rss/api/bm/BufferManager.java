@@ -53,6 +53,19 @@ public interface BufferManager {
 
     public final static String LOGGER_NAME = "org.simpledbm.bufmgr";
 
+    /**
+     * Hint to indicate normal access to a page.
+     */
+    public final static int HINT_NORMAL = 0;
+
+    /**
+     * Hint to indicate that the page is being accessed as part of a
+     * sequential scan, and is unlikely to be needed again soon. The Buffer
+     * Manager may use this to prevent large scans from flushing frequently
+     * used pages out of the buffer pool.
+     */
+    public final static int HINT_SEQUENTIAL = 1;
+
     /**
      * Starts the Buffer Manager instance. This may cause background threads to
      * be started.
@@ -74,8 +87,8 @@ public interface BufferManager {
      * it is advisable to fix pages for a short while only.
      * 
      * @param pageid The identity of the page that should be fixed.
-     * @param hint A hint to indicate which end of the LRU chain the page should
-     *            be inserted to.
+     * @param hint A hint for the page replacement policy, either
+     *            {@link #HINT_NORMAL} or {@link #HINT_SEQUENTIAL}.
      * @return A {@link BufferAccessBlock} containing a reference to the desired
      *         page.
      * @see BufferAccessBlock#unfix()
@@ -101,9 +114,9 @@ public interface BufferManager {
      *            isNew is set. The page type must be associated with a subclass
      *            of {@link Page} and must have a {@link PageFactory} registered
      *            with the {@link ObjectRegistry}.
-     * @param hint A hint to indicate which end of the LRU chain the page should
-     *            be inserted to. The meaning of the hint is implementation
-     *            defined.
+     * @param hint A hint for the page replacement policy, either
+     *            {@link #HINT_NORMAL} or {@link #HINT_SEQUENTIAL}. The effect
+     *            of the hint is implementation defined.
      * @return A {@link BufferAccessBlock} containing a reference to the desired
      *         page.
      * @see BufferAccessBlock#unfix()
@@ -121,8 +134,8 @@ public interface BufferManager {
      * page does not already exist in persistent storage.
      * 
      * @param pageid The identity of the page that should be fixed.
-     * @param hint A hint to indicate which end of the LRU chain the page should
-     *            be inserted to.
+     * @param hint A hint for the page replacement policy, either
+     *            {@link #HINT_NORMAL} or {@link #HINT_SEQUENTIAL}.
      * @return A {@link BufferAccessBlock} containing a reference to the desired
      *         page.
      * @see BufferAccessBlock#unfix()
@@ -130,6 +143,35 @@ public interface BufferManager {
      */
     public BufferAccessBlock fixForUpdate(PageId pageid, int hint);
 
+    /**
+     * Fixes a page in the Buffer Pool without latching it. The page's
+     * version is noted, so that the caller can read the page and then check,
+     * using {@link BufferAccessBlock#validate()}, that it was not modified
+     * while being read. The read must tolerate the page changing under it;
+     * any exception thrown during the read should be ignored if validation
+     * fails. This avoids the cost of latching pages that are read often but
+     * rarely changed, such as the interior nodes of a BTree.
+     * 
+     * @param pageid The identity of the page that should be fixed.
+     * @param hint Replacement policy hint, as for
+     *            {@link #fixShared(PageId, int)}
+     * @return BufferAccessBlock containing a reference to the desired page.
+     * @see BufferAccessBlock#validate()
+     * @see BufferAccessBlock#validateAndLatchShared()
+     */
+    public BufferAccessBlock fixOptimistic(PageId pageid, int hint);
+
+    /**
+     * Requests that the specified pages be read into the Buffer Pool in the
+     * background, because they are likely to be needed soon. This is a hint
+     * only: the call does not wait for the pages to be read, pages that are
+     * already in the Buffer Pool are ignored, and errors are not reported.
+     * Callers should only request pages that exist in persistent storage.
+     * 
+     * @param pageids The identities of the pages that should be read.
+     */
+    public void prefetch(PageId... pageids);
+
     /**
      * Returns information about dirty pages in the Buffer Pool. This method is
      * called by the Transaction Manager during checkpoints.
@@ -176,4 +218,30 @@ public interface BufferManager {
      * the buffer manager is not required to honor this request.
      */
     void writeBuffers();
+
+    /**
+     * Changes the number of buffers in the Buffer Pool while the Buffer
+     * Manager is running, so that the Buffer Pool can be adapted to a
+     * changing workload without a restart. When the Buffer Pool shrinks, free
+     * buffers are released first, followed by buffers holding clean pages,
+     * and finally buffers holding dirty pages, which are written out first.
+     * Buffers holding pages that are in use are not released, so the Buffer
+     * Pool may end up larger than requested.
+     * 
+     * @param numBuffers The desired number of buffers
+     * @return The number of buffers in the Buffer Pool after the change
+     */
+    int resize(int numBuffers);
+
+    /**
+     * Changes the number of buffers in the named Buffer Pool. Buffers are
+     * released in the same order as by {@link #resize(int)}, and the other
+     * pools are not affected. The default pool is named
+     * <code>default</code>.
+     * 
+     * @param poolName Name of the pool
+     * @param numBuffers The desired number of buffers in the pool
+     * @return The number of buffers in the pool after the change
+     */
+    int resize(String poolName, int numBuffers);
 }
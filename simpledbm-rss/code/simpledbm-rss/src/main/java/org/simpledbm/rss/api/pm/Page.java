@@ -32,6 +32,7 @@
 package org.simpledbm.rss.api.pm;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.simpledbm.common.api.registry.ObjectRegistry;
 import org.simpledbm.common.api.registry.Storable;
@@ -80,6 +81,21 @@ public abstract class Page implements Storable, Dumpable {
      */
     protected final Latch lock;
 
+    /**
+     * Incremented when the page is latched exclusively, and again when the
+     * exclusive latch is released, so that it is odd while the page may be
+     * changed. Allows readers to validate a read made without a latch.
+     * Transient.
+     */
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Number of times the exclusive latch is held by its owner, as the latch
+     * may be acquired recursively. Only accessed by the owner of the
+     * exclusive latch. Transient.
+     */
+    private int exclusiveCount = 0;
+
     /**
      * Protected constructor for sub-classes to use.
      * 
@@ -178,12 +194,18 @@ public abstract class Page implements Storable, Dumpable {
      */
     public final void latchExclusive() {
         lock.exclusiveLock();
+        if (exclusiveCount++ == 0) {
+            version.incrementAndGet();
+        }
     }
 
     /**
      * Release an exclusive latch on this page.
      */
     public final void unlatchExclusive() {
+        if (--exclusiveCount == 0) {
+            version.incrementAndGet();
+        }
         lock.unlockExclusive();
     }
 
@@ -220,15 +242,32 @@ public abstract class Page implements Storable, Dumpable {
      */
     public final void upgradeUpdate() {
         lock.upgradeUpdateLock();
+        if (exclusiveCount++ == 0) {
+            version.incrementAndGet();
+        }
     }
 
     /**
      * Demote an exclusive latch to an update latch on this page.
      */
     public final void downgradeExclusive() {
+        if (--exclusiveCount == 0) {
+            version.incrementAndGet();
+        }
         lock.downgradeExclusiveLock();
     }
 
+    /**
+     * Returns the version of the page. The version is odd while the page is
+     * latched exclusively, and changes each time the page is latched
+     * exclusively. A reader that has not latched the page can therefore note
+     * the version before reading the page, and check that it is unchanged
+     * afterwards; if it is, the page was not modified in between.
+     */
+    public final int getVersion() {
+        return version.get();
+    }
+
     @Override
     public final int hashCode() {
         return pageId.hashCode();
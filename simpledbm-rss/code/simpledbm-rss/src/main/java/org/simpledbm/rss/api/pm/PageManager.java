@@ -31,6 +31,9 @@
  */
 package org.simpledbm.rss.api.pm;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
 import org.simpledbm.rss.api.latch.LatchFactory;
 import org.simpledbm.rss.api.st.StorageException;
 
@@ -96,6 +99,75 @@ public interface PageManager {
      */
     void store(Page page);
 
+    /**
+     * Retrieves specified Page from the Storage Container, using the supplied
+     * frame as the buffer into which the page image is read. The frame must
+     * have a capacity of at least {@link #getPageSize()} bytes, and may be a
+     * direct buffer allocated outside the Java heap. The position and limit of
+     * the frame are not preserved. The page may use the frame to hold its
+     * contents, hence the frame must not be used for any other purpose until
+     * the page is no longer required.
+     * 
+     * @param pageId ID of the Page to be retrieved
+     * @param frame Buffer that will hold the page image
+     * @throws StorageException Thrown if there is an error while retrieving the
+     *             Page
+     */
+    Page retrieve(PageId pageId, ByteBuffer frame);
+
+    /**
+     * Saves the specified Page to the appropriate Storage Container, using the
+     * supplied frame to hold the page image while it is written. The frame
+     * must have a capacity of at least {@link #getPageSize()} bytes. The
+     * position and limit of the frame are not preserved. If the frame is the
+     * one from which the page was retrieved, only the parts of the page image
+     * not already held in the frame need to be written to it.
+     * 
+     * @param page Page to be saved
+     * @param frame Buffer that will hold the page image
+     * @throws StorageException Thrown if there is an error while writing the
+     *             page.
+     */
+    void store(Page page, ByteBuffer frame);
+
+    /**
+     * Saves a run of pages that have consecutive page numbers within the same
+     * Storage Container, using a single write. Each page is saved using the
+     * frame at the same index, as described in
+     * {@link #store(Page, ByteBuffer)}.
+     * 
+     * @param pages Pages to be saved, in order of page number
+     * @param frames Buffers that will hold the page images
+     * @throws StorageException Thrown if there is an error while writing the
+     *             pages.
+     */
+    void store(Page[] pages, ByteBuffer[] frames);
+
+    /**
+     * Starts saving a run of pages as described in
+     * {@link #store(Page[], ByteBuffer[])}, without waiting for the write to
+     * complete. The page images are prepared before this method returns, but
+     * the frames must not be modified until the returned future has
+     * completed. If the Storage Container does not support asynchronous
+     * writes, the pages are written before this method returns.
+     * 
+     * @param pages Pages to be saved, in order of page number
+     * @param frames Buffers that will hold the page images
+     * @return A future that completes when the pages have been written. If
+     *         the write fails, the future throws an ExecutionException
+     *         wrapping a StorageException.
+     */
+    Future<Integer> storeAsync(Page[] pages, ByteBuffer[] frames);
+
+    /**
+     * Checks whether the specified Page can be retrieved, ie, its Storage
+     * Container is open and the Page lies within the part of the container
+     * that has been written to.
+     * 
+     * @param pageId ID of the Page
+     */
+    boolean exists(PageId pageId);
+
     /**
      * Gets the type code for a raw page which is just a blob of bytes.
      */
@@ -122,6 +122,17 @@ public abstract class SlottedPage extends Page {
      */
     public abstract Storable get(int slotNumber, StorableFactory storableFactory);
 
+    /**
+     * Returns slot data of a page that is being read without a latch, or null
+     * if the slot number, or the location of the slot's data, is not valid.
+     * Unlike {@link #get(int, StorableFactory)}, an invalid slot is not
+     * reported as an error, because it is expected when the page is being
+     * modified concurrently; the caller must validate the page version before
+     * using the result.
+     */
+    public abstract Storable peek(int slotNumber,
+            StorableFactory storableFactory);
+
     /**
      * Sets slot specific flags.
      */
@@ -0,0 +1,72 @@
+/**
+ * DO NOT REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Contributor(s):
+ *
+ * The Original Software is SimpleDBM (www.simpledbm.org).
+ * The Initial Developer of the Original Software is Dibyendu Majumdar.
+ *
+ * Portions Copyright 2005-2014 Dibyendu Majumdar. All Rights Reserved.
+ *
+ * The contents of this file are subject to the terms of the
+ * Apache License Version 2 (the "APL"). You may not use this
+ * file except in compliance with the License. A copy of the
+ * APL may be obtained from:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the APL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the APL, the GPL or the LGPL.
+ *
+ * Copies of GPL and LGPL may be obtained from:
+ * http://www.gnu.org/licenses/license-list.html
+ */
+package org.simpledbm.rss.api.st;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+/**
+ * A StorageContainer that can start reads and writes without waiting for
+ * them to complete, so that a single thread can keep many I/O requests
+ * outstanding. The caller must not touch the buffers until the returned
+ * future has completed.
+ * 
+ * @since 18-Oct-2026
+ */
+public interface AsyncStorageContainer extends StorageContainer {
+
+    /**
+     * Starts reading bytes from the container into the remaining space of the
+     * buffer, from the specified position within the container. Thread safe.
+     * 
+     * @param position The position where the read must begin, >= 0.
+     * @param buffer Data will be read into this buffer.
+     * @return A future that yields the number of bytes read, or <=0 if no
+     *         more data was available. If the read fails, the future throws
+     *         an ExecutionException wrapping a StorageException.
+     * @see StorageContainer#read(long, ByteBuffer)
+     */
+    Future<Integer> readAsync(long position, ByteBuffer buffer);
+
+    /**
+     * Starts writing the remaining bytes of a sequence of buffers, in order,
+     * to the specified position within the container. Thread safe.
+     * 
+     * @param position The position where the write must begin, >= 0.
+     * @param buffers Buffers containing the data to be written out.
+     * @return A future that yields the number of bytes written. If the write
+     *         fails, the future throws an ExecutionException wrapping a
+     *         StorageException.
+     * @see StorageContainer#write(long, ByteBuffer[])
+     */
+    Future<Integer> writeAsync(long position, ByteBuffer[] buffers);
+}
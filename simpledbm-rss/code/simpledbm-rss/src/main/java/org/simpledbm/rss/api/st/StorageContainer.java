@@ -31,6 +31,8 @@
  */
 package org.simpledbm.rss.api.st;
 
+import java.nio.ByteBuffer;
+
 /**
  * Specifies the interface to a container on secondary storage. The interface is
  * small and generic to allow many different implementations. An important
@@ -61,6 +63,20 @@ public interface StorageContainer {
      */
     void write(long position, byte[] buffer, int bufferOffset, int length);
 
+    /**
+     * Writes the remaining bytes of a sequence of buffers, in order, to the
+     * specified position within the container. This allows data held in
+     * several buffers, including direct buffers, to be written out in a single
+     * operation. The positions of the buffers are advanced by the number of
+     * bytes written. Thread safe.
+     * 
+     * @param position The position where the write must begin, >= 0.
+     * @param buffers Buffers containing the data to be written out.
+     * @throws StorageException Thrown if there was an error when writing the
+     *             data.
+     */
+    void write(long position, ByteBuffer[] buffers);
+
     /**
      * Reads upto length bytes from the container into the byte array beginning
      * at offset, from the specified position within the container. Thread safe.
@@ -76,6 +92,27 @@ public interface StorageContainer {
      */
     int read(long position, byte[] buffer, int bufferOffset, int length);
 
+    /**
+     * Reads bytes from the container into the remaining space of the buffer,
+     * from the specified position within the container. This allows data to be
+     * read straight into direct buffers without an intermediate copy. The
+     * position of the buffer is advanced by the number of bytes read. Thread
+     * safe.
+     * 
+     * @param position The position where the read must begin, >= 0.
+     * @param buffer Data will be read into this buffer.
+     * @throws StorageException Thrown if there was an error when reading the
+     *             data.
+     * @return Number of bytes read, or <=0 if no more data available.
+     */
+    int read(long position, ByteBuffer buffer);
+
+    /**
+     * Returns the current size of the container in bytes.
+     * @throws StorageException Thrown if the size could not be determined.
+     */
+    long size();
+
     /**
      * Ensures that all data written to the container is flushed to secondary
      * storage.
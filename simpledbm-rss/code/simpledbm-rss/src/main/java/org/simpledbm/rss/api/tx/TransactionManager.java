@@ -49,6 +49,19 @@ public interface TransactionManager {
      */
     Transaction begin(IsolationMode isolationMode);
 
+    /**
+     * Begins a new transaction. If asyncCommit is set, the transaction's
+     * commit does not wait for the commit log record to be flushed to disk;
+     * the log is flushed in the background within a bounded interval. After a
+     * system failure, recently committed transactions may therefore be lost,
+     * but recovery remains consistent.
+     * 
+     * @param isolationMode Isolation mode of the transaction
+     * @param asyncCommit Set to commit without waiting for the log flush
+     * @see org.simpledbm.rss.api.wal.LogManager#flushAsync(Lsn)
+     */
+    Transaction begin(IsolationMode isolationMode, boolean asyncCommit);
+
     /**
      * Logs an operation that is not part of any specific transaction, but needs
      * to be redone at system restart. Note that since these updates cannot be
@@ -158,6 +158,16 @@ public interface LogManager {
      */
     void flush();
 
+    /**
+     * Requests that all the Log Records upto the specified Lsn be forced to
+     * disk, without waiting for the flush. The flush is performed in the
+     * background, within an interval that is bounded by the implementation.
+     * 
+     * @param upto Lsn of the Log Record
+     * @throws LogException
+     */
+    void flushAsync(Lsn upto);
+
     /**
      * Obtains a forward scanning reader with the start Lsn set to the specified
      * Lsn. If the startLsn is <code>null</code>, reading will start at the
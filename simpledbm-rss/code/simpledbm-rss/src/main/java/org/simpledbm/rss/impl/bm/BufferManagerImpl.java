@@ -32,11 +32,27 @@
 package org.simpledbm.rss.impl.bm;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -44,6 +60,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
 import org.simpledbm.common.api.exception.SimpleDBMException;
+import org.simpledbm.common.api.info.InfoStatistic;
 import org.simpledbm.common.api.info.InformationManager;
 import org.simpledbm.common.api.info.LongStatistic;
 import org.simpledbm.common.api.platform.Platform;
@@ -52,6 +69,7 @@ import org.simpledbm.common.api.thread.Scheduler.Priority;
 import org.simpledbm.common.util.Dumpable;
 import org.simpledbm.common.util.Linkable;
 import org.simpledbm.common.util.SimpleLinkedList;
+import org.simpledbm.common.util.TypeSize;
 import org.simpledbm.common.util.logging.Logger;
 import org.simpledbm.common.util.mcat.Message;
 import org.simpledbm.common.util.mcat.MessageInstance;
@@ -64,13 +82,15 @@ import org.simpledbm.rss.api.pm.Page;
 import org.simpledbm.rss.api.pm.PageId;
 import org.simpledbm.rss.api.pm.PageManager;
 import org.simpledbm.rss.api.st.StorageContainer;
+import org.simpledbm.rss.api.st.StorageContainerFactory;
 import org.simpledbm.rss.api.st.StorageManager;
 import org.simpledbm.rss.api.wal.LogManager;
 import org.simpledbm.rss.api.wal.Lsn;
 
 /**
- * Implements an LRU Buffer Manager. This implementation uses a global LRU
- * chain.
+ * Implements a Buffer Manager. The page replacement policy is pluggable; the
+ * default is a global LRU chain, but a CLOCK sweep and a scan resistant 2Q
+ * policy are also available.
  * <p>
  * The Buffer Manager implementation is based upon the description provided in
  * <cite>Transaction Processing: Concepts and Techniques, by Jim Gray and
@@ -87,10 +107,73 @@ public final class BufferManagerImpl implements BufferManager {
 
     private static final String BUFFERPOOL_NUMBUFFERS = "bufferpool.numbuffers";
     private static final String BUFFER_WRITER_WAIT = "bufferpool.writerSleepInterval";
+    private static final String BUFFER_REPLACEMENT_POLICY = "bufferpool.replacementPolicy";
+    private static final String BUFFERPOOL_PARTITIONS = "bufferpool.partitions";
+    private static final String BUFFERPOOL_OFFHEAP = "bufferpool.offHeap";
+    private static final String BUFFERPOOL_PREFETCH_THREADS = "bufferpool.prefetchThreads";
+    private static final String BUFFERPOOL_PREFETCH_DEPTH = "bufferpool.prefetchDepth";
+    private static final String BUFFER_WRITER_THREADS = "bufferpool.writerThreads";
+    private static final String BUFFER_WRITER_MAXPAGES = "bufferpool.writerMaxPages";
+    private static final String BUFFER_WRITER_QUEUE_DEPTH = "bufferpool.writerQueueDepth";
+    private static final String BUFFERPOOL_FIX_TIMING = "bufferpool.fixTiming";
+    private static final String BUFFERPOOL_WARMUP_FILE = "bufferpool.warmupFile";
+    private static final String BUFFERPOOL_WARMUP_INTERVAL = "bufferpool.warmupSaveInterval";
+    private static final String BUFFERPOOL_POOLS = "bufferpool.pools";
+    private static final String BUFFERPOOL_POOL_PREFIX = "bufferpool.pool.";
+    private static final String POOL_NUMBUFFERS = ".numbuffers";
+    private static final String POOL_PARTITIONS = ".partitions";
+    private static final String POOL_REPLACEMENT_POLICY = ".replacementPolicy";
+    private static final String POOL_CONTAINERS = ".containers";
+
+    /**
+     * Name of the buffer pool used by containers that have not been assigned
+     * to a named pool.
+     */
+    public static final String DEFAULT_POOL = "default";
+
+    static final String POLICY_LRU = "lru";
+    static final String POLICY_CLOCK = "clock";
+    static final String POLICY_2Q = "2q";
 
     private static final int LATCH_EXCLUSIVE = 2;
     private static final int LATCH_UPDATE = 3;
     private static final int LATCH_SHARED = 1;
+    /**
+     * Used when a page is read in by a prefetch request; the page is not
+     * latched and is released as soon as it has been read.
+     */
+    private static final int LATCH_NONE = 0;
+    /**
+     * Used when a page is fixed without a latch, to be read optimistically.
+     */
+    private static final int LATCH_OPTIMISTIC = 4;
+
+    /**
+     * Replacement policy hint used for pages that have been read ahead. Such
+     * pages should not be evicted before they have been used, but must not be
+     * treated as frequently used either.
+     */
+    static final int HINT_PREFETCH = -1;
+
+    /**
+     * Number of consecutive page reads from a container after which access is
+     * assumed to be sequential.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 4;
+
+    /**
+     * Each prefetch thread may hold a frame while it reads a page, and pages
+     * read ahead displace other pages. To ensure that prefetching cannot
+     * starve clients of frames, it is disabled in partitions that have fewer
+     * frames than this multiple of the number of prefetch threads.
+     */
+    private static final int PREFETCH_FRAMES_PER_THREAD = 16;
+
+    /**
+     * How long, in milliseconds, warm-up waits for the containers of the saved
+     * pages to be opened, for example by restart recovery.
+     */
+    private static final int WARMUP_WAIT = 60000;
 
     final Logger log;
 
@@ -119,39 +202,86 @@ public final class BufferManagerImpl implements BufferManager {
      */
     private LogManager logMgr;
 
+    /**
+     * Frames are stored in chunks of this many slots, so that the buffer pool
+     * can grow without moving existing frames.
+     */
+    private static final int FRAME_CHUNK_SHIFT = 8;
+
+    private static final int FRAME_CHUNK_MASK = (1 << FRAME_CHUNK_SHIFT) - 1;
+
     /**
      * The BufferPool is an array of slots where pages are held. Each slot is
      * called a frame (using terminology from the book <cite>Transaction
-     * Processing: Concepts and Techniques</cite>).
+     * Processing: Concepts and Techniques</cite>). The array is split into
+     * chunks; when the buffer pool grows, the directory of chunks is replaced
+     * but the chunks themselves are retained.
+     */
+    private volatile Page[][] bufferpool;
+
+    /**
+     * Each frame is assigned a fixed buffer that holds the page image. Pages
+     * are read into, and written out from, their frame's buffer so that page
+     * I/O does not allocate buffers; pages that support it use the frame's
+     * buffer to hold their contents. When the buffer pool is configured to hold
+     * page images off-heap, the buffers are slices of direct memory. Organised
+     * in chunks in the same way as {@link #bufferpool}.
+     */
+    private volatile ByteBuffer[][] frames;
+
+    /**
+     * Current number of frames in the buffer pool.
+     */
+    private volatile int bufferPoolSize;
+
+    /**
+     * Whether frames are allocated in direct memory.
+     */
+    private boolean offHeap;
+
+    /**
+     * Serializes changes to the size of the buffer pool.
      */
-    private Page[] bufferpool;
+    private final Object resizeLock = new Object();
 
     /**
-     * To enable quick retrieval of cached pages, a hash table of BCBs is
-     * maintained. All pages that are in the cache must be present in the hash
-     * table.
+     * The buffer pool is divided into one or more partitions. A page always
+     * belongs to the partition selected by the hash code of its page id. Each
+     * partition manages its own set of frames, with its own hash table,
+     * replacement policy and free frame list, so that partitions can be
+     * accessed concurrently. This array holds the partitions of all the
+     * named pools.
      */
-    private BufferHashBucket[] bufferHash;
+    private BufferPartition[] partitions;
 
     /**
-     * BCBs in the cache are also put into the LRU list. The head of the list is
-     * the LRU end, whereas the tail is the MRU.
+     * The named pools; the first is the default pool. Each pool has its own
+     * partitions, so a page is never evicted to make room for a page that
+     * belongs to another pool.
      */
-    private final SimpleLinkedList<BufferControlBlock> lru = new SimpleLinkedList<BufferControlBlock>();
+    private BufferPool[] pools;
+
+    /**
+     * Containers that are assigned to a named pool, sorted, and the pools
+     * they are assigned to. Other containers use the default pool.
+     */
+    private int[] poolContainers = new int[0];
+
+    private BufferPool[] containerPools = new BufferPool[0];
 
     /*
      * Notes on latching:
      * In this implementation, the latching order is always: 
-     * LRU chain -> Hash bucket -> BCB
+     * Replacement policy latch -> Hash table lock -> BCB
+     *
+     * Pages are looked up in the hash table without locking it, and a page
+     * that is ready for use is pinned without locking its BCB.
+     * 
+     * Latches of different partitions are never held at the same time.
      *
      * Page latch is completely outside of the BufMgr processing logic.
      */
 
-    /**
-     * LRU latch protects the LRU.
-     */
-    private final ReentrantReadWriteLock lruLatch = new ReentrantReadWriteLock();
-
     /**
      * Background thread for writing dirty pages.
      */
@@ -165,31 +295,111 @@ public final class BufferManagerImpl implements BufferManager {
     volatile boolean stop = false;
 
     /**
-     * Points to the top of the {@link #freeFrames} stack. Access to this is
-     * protected by synchronizing the freeFrames array.
+     * The interval in milliseconds for which the Buffer Writer thread sleeps
+     * between each write.
+     */
+    private int bufferWriterSleepInterval = 5000;
+
+    /**
+     * Number of threads used to write dirty pages. Pages of a container are
+     * always written by a single thread, so several threads only help when
+     * there are dirty pages in more than one container.
      */
-    private int nextAvailableFrame = -1;
+    private int writerThreads = 1;
 
     /**
-     * A stack of available free slots in the buffer pool.
-     * {@link #nextAvailableFrame} points to the top of the stack. Access must
-     * be synchronized for thread safety.
+     * The maximum number of adjacent dirty pages that are combined into a
+     * single write.
      */
-    private int[] freeFrames;
+    private int writerMaxPages = 16;
 
     /**
-     * The interval in milliseconds for which the Buffer Writer thread sleeps
-     * between each write.
+     * The maximum number of writes that each writer thread keeps in progress
+     * at the same time. Only storage containers that support asynchronous
+     * writes can have more than one write in progress.
      */
-    private int bufferWriterSleepInterval = 5000;
+    private int writerQueueDepth = 8;
+
+    /**
+     * If set, the time taken by each fix is recorded in the page group
+     * statistics.
+     */
+    private boolean fixTiming = false;
+
+    /**
+     * Executes write requests when there is more than one writer thread.
+     */
+    private ExecutorService writerService;
+
+    /**
+     * Name of the container in which the list of pages in the buffer pool is
+     * saved, so that the buffer pool can be warmed up after a restart.
+     * Warm-up is disabled if this is null.
+     */
+    private String warmupFile;
+
+    /**
+     * The interval in milliseconds between each save of the list of pages in
+     * the buffer pool. If 0, the list is only saved at shutdown.
+     */
+    private int warmupSaveInterval = 300000;
+
+    /**
+     * Background task for saving the list of pages in the buffer pool.
+     */
+    private ScheduledFuture<?> warmupSaver;
+
+    /**
+     * Used to create the warm-up container. May be null, in which case
+     * warm-up is disabled.
+     */
+    private StorageContainerFactory storageFactory;
+
+    /**
+     * Number of threads used to read pages in the background. Prefetching is
+     * disabled if this is 0.
+     */
+    private int prefetchThreads = 2;
+
+    /**
+     * Number of pages to read ahead when sequential access to a container is
+     * detected. Sequential detection is disabled if this is 0.
+     */
+    private int prefetchDepth = 8;
+
+    /**
+     * Executes prefetch requests.
+     */
+    private ExecutorService prefetchService;
+
+    /**
+     * Tracks recent page reads in order to detect sequential access. A
+     * container is tracked by the detector selected by its container ID.
+     */
+    private final SequentialDetector[] detectors = new SequentialDetector[16];
 
     /**
      * A count of number of pages estimated to be dirty.
      */
     //    private AtomicInteger dirtyBuffersCount = new AtomicInteger(0);
 
-    static final int hashPrimes[] = { 53, 97, 193, 389, 769, 1543, 3079, 6151,
-            12289, 24593, 49157, 98317, 196613, 393241, 786433 };
+    /**
+     * Orders buffers by container and page number, which is the order in which
+     * pages are laid out on disk.
+     */
+    static final Comparator<BufferControlBlock> PAGE_ORDER = new Comparator<BufferControlBlock>() {
+        public int compare(BufferControlBlock o1, BufferControlBlock o2) {
+            PageId p1 = o1.getPageId();
+            PageId p2 = o2.getPageId();
+            if (p1.getContainerId() != p2.getContainerId()) {
+                return p1.getContainerId() < p2.getContainerId() ? -1 : 1;
+            }
+            if (p1.getPageNumber() != p2.getPageNumber()) {
+                return p1.getPageNumber() < p2.getPageNumber() ? -1 : 1;
+            }
+            return 0;
+        }
+    };
 
     // setup messages
     // Buffer Manager messages
@@ -237,6 +447,12 @@ public final class BufferManagerImpl implements BufferManager {
             "Buffer Writer STARTED");
     static final Message m_IM0012 = new Message('R', 'M', MessageType.INFO, 12,
             "Buffer Writer STOPPED");
+    static final Message m_IM0013 = new Message('R', 'M', MessageType.INFO, 13,
+            "Buffer pool {0} resized from {1} to {2} buffers");
+    static final Message m_EM0014 = new Message('R', 'M', MessageType.ERROR, 14,
+            "Unknown buffer pool {0}");
+    static final Message m_EM0015 = new Message('R', 'M', MessageType.ERROR, 15,
+            "Container {0} is assigned to more than one buffer pool");
 
     private int getNumericProperty(Properties props, String name,
             int defaultValue) {
@@ -253,36 +469,149 @@ public final class BufferManagerImpl implements BufferManager {
     }
 
     /**
-     * Initialize the Buffer Manager instance. The hash table size is
-     * automatically determined based upon the bufferpool size.
+     * Initialize the Buffer Manager instance. Each pool is split evenly
+     * between its partitions. The hash table size of each partition is
+     * automatically determined based upon the partition size.
      */
     private void init(LogManager logMgr, PageManager pageFactory,
-            int bufferpoolsize) {
+            BufferPool[] pools, boolean offHeap) {
         this.logMgr = logMgr;
         this.pageFactory = pageFactory;
-        bufferpool = new Page[bufferpoolsize];
-        freeFrames = new int[bufferpoolsize];
-        for (int f = 0; f < bufferpoolsize; f++) {
-            freeFrames[++nextAvailableFrame] = f;
-        }
-        int h = 0;
-        for (; h < hashPrimes.length; h++) {
-            if (hashPrimes[h] > bufferpoolsize) {
-                break;
-            }
+        this.offHeap = offHeap;
+        this.pools = pools;
+        int stride = 0;
+        for (BufferPool pool : pools) {
+            stride += pool.partitions.length;
         }
-        if (h == hashPrimes.length) {
-            h = hashPrimes.length - 1;
+        /*
+         * The frames of all the partitions are interleaved; see
+         * BufferPartition.
+         */
+        partitions = new BufferPartition[stride];
+        int index = 0;
+        int maxFrameNo = 0;
+        for (BufferPool pool : pools) {
+            for (int i = 0; i < pool.partitions.length; i++) {
+                int size = partitionSize(pool.numFrames,
+                        pool.partitions.length, i);
+                pool.partitions[i] = new BufferPartition(index, stride, size,
+                        pool.policy);
+                partitions[index] = pool.partitions[i];
+                maxFrameNo = Math.max(maxFrameNo, index + (size - 1) * stride);
+                index++;
+            }
         }
-        int hashsize = hashPrimes[h];
-        bufferHash = new BufferHashBucket[hashsize];
-        for (int i = 0; i < hashsize; i++) {
-            bufferHash[i] = new BufferHashBucket();
+        bufferpool = new Page[0][];
+        frames = new ByteBuffer[0][];
+        ensureFrameCapacity(maxFrameNo + 1);
+        int bufferpoolsize = 0;
+        for (BufferPartition partition : partitions) {
+            ByteBuffer[] buffers = allocateFrames(partition.numFrames);
+            for (int i = 0; i < buffers.length; i++) {
+                setFrameBuffer(partition.index + i * stride, buffers[i]);
+            }
+            bufferpoolsize += partition.numFrames;
         }
+        this.bufferPoolSize = bufferpoolsize;
 
-        statistics.setBufferPoolSize(bufferpoolsize);
-        statistics.setHashTableSize(hashsize);
+        updateSizeStatistics();
+        statistics.setPartitions(stride);
         statistics.setWriterSleepInterval(bufferWriterSleepInterval);
+        statistics.setReplacementPolicy(partitions[0].replacementPolicy
+                .getName());
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i] = new SequentialDetector();
+        }
+    }
+
+    /**
+     * Returns the number of frames assigned to a partition. The frames are
+     * split evenly, with the first partitions getting any remainder.
+     */
+    static int partitionSize(int bufferpoolsize, int npartitions, int i) {
+        return bufferpoolsize / npartitions
+                + (i < bufferpoolsize % npartitions ? 1 : 0);
+    }
+
+    private Page getPage(int frameNo) {
+        return bufferpool[frameNo >>> FRAME_CHUNK_SHIFT][frameNo
+                & FRAME_CHUNK_MASK];
+    }
+
+    private void setPage(int frameNo, Page page) {
+        bufferpool[frameNo >>> FRAME_CHUNK_SHIFT][frameNo & FRAME_CHUNK_MASK] = page;
+    }
+
+    private ByteBuffer getFrameBuffer(int frameNo) {
+        return frames[frameNo >>> FRAME_CHUNK_SHIFT][frameNo
+                & FRAME_CHUNK_MASK];
+    }
+
+    private void setFrameBuffer(int frameNo, ByteBuffer buffer) {
+        frames[frameNo >>> FRAME_CHUNK_SHIFT][frameNo & FRAME_CHUNK_MASK] = buffer;
+    }
+
+    /**
+     * Makes sure that there are slots for frames numbered up to, but not
+     * including, nframes. Existing chunks are carried over to the new
+     * directory, so that concurrent users of the old directory are not
+     * affected. Caller must hold {@link #resizeLock}, or be initializing.
+     */
+    private void ensureFrameCapacity(int nframes) {
+        int nchunks = (nframes + FRAME_CHUNK_MASK) >>> FRAME_CHUNK_SHIFT;
+        if (nchunks <= bufferpool.length) {
+            return;
+        }
+        Page[][] newPool = new Page[nchunks][];
+        ByteBuffer[][] newFrames = new ByteBuffer[nchunks][];
+        System.arraycopy(bufferpool, 0, newPool, 0, bufferpool.length);
+        System.arraycopy(frames, 0, newFrames, 0, frames.length);
+        for (int i = bufferpool.length; i < nchunks; i++) {
+            newPool[i] = new Page[FRAME_CHUNK_MASK + 1];
+            newFrames[i] = new ByteBuffer[FRAME_CHUNK_MASK + 1];
+        }
+        frames = newFrames;
+        bufferpool = newPool;
+    }
+
+    /**
+     * Allocates the buffers for a number of frames, on the heap or in direct
+     * memory as configured.
+     */
+    private ByteBuffer[] allocateFrames(int nframes) {
+        int pageSize = pageFactory.getPageSize();
+        if (offHeap) {
+            statistics.addOffHeapBytes((long) nframes * pageSize);
+            return allocateFrames(nframes, pageSize);
+        }
+        ByteBuffer[] buffers = new ByteBuffer[nframes];
+        for (int i = 0; i < nframes; i++) {
+            buffers[i] = ByteBuffer.allocate(pageSize);
+        }
+        return buffers;
+    }
+
+    /**
+     * Allocates a slice of direct memory for each frame. A single direct
+     * buffer cannot exceed 2GB, so the memory is allocated in as few chunks as
+     * possible, each holding a whole number of frames.
+     */
+    private static ByteBuffer[] allocateFrames(int nframes, int pageSize) {
+        ByteBuffer[] frames = new ByteBuffer[nframes];
+        int framesPerChunk = Integer.MAX_VALUE / pageSize;
+        ByteBuffer chunk = null;
+        for (int i = 0; i < nframes; i++) {
+            int j = i % framesPerChunk;
+            if (j == 0) {
+                chunk = ByteBuffer.allocateDirect(Math.min(framesPerChunk,
+                        nframes - i)
+                        * pageSize);
+            }
+            chunk.limit((j + 1) * pageSize);
+            chunk.position(j * pageSize);
+            frames[i] = chunk.slice();
+        }
+        return frames;
     }
 
     /**
@@ -302,7 +631,8 @@ public final class BufferManagerImpl implements BufferManager {
         this.platform = platform;
         this.statistics = new BufferManagerStatistics(po
                 .getInformationManager());
-        init(logMgr, pageFactory, bufferpoolsize);
+        init(logMgr, pageFactory, new BufferPool[] { new BufferPool(
+                DEFAULT_POOL, bufferpoolsize, 1, POLICY_LRU) }, false);
     }
 
     /**
@@ -324,9 +654,78 @@ public final class BufferManagerImpl implements BufferManager {
                 500);
         bufferWriterSleepInterval = getNumericProperty(props,
                 BUFFER_WRITER_WAIT, 5000);
+        String policy = props.getProperty(BUFFER_REPLACEMENT_POLICY,
+                POLICY_LRU);
+        int npartitions = getNumericProperty(props, BUFFERPOOL_PARTITIONS, 1);
+        boolean offHeap = "true".equalsIgnoreCase(props.getProperty(
+                BUFFERPOOL_OFFHEAP, "false"));
+        prefetchThreads = getNumericProperty(props,
+                BUFFERPOOL_PREFETCH_THREADS, 2);
+        prefetchDepth = getNumericProperty(props, BUFFERPOOL_PREFETCH_DEPTH, 8);
+        writerThreads = getNumericProperty(props, BUFFER_WRITER_THREADS, 1);
+        writerMaxPages = Math.max(1, getNumericProperty(props,
+                BUFFER_WRITER_MAXPAGES, 16));
+        writerQueueDepth = Math.max(1, getNumericProperty(props,
+                BUFFER_WRITER_QUEUE_DEPTH, 8));
+        fixTiming = "true".equalsIgnoreCase(props.getProperty(
+                BUFFERPOOL_FIX_TIMING, "false"));
+        warmupFile = props.getProperty(BUFFERPOOL_WARMUP_FILE);
+        warmupSaveInterval = getNumericProperty(props,
+                BUFFERPOOL_WARMUP_INTERVAL, 300000);
         this.statistics = new BufferManagerStatistics(po
                 .getInformationManager());
-        init(logMgr, pageFactory, bufferpoolsize);
+        ArrayList<BufferPool> poolList = new ArrayList<BufferPool>();
+        poolList.add(new BufferPool(DEFAULT_POOL, bufferpoolsize, npartitions,
+                policy));
+        String names = props.getProperty(BUFFERPOOL_POOLS, "").trim();
+        if (names.length() > 0) {
+            for (String name : names.split(",")) {
+                name = name.trim();
+                String prefix = BUFFERPOOL_POOL_PREFIX + name;
+                BufferPool pool = new BufferPool(name, getNumericProperty(
+                        props, prefix + POOL_NUMBUFFERS, 100),
+                        getNumericProperty(props, prefix + POOL_PARTITIONS, 1),
+                        props.getProperty(prefix + POOL_REPLACEMENT_POLICY,
+                                policy));
+                poolList.add(pool);
+                assignContainers(pool, props.getProperty(prefix
+                        + POOL_CONTAINERS, ""));
+            }
+        }
+        init(logMgr, pageFactory, poolList.toArray(new BufferPool[poolList
+                .size()]), offHeap);
+    }
+
+    /**
+     * Assigns the containers in the comma separated list to the pool.
+     */
+    private void assignContainers(BufferPool pool, String containers) {
+        for (String id : containers.split(",")) {
+            id = id.trim();
+            if (id.length() == 0) {
+                continue;
+            }
+            int containerId = Integer.parseInt(id);
+            int i = Arrays.binarySearch(poolContainers, containerId);
+            if (i >= 0) {
+                exceptionHandler.errorThrow(this.getClass(),
+                        "assignContainers", new BufferManagerException(
+                                new MessageInstance(m_EM0015, containerId)));
+            }
+            i = -(i + 1);
+            int[] newContainers = new int[poolContainers.length + 1];
+            BufferPool[] newPools = new BufferPool[newContainers.length];
+            System.arraycopy(poolContainers, 0, newContainers, 0, i);
+            System.arraycopy(containerPools, 0, newPools, 0, i);
+            newContainers[i] = containerId;
+            newPools[i] = pool;
+            System.arraycopy(poolContainers, i, newContainers, i + 1,
+                    poolContainers.length - i);
+            System.arraycopy(containerPools, i, newPools, i + 1,
+                    containerPools.length - i);
+            poolContainers = newContainers;
+            containerPools = newPools;
+        }
     }
 
     /* (non-Javadoc)
@@ -340,6 +739,26 @@ public final class BufferManagerImpl implements BufferManager {
                 Priority.SERVER_TASK, new BufferWriter(this),
                 bufferWriterSleepInterval, bufferWriterSleepInterval,
                 TimeUnit.MILLISECONDS);
+        if (prefetchThreads > 0) {
+            prefetchService = Executors.newFixedThreadPool(prefetchThreads);
+        }
+        if (writerThreads > 1) {
+            writerService = Executors.newFixedThreadPool(writerThreads);
+        }
+        if (warmupFile != null && storageFactory != null) {
+            PageId[] pageids = loadHotPages();
+            statistics.setWarmupPages(pageids.length);
+            if (pageids.length > 0) {
+                platform.getScheduler().execute(Priority.NORMAL,
+                        new WarmUp(this, pageids));
+            }
+            if (warmupSaveInterval > 0) {
+                warmupSaver = platform.getScheduler().scheduleWithFixedDelay(
+                        Priority.NORMAL, new HotPageSaver(this),
+                        warmupSaveInterval, warmupSaveInterval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
         log.info(this.getClass(), "run",
                 new MessageInstance(m_IM0011).toString());
     }
@@ -363,113 +782,108 @@ public final class BufferManagerImpl implements BufferManager {
     public void shutdown() {
         setStop();
         bufferWriter.cancel(false);
+        if (warmupSaver != null) {
+            warmupSaver.cancel(false);
+        }
+        if (prefetchService != null) {
+            /*
+             * Pending prefetch requests are abandoned as soon as they notice
+             * that the Buffer Manager is stopping. We must not interrupt the
+             * threads as that would close the files being read.
+             */
+            prefetchService.shutdown();
+            try {
+                prefetchService.awaitTermination(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+            }
+        }
         writeBuffers();
+        if (writerService != null) {
+            writerService.shutdown();
+        }
+        if (warmupFile != null && storageFactory != null) {
+            saveHotPages();
+        }
         dumpStatistics();
         log.info(this.getClass(), "run",
                 new MessageInstance(m_IM0012).toString());
     }
 
     /**
-     * Get an empty frame (slot in bufferpool); if necessary, evict the LRU page
-     * from the buffer pool to make space.
+     * Returns the partition that manages the specified page.
+     */
+    private BufferPartition getPartition(PageId pageId) {
+        BufferPartition[] p = getPool(pageId.getContainerId()).partitions;
+        return p[(pageId.hashCode() & 0x7FFFFFFF) % p.length];
+    }
+
+    /**
+     * Returns the pool that the container is assigned to.
+     */
+    private BufferPool getPool(int containerId) {
+        if (poolContainers.length > 0) {
+            int i = Arrays.binarySearch(poolContainers, containerId);
+            if (i >= 0) {
+                return containerPools[i];
+            }
+        }
+        return pools[0];
+    }
+
+    /**
+     * Packs the container id and page number of a page into the key used by
+     * the buffer hash tables.
+     */
+    static long pageKey(PageId pageId) {
+        return ((long) pageId.getContainerId() << 32)
+                | (pageId.getPageNumber() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get an empty frame (slot in bufferpool); if necessary, evict a page chosen
+     * by the replacement policy from the buffer pool to make space.
      * <p>
      * Algorithm:
      * <ol>
      * <li>First, check if there is an unused frame that can be used.</li>
-     * <li>If not, we need to identify a page that can be replaced. This page
-     * should be the least recently used page which is not in use. Pages that
-     * are marked as in use or busy (pending IO) cannot be evicted. Scan the LRU
-     * list for a page that qualifies for replacement.</li>
+     * <li>If not, we need to identify a page that can be replaced. The
+     * replacement policy is asked for a page which is not in use. Pages that
+     * are marked as in use or busy (pending IO) cannot be evicted.</li>
      * <li>If the page identified for eviction is dirty, flush it to disk,
      * following the Write Ahead Log protocol. Remove the page BCB from the Hash
-     * chain, and from the LRU list, and return frame index previously occupied
-     * by the page.</li>
+     * chain, and from the replacement policy, and return frame index
+     * previously occupied by the page.</li>
      * </ol>
      * <p>
      * TEST CASE: test the free frames array, a) until it is exhausted, and b)
      * when frames are put back into it.
      * </p>
      * <p>
-     * Latching: No latches should be held when this is called. LRU latch and
-     * bucket latch obtained while scanning the LRU chain. All latches released
-     * when this method returns.
+     * Latching: No latches should be held when this is called. Replacement
+     * policy latch and hash table lock obtained while evicting the victim. All
+     * latches released when this method returns.
+     * 
+     * @param partition The partition in which a frame is required
      */
-    private int getFrame() {
-        int frameNo = -1;
+    private int getFrame(BufferPartition partition) {
 
         /* Check if there is a free frame that can be used */
-        synchronized (freeFrames) {
-            if (nextAvailableFrame >= 0) {
-                frameNo = freeFrames[nextAvailableFrame--];
-                return frameNo;
-            }
+        int frameNo = partition.allocateFreeFrame();
+        if (frameNo != -1) {
+            return frameNo;
         }
 
-        for (;;) {
-            /*
-             * Find a replacement victim - this should be the Least Recently
-             * Used Buffer that is not in use.
-             */
-            BufferControlBlock victim = null;
-            boolean doWrite = false;
+        final ReplacementPolicy replacementPolicy = partition.replacementPolicy;
 
+        for (;;) {
             /*
-             * Search for a victim starting from the LRU end
+             * Find a replacement victim - the replacement policy decides which
+             * of the buffers that are not in use should be evicted. The
+             * victim is returned with the IO flag set; this stops others from
+             * messing around with the BCB.
              */
-            lruLatch.readLock().lock();
-            try {
-                for (BufferControlBlock nextBcb : lru) {
-                    nextBcb.lock();
-                    try {
-                        /*
-                         * If the buffer is pinned or is waiting for IO, then
-                         * skip
-                         */
-                        if (nextBcb.isValid()
-                                && (nextBcb.isInUse() || nextBcb.isBeingRead() || nextBcb
-                                        .isBeingWritten())) {
-                            if (log.isDebugEnabled()) {
-                                log
-                                        .debug(
-                                                this.getClass(),
-                                                "getFrame",
-                                                "SIMPLEDBM-DEBUG: Skipping bcb "
-                                                        + nextBcb
-                                                        + " because fixCount > 0 or IO in progress");
-                            }
-                            continue;
-                        } else {
-                            /*
-                             * Found a victim. If it is a valid page and is
-                             * dirty we will have to flush it to disk.
-                             */
-                            victim = nextBcb;
-                            if (victim.isValid() && victim.isDirty()) {
-                                assert !victim.isBeingWritten();
-                                assert !victim.isInUse();
-                                assert !victim.isBeingRead();
-                                /*
-                                 * Needs to be flushed.
-                                 */
-                                doWrite = true;
-                            }
-                            /*
-                             * Regardless of whether we need to flush this page
-                             * or not, we need to tell others that we are about
-                             * to use this page. We set a flag to say that IO is
-                             * in progress; this stops others from messing
-                             * around with this BCB.
-                             */
-                            victim.setBeingWritten(true);
-                            break;
-                        }
-                    } finally {
-                        nextBcb.unlock();
-                    }
-                }
-            } finally {
-                lruLatch.readLock().unlock();
-            }
+            BufferControlBlock victim = replacementPolicy.selectVictim(this,
+                    false);
 
             if (victim == null) {
                 /*
@@ -478,80 +892,154 @@ public final class BufferManagerImpl implements BufferManager {
                 return -1;
             }
 
-            /*
-             * Flush the page to disk if necessary, using the write ahead log
-             * protocol. We could use a blocking queue here to pass on the write
-             * request to the BufferWriter, but for now, we will do the write
-             * ourselves.
-             */
-            if (doWrite) {
-                flushUsingWriteAheadLogProtocol(victim);
+            frameNo = evict(partition, victim);
+            if (frameNo != -1) {
+                return frameNo;
             }
+        }
+    }
+
+    /**
+     * Evicts a buffer that has been reserved by the replacement policy,
+     * writing the page first if it is dirty.
+     * <p>
+     * Latching: No latches should be held when this is called.
+     * 
+     * @return The frame previously occupied by the page, or -1 if the buffer
+     *         was fixed by another thread in the meantime
+     */
+    private int evict(BufferPartition partition, BufferControlBlock victim) {
+        final ReplacementPolicy replacementPolicy = partition.replacementPolicy;
+        /*
+         * As the IO flag is set, the dirty flag cannot change under our
+         * feet.
+         */
+        boolean doWrite = victim.isValid() && victim.isDirty();
+
+        /*
+         * Flush the page to disk if necessary, using the write ahead log
+         * protocol. We could use a blocking queue here to pass on the write
+         * request to the BufferWriter, but for now, we will do the write
+         * ourselves.
+         */
+        if (doWrite) {
+            flushUsingWriteAheadLogProtocol(victim);
+        }
 
+        /*
+         * Now lets remove the victim from the replacement policy and the
+         * Hash Table. As we have set the IO flag on the BCB, it will be
+         * unmolested even though we haven't got a lock on it.
+         */
+        replacementPolicy.lockExclusive();
+        try {
             /*
-             * Now lets remove the victim from the LRU chain and the Hash Table.
-             * As we have set the IO flag on the BCB, it will be unmolested even
-             * though we haven't got a lock on it.
+             * The replacement policy latch is always obtained before the
+             * hash table lock.
+             * Hence it is safe to wait unconditionally for the hash table.
              */
-            lruLatch.writeLock().lock();
+            partition.hashLock.lock();
             try {
-                final PageId pageid = victim.getPageId();
-                final int h = (pageid.hashCode() & 0x7FFFFFFF)
-                        % bufferHash.length;
-                final BufferHashBucket bucket = bufferHash[h];
-
                 /*
-                 * The LRU latch is always obtained before the bucket latch.
-                 * Hence it is safe to wait unconditionally for the bucket k.
+                 * Reset the BCB because it may have also been picked up by
+                 * the BufferWriter thread as a dirty buffer
                  */
-                bucket.lockExclusive();
+                victim.lock();
                 try {
                     /*
-                     * Reset the BCB because it may have also been picked up by
-                     * the BufferWriter thread as a dirty buffer
+                     * In the interest of increasing concurrency we allow
+                     * readers to access pages while they are being written out.
+                     * So we need to check the fixcount here in case a reader
+                     * got the page while we were writing it out.
                      */
-                    victim.lock();
-                    try {
+                    if (victim.isInUse()) {
                         /*
-                         * In the interest of increasing concurrency we allow
-                         * readers to access pages while they are being written out.
-                         * So we need to check the fixcount here in case a reader
-                         * got the page while we were writing it out.
+                         * Okay, someone else has booked this page.
+                         * We need to reset the flag we set and look for another page.
                          */
-                        if (victim.isInUse()) {
-                            /*
-                             * Okay, someone else has booked this page.
-                             * We need to reset the flag we set and look for another page.
-                             */
-                            victim.setBeingWritten(false);
-                            victim.signalIOCompleted();
-                            continue;
-                        }
-
-                        /* Remove BCB from LRU Chain */
-                        lru.remove(victim);
-                        /* Remove BCB from Hash Chain */
-                        bucket.chain.remove(victim);
-                        victim.setRecoveryLsn(new Lsn());
-                        victim.setDirty(false);
                         victim.setBeingWritten(false);
                         victim.signalIOCompleted();
-                        victim.setInvalid(true);
-                        bufferpool[victim.getFrameIndex()] = null;
-                        /*
-                         * The frame previously occupied by the victim is now
-                         * free for use.
-                         */
-                        return victim.getFrameIndex();
-                    } finally {
-                        victim.unlock();
+                        return -1;
                     }
+
+                    /* Remove BCB from the replacement policy */
+                    replacementPolicy.remove(victim);
+                    /* Remove BCB from Hash Table */
+                    partition.bufferHash.remove(victim);
+                    victim.setRecoveryLsn(new Lsn());
+                    victim.setDirty(false);
+                    /*
+                     * The BCB must be invalidated before the write flag is
+                     * cleared; see BufferControlBlock.tryPin().
+                     */
+                    victim.setInvalid(true);
+                    victim.setBeingWritten(false);
+                    victim.signalIOCompleted();
+                    setPage(victim.getFrameIndex(), null);
+                    /*
+                     * The frame previously occupied by the victim is now
+                     * free for use.
+                     */
+                    statistics.getEvictions().increment();
+                    victim.containerStatistics.evictions.increment();
+                    victim.pageTypeStatistics.evictions.increment();
+                    return victim.getFrameIndex();
                 } finally {
-                    bucket.unlockExclusive();
+                    victim.unlock();
                 }
             } finally {
-                lruLatch.writeLock().unlock();
+                partition.hashLock.unlock();
+            }
+        } finally {
+            replacementPolicy.unlockExclusive();
+        }
+    }
+
+    /**
+     * Checks whether the specified buffer can be evicted, and if so, marks it
+     * as being written so that no one else can use it. Called by the
+     * replacement policy while it searches for a victim.
+     * <p>
+     * Latching: Caller must hold the replacement policy latch in shared or
+     * exclusive mode. The BCB is locked and unlocked by this method.
+     * 
+     * @param cleanOnly If set, dirty buffers are not reserved
+     * @return True if the buffer has been reserved for eviction
+     */
+    final boolean reserveVictim(BufferControlBlock bcb, boolean cleanOnly) {
+        bcb.lock();
+        try {
+            if (bcb.isBeingWritten()) {
+                return false;
+            }
+            /*
+             * Regardless of whether we need to flush this page or not, we need
+             * to tell others that we are about to use this page. We set a flag
+             * to say that IO is in progress; this stops others from messing
+             * around with this BCB. The flag is set before the fix count is
+             * tested, as clients pinning the buffer without locking it
+             * test the flag after incrementing the fix count.
+             */
+            bcb.setBeingWritten(true);
+            /*
+             * If the buffer is pinned or is waiting for IO, then skip
+             */
+            if (bcb.isValid() && (bcb.isInUse() || bcb.isBeingRead())) {
+                if (log.isDebugEnabled()) {
+                    log.debug(this.getClass(), "reserveVictim",
+                            "SIMPLEDBM-DEBUG: Skipping bcb " + bcb
+                                    + " because fixCount > 0 or IO in progress");
+                }
+                bcb.setBeingWritten(false);
+                return false;
+            }
+            if (cleanOnly && bcb.isValid() && bcb.isDirty()) {
+                bcb.setBeingWritten(false);
+                return false;
             }
+            return true;
+        } finally {
+            bcb.unlock();
         }
     }
 
@@ -579,30 +1067,31 @@ public final class BufferManagerImpl implements BufferManager {
      * <li>Allocate a new BufferControlBlock.</li>
      * <li>Initialize it and attach to the appropriate Hash chain. The BCB must
      * be marked inUse to avoid getting swapped out.</li>
-     * <li>Obtain a frame (slot) for the page by calling {@link #getFrame()}.</li>
+     * <li>Obtain a frame (slot) for the page by calling {@link #getFrame(BufferPartition)}.</li>
      * <li>If the page is new, instantiate a new page, else, read it from the
      * disk.</li>
      * <li>Return the page wrapped in a new <{@link BufferAccessBlock}</li>.
      * </ol>
      * <p>
      * Latching: No latches should be held when this method is called. The
-     * Bucket latch is obtained when adding the new BCB to the hash chain. No
+     * Hash table lock is obtained when adding the new BCB to the hash table. No
      * latches held during IO. No latches held when this method returns.
      * 
      * @return The newly allocated BufferAccessBlock
      */
-    private BufferAccessBlockImpl locatePage(PageId pageId, int hashCode,
-            boolean isNew, int pagetype, int latchMode) {
+    private BufferAccessBlockImpl locatePage(BufferPartition partition,
+            PageId pageId, boolean isNew, int pagetype, int latchMode) {
 
         BufferControlBlock nextBcb = new BufferControlBlock(pageId);
-        BufferHashBucket bucket = bufferHash[hashCode];
+        nextBcb.containerStatistics = statistics.forContainer(pageId
+                .getContainerId());
 
         boolean busy = false;
         do {
             BufferControlBlock toWaitFor = null;
             busy = false;
 
-            bucket.lockExclusive();
+            partition.hashLock.lock();
             try {
 
                 /*
@@ -615,16 +1104,17 @@ public final class BufferManagerImpl implements BufferManager {
                  * completed.
                  */
 
-                for (BufferControlBlock bcb : bucket.chain) {
+                BufferControlBlock bcb = partition.bufferHash.find(nextBcb.key);
+                if (bcb != null) {
                     bcb.lock();
                     try {
-                        if (bcb.isValid() && bcb.getPageId().equals(pageId)) {
+                        if (bcb.isValid()) {
                             /* 
                              * if the page is being read
                              * we need to wait for the read to be over.
                              */
                             if (bcb.isBeingRead()
-                                    || (bcb.isBeingWritten() && latchMode != LATCH_SHARED)) {
+                                    || (bcb.isBeingWritten() && !isReadOnly(latchMode))) {
                                 if (log.isDebugEnabled()) {
                                     log.debug(this.getClass(),
                                             "locatePage",
@@ -647,7 +1137,7 @@ public final class BufferManagerImpl implements BufferManager {
                                 /*
                                  * Okay, we have the page we want, so we are done.
                                  */
-                                statistics.getCacheHits().increment();
+                                statistics.noteHit(bcb);
                                 return useBCB(pageId, latchMode, bcb);
                             }
                         }
@@ -663,10 +1153,10 @@ public final class BufferManagerImpl implements BufferManager {
                      */
                     nextBcb.setFrameIndex(-1);
 
-                    bucket.chain.addFirst(nextBcb);
+                    partition.addBuffer(nextBcb);
                     /*
                      * At this point, the new BCB is in the hash table but not
-                     * in the LRU list. The BCB should have frameIndex set to -1
+                     * known to the replacement policy. The BCB should have frameIndex set to -1
                      * and fixcount = 1. This will prevent the page from being
                      * evicted.
                      */
@@ -676,7 +1166,7 @@ public final class BufferManagerImpl implements BufferManager {
                     assert nextBcb.isNewBuffer();
                 }
             } finally {
-                bucket.unlockExclusive();
+                partition.hashLock.unlock();
             }
 
             /*
@@ -698,7 +1188,16 @@ public final class BufferManagerImpl implements BufferManager {
          */
 
         /* Get an empty buffer pool slot */
-        int frameNo = getFrame();
+        int frameNo = getFrame(partition);
+
+        if (frameNo == -1 && latchMode == LATCH_NONE) {
+            /*
+             * There is no frame available for a prefetch request, which is not
+             * an error; the request is abandoned.
+             */
+            abandonRead(partition, nextBcb);
+            return null;
+        }
 
         if (frameNo == -1) {
             /*
@@ -708,18 +1207,19 @@ public final class BufferManagerImpl implements BufferManager {
              * pages (i.e., failing to unfix() pages are use).
              */
             setStop();
+            abandonRead(partition, nextBcb);
             exceptionHandler.errorThrow(this.getClass(),
                     "locatePage", new BufferManagerException(
                             new MessageInstance(m_EM0004, pageId)));
         }
 
-        assert bufferpool[frameNo] == null;
+        assert getPage(frameNo) == null;
 
         if (isNew) {
             /*
              *  If it is a new page, we do not need to read the page.
              */
-            bufferpool[frameNo] = pageFactory.getInstance(pagetype, pageId);
+            setPage(frameNo, pageFactory.getInstance(pagetype, pageId));
         } else {
             boolean readOk = false;
             try {
@@ -727,7 +1227,8 @@ public final class BufferManagerImpl implements BufferManager {
                  * Note that while reading the page, we do not hold any
                  * latches/locks.
                  */
-                bufferpool[frameNo] = pageFactory.retrieve(pageId);
+                setPage(frameNo, pageFactory.retrieve(pageId,
+                        getFrameBuffer(frameNo)));
                 readOk = true;
             } finally {
                 if (!readOk) {
@@ -736,22 +1237,23 @@ public final class BufferManagerImpl implements BufferManager {
                      * state. We want to remove the invalid BCB from the hash chain,
                      * and return the buffer pool frame to the freelist. 
                      */
-                    log.error(this.getClass(), "locatePage",
-                            new MessageInstance(m_EM0002, pageId).toString());
-                    bucket.lockExclusive();
-                    try {
-                        bucket.chain.remove(nextBcb);
-                        synchronized (freeFrames) {
-                            freeFrames[++nextAvailableFrame] = frameNo;
-                        }
-                    } finally {
-                        bucket.unlockExclusive();
+                    if (latchMode != LATCH_NONE) {
+                        log.error(this.getClass(), "locatePage",
+                                new MessageInstance(m_EM0002, pageId)
+                                        .toString());
                     }
+                    partition.releaseFreeFrame(frameNo);
+                    abandonRead(partition, nextBcb);
                 }
             }
         }
 
-        assert nextBcb.getPageId().equals(bufferpool[frameNo].getPageId());
+        assert nextBcb.getPageId().equals(getPage(frameNo).getPageId());
+        nextBcb.pageTypeStatistics = statistics.forPageType(getPage(frameNo)
+                .getType());
+        if (latchMode != LATCH_NONE) {
+            statistics.noteMiss(nextBcb, isNew);
+        }
         /*
          * Read completed, at this point, we set the frameIndex,
          * which indicates to other threads that the page is now ready.
@@ -770,9 +1272,39 @@ public final class BufferManagerImpl implements BufferManager {
     }
 
     /**
-     * Check that the Buffer Manager is still valid.
+     * Tests whether the latch mode only allows the page to be read, in which
+     * case the page may be accessed while it is being written out.
      */
-    private void checkStatus() {
+    private static boolean isReadOnly(int latchMode) {
+        return latchMode == LATCH_SHARED || latchMode == LATCH_OPTIMISTIC;
+    }
+
+    /**
+     * Removes the BCB of a page that could not be read from the hash table.
+     * Other threads may be waiting for the read to complete; they are woken
+     * up, and will retry and not find the BCB.
+     */
+    private void abandonRead(BufferPartition partition,
+            BufferControlBlock bcb) {
+        partition.hashLock.lock();
+        try {
+            partition.bufferHash.remove(bcb);
+        } finally {
+            partition.hashLock.unlock();
+        }
+        bcb.lock();
+        try {
+            bcb.setInvalid(true);
+            bcb.signalIOCompleted();
+        } finally {
+            bcb.unlock();
+        }
+    }
+
+    /**
+     * Check that the Buffer Manager is still valid.
+     */
+    private void checkStatus() {
         if (stop) {
             exceptionHandler.errorThrow(this.getClass(),
                     "checkStatus", new BufferManagerException(
@@ -793,8 +1325,9 @@ public final class BufferManagerImpl implements BufferManager {
 
     /**
      * Search for a page in the buffer cache. If not found, read it from disk by
-     * calling {@link #locatePage(PageId, int, boolean, int, int) locatePage()}.
+     * calling {@link #locatePage(BufferPartition, PageId, boolean, int, int) locatePage()}.
      * 
+     * @param partition The partition that manages the page
      * @param pageid ID of the page being searched
      * @param isNew A flag to indicate that the page should not be read from
      *            disk
@@ -803,11 +1336,8 @@ public final class BufferManagerImpl implements BufferManager {
      * @param latchMode The desired latch mode
      * @return
      */
-    private BufferAccessBlockImpl getBCB(PageId pageid, boolean isNew,
-            int pagetype, int latchMode) {
-
-        int h = (pageid.hashCode() & 0x7FFFFFFF) % bufferHash.length;
-        BufferHashBucket bucket = bufferHash[h];
+    private BufferAccessBlockImpl getBCB(BufferPartition partition,
+            PageId pageid, boolean isNew, int pagetype, int latchMode) {
 
         /*
          * During the search we may find that the page we are looking for is in the
@@ -815,45 +1345,48 @@ public final class BufferManagerImpl implements BufferManager {
          * happens, we have to wait for the pending IO to be completed
          * before resuming the search. 
          */
+        long key = pageKey(pageid);
         boolean pendingIO = false;
         do {
             pendingIO = false;
-            BufferControlBlock toWaitFor = null;
-            bucket.lockShared();
+            BufferControlBlock bcb = partition.bufferHash.find(key);
+            if (bcb == null) {
+                break;
+            }
+            /*
+             * Usually the page is ready for use and can be pinned without
+             * locking the BCB. 
+             */
+            if (bcb.tryPin()) {
+                statistics.noteHit(bcb);
+                return newAccessBlock(latchMode, bcb);
+            }
+            bcb.lock();
             try {
-                for (BufferControlBlock bcb : bucket.chain) {
-                    bcb.lock();
-                    try {
-                        /*
-                         * Ignore invalid pages.
-                         */
-                        if (bcb.isValid() && bcb.getPageId().equals(pageid)) {
-                            /*
-                             * If the page is being read or written we must wait for
-                             * the IO to be completed.
-                             */
-                            if (bcb.isBeingRead()
-                                    || (bcb.isBeingWritten() && latchMode != LATCH_SHARED)) {
-                                toWaitFor = bcb;
-                                pendingIO = true;
-                            } else {
-                                statistics.getCacheHits().increment();
-                                return useBCB(pageid, latchMode, bcb);
-                            }
-                            break;
-                        }
-                    } finally {
-                        bcb.unlock();
+                /*
+                 * Ignore invalid pages.
+                 */
+                if (bcb.isValid()) {
+                    /*
+                     * If the page is being read or written we must wait for
+                     * the IO to be completed.
+                     */
+                    if (bcb.isBeingRead()
+                            || (bcb.isBeingWritten() && !isReadOnly(latchMode))) {
+                        pendingIO = true;
+                    } else {
+                        statistics.noteHit(bcb);
+                        return useBCB(pageid, latchMode, bcb);
                     }
                 }
             } finally {
-                bucket.unlockShared();
+                bcb.unlock();
             }
             if (pendingIO) {
                 /*
                  * Wait for the pending IO to complete
                  */
-                waitIfBusy(toWaitFor);
+                waitIfBusy(bcb);
             }
         } while (pendingIO);
 
@@ -861,7 +1394,10 @@ public final class BufferManagerImpl implements BufferManager {
          * Page not found in the memory cache, therefore must be
          * read in.
          */
-        return locatePage(pageid, h, isNew, pagetype, latchMode);
+        if (!isNew && latchMode != LATCH_NONE) {
+            noteAccess(pageid);
+        }
+        return locatePage(partition, pageid, isNew, pagetype, latchMode);
     }
 
     /**
@@ -875,8 +1411,6 @@ public final class BufferManagerImpl implements BufferManager {
      */
     private BufferAccessBlockImpl useBCB(PageId pageid, int latchMode,
             BufferControlBlock nextBcb) {
-        BufferAccessBlockImpl bab;
-
         if (nextBcb.isNewBuffer()) {
             /*
              * Page has just been read, so we do not
@@ -887,13 +1421,24 @@ public final class BufferManagerImpl implements BufferManager {
         } else {
             /*
              * Increment fix count while holding the
-             * bucket lock.
+             * BCB lock.
              */
             nextBcb.incrementFixCount();
         }
 
-        assert nextBcb.getFrameIndex() != -1;
         assert nextBcb.getPageId().equals(pageid);
+        return newAccessBlock(latchMode, nextBcb);
+    }
+
+    /**
+     * Wraps a pinned BCB in a BufferAccessBlock.
+     * 
+     * @param latchMode The latch mode
+     * @param nextBcb The BCB that is being returned
+     */
+    private BufferAccessBlockImpl newAccessBlock(int latchMode,
+            BufferControlBlock nextBcb) {
+        assert nextBcb.getFrameIndex() != -1;
         assert nextBcb.isInUse();
 
         /*
@@ -903,18 +1448,23 @@ public final class BufferManagerImpl implements BufferManager {
          * will subsequently be latched exclusively
          * or not.
          */
-        if (latchMode == LATCH_EXCLUSIVE || latchMode == LATCH_UPDATE) {
-            if (nextBcb.getRecoveryLsn().isNull() && logMgr != null) {
-                nextBcb.setRecoveryLsn(logMgr.getMaxLsn());
+        if ((latchMode == LATCH_EXCLUSIVE || latchMode == LATCH_UPDATE)
+                && logMgr != null && nextBcb.getRecoveryLsn().isNull()) {
+            nextBcb.lock();
+            try {
+                if (nextBcb.getRecoveryLsn().isNull()) {
+                    nextBcb.setRecoveryLsn(logMgr.getMaxLsn());
+                }
+            } finally {
+                nextBcb.unlock();
             }
         }
         /*
          * Allocate a Buffer Access Block and
          * initialize it
          */
-        bab = new BufferAccessBlockImpl(this, nextBcb, bufferpool[nextBcb
-                .getFrameIndex()]);
-        return bab;
+        return new BufferAccessBlockImpl(this, nextBcb, getPage(nextBcb
+                .getFrameIndex()));
     }
 
     /**
@@ -922,9 +1472,9 @@ public final class BufferManagerImpl implements BufferManager {
      * <p>
      * Algorithm:
      * <ol>
-     * <li>Call {@link #getBCB(org.simpledbm.rss.api.pm.PageId, boolean, int, int)} to search for the page in the buffer pool and
+     * <li>Call {@link #getBCB(BufferPartition, PageId, boolean, int, int)} to search for the page in the buffer pool and
      * read it in if necessary.</li>
-     * <li>Make the BCB the MRU page in the LRU chain</li>
+     * <li>Inform the replacement policy that the page has been accessed</li>
      * <li>Acquire page latch as requested.</li>
      * </ol>
      * {@inheritDoc}
@@ -933,6 +1483,7 @@ public final class BufferManagerImpl implements BufferManager {
             int latchMode, int hint) {
 
         statistics.getFixCounts().increment();
+        long startTime = fixTiming ? System.nanoTime() : 0;
 
         checkStatus();
 
@@ -945,47 +1496,34 @@ public final class BufferManagerImpl implements BufferManager {
             assert sc != null;
         }
 
-        BufferAccessBlockImpl bab = getBCB(pageid, isNew, pagetype, latchMode);
+        BufferPartition partition = getPartition(pageid);
+        BufferAccessBlockImpl bab = getBCB(partition, pageid, isNew, pagetype,
+                latchMode);
         BufferControlBlock nextBcb = bab.bcb;
         /* 
-         * At this point the page is in the hash table, but not in LRU.
+         * At this point the page may be in the hash table, but not known to the
+         * replacement policy.
          * This means it can be found by clients, but may be invisible to the
          * page replacement logic. However this is not a problem because:
          * a) If this is not the first time this page is being accessed,
-         * then it must already be on the LRU list and therefore must be
+         * then it must already be known to the replacement policy and therefore must be
          * visible to the page replacement and buffer writer algorithms.
          * This is true also when the page is dirty.
-         * b) The only time this page will not exist in the LRU if it
+         * b) The only time this page will not be known to the policy is if it
          * as been just read in or is a new page. In that case, the page
          * cannot be dirty, and its fixcount is at least 1, so either way
          * the page is not eligible for dirty pages list or for writing out.
          * 
-         * Make this page the most recently used page 
+         * Tell the replacement policy that the page has been accessed.
          */
-        lruLatch.writeLock().lock();
-        try {
-            nextBcb.lock();
-            try {
-                if (hint == 0) {
-                    if (lru.getLast() != nextBcb) {
-                        if (nextBcb.isMemberOf(lru)) {
-                            lru.remove(nextBcb);
-                        }
-                        lru.addLast(nextBcb);
-                    }
-                } else {
-                    if (lru.getFirst() != nextBcb) {
-                        if (nextBcb.isMemberOf(lru)) {
-                            lru.remove(nextBcb);
-                        }
-                        lru.addFirst(nextBcb);
-                    }
-                }
-            } finally {
-                nextBcb.unlock();
-            }
-        } finally {
-            lruLatch.writeLock().unlock();
+        partition.replacementPolicy.access(nextBcb, hint);
+        if (hint == HINT_SEQUENTIAL && !isNew) {
+            /*
+             * Pages read ahead are found in the buffer pool, so sequential
+             * access must also be tracked when there is a cache hit. Misses
+             * have already been noted.
+             */
+            noteAccess(pageid);
         }
 
         /*
@@ -997,12 +1535,18 @@ public final class BufferManagerImpl implements BufferManager {
             bab.latchExclusively();
         } else if (latchMode == LATCH_UPDATE) {
             bab.latchForUpdate();
+        } else if (latchMode == LATCH_OPTIMISTIC) {
+            bab.noteVersion();
         } else {
             bab.latchShared();
         }
 
         assert bab.bcb.getPageId().equals(bab.page.getPageId());
 
+        if (fixTiming) {
+            statistics.noteFix(nextBcb, System.nanoTime() - startTime);
+        }
+
         return bab;
     }
 
@@ -1030,6 +1574,249 @@ public final class BufferManagerImpl implements BufferManager {
         return fix(pageid, false, -1, LATCH_UPDATE, hint);
     }
 
+    public BufferAccessBlock fixOptimistic(PageId pageid, int hint) {
+        return fix(pageid, false, -1, LATCH_OPTIMISTIC, hint);
+    }
+
+    public void prefetch(PageId... pageids) {
+        if (prefetchService == null || stop || pageids.length == 0) {
+            return;
+        }
+        statistics.getPrefetchRequests().increment();
+        try {
+            prefetchService.execute(new Prefetcher(this, pageids));
+        } catch (RejectedExecutionException e) {
+            // The Buffer Manager is shutting down
+        }
+    }
+
+    /**
+     * Checks whether the page is present in the buffer pool, or is being read
+     * in.
+     */
+    private boolean isCached(BufferPartition partition, PageId pageid) {
+        return partition.bufferHash.find(pageKey(pageid)) != null;
+    }
+
+    /**
+     * Reads the page into the buffer pool on behalf of a prefetch request.
+     */
+    void prefetchPage(PageId pageid) {
+        BufferPartition partition = getPartition(pageid);
+        if (partition.numFrames < PREFETCH_FRAMES_PER_THREAD
+                * prefetchThreads) {
+            return;
+        }
+        if (readPage(partition, pageid)) {
+            statistics.getPrefetchedPages().increment();
+        }
+    }
+
+    /**
+     * Reads the page into the buffer pool if it is not already there. The
+     * page is not latched, and is released immediately.
+     * 
+     * @return True if the page was read
+     */
+    private boolean readPage(BufferPartition partition, PageId pageid) {
+        if (stop || isCached(partition, pageid) || !pageFactory.exists(pageid)) {
+            return false;
+        }
+        BufferAccessBlockImpl bab = getBCB(partition, pageid, false, -1,
+                LATCH_NONE);
+        if (bab == null) {
+            return false;
+        }
+        BufferControlBlock bcb = bab.bcb;
+        partition.replacementPolicy.access(bcb, HINT_PREFETCH);
+        bcb.lock();
+        try {
+            bcb.decrementFixCount();
+        } finally {
+            bcb.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the pages that were in the buffer pool when it was last saved.
+     * Only free frames are used, so that pages already read by clients are
+     * not displaced. Pages whose containers have not been opened yet are
+     * retried until {@link #WARMUP_WAIT} has elapsed.
+     * 
+     * @param pageids Pages to read, sorted by container and page number
+     */
+    void warmUp(PageId[] pageids) {
+        long deadline = System.currentTimeMillis() + WARMUP_WAIT;
+        ArrayList<PageId> pending = new ArrayList<PageId>(Arrays
+                .asList(pageids));
+        while (!pending.isEmpty()) {
+            ArrayList<PageId> unavailable = new ArrayList<PageId>();
+            for (PageId pageid : pending) {
+                if (stop) {
+                    return;
+                }
+                BufferPartition partition = getPartition(pageid);
+                if (!partition.hasFreeFrame()) {
+                    statistics.getWarmupPending().decrement();
+                } else if (pageFactory.exists(pageid)) {
+                    readPage(partition, pageid);
+                    statistics.getWarmupPending().decrement();
+                } else {
+                    unavailable.add(pageid);
+                }
+            }
+            pending = unavailable;
+            if (pending.isEmpty() || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        statistics.getWarmupPending().set(0);
+    }
+
+    /**
+     * Saves the list of pages in the buffer pool, so that they can be read
+     * back in after a restart. The list is ordered from the least to the most
+     * recently used page, as far as the replacement policies tell.
+     */
+    synchronized void saveHotPages() {
+        ArrayList<ArrayList<BufferControlBlock>> lists = new ArrayList<ArrayList<BufferControlBlock>>();
+        int max = 0;
+        for (BufferPartition partition : partitions) {
+            ArrayList<BufferControlBlock> buffers = partition.getBuffers();
+            lists.add(buffers);
+            max = Math.max(max, buffers.size());
+        }
+        /*
+         * Interleave the partitions, aligning their most recently used
+         * pages.
+         */
+        ArrayList<PageId> pageids = new ArrayList<PageId>();
+        for (int i = 0; i < max; i++) {
+            for (ArrayList<BufferControlBlock> buffers : lists) {
+                int j = i - (max - buffers.size());
+                if (j >= 0 && buffers.get(j).isValid()) {
+                    pageids.add(buffers.get(j).getPageId());
+                }
+            }
+        }
+        ByteBuffer bb = ByteBuffer.allocate(TypeSize.INTEGER + pageids.size()
+                * 2 * TypeSize.INTEGER);
+        bb.putInt(pageids.size());
+        for (PageId pageid : pageids) {
+            bb.putInt(pageid.getContainerId());
+            bb.putInt(pageid.getPageNumber());
+        }
+        bb.flip();
+        StorageContainer sc = storageFactory.create(warmupFile);
+        try {
+            sc.write(0, new ByteBuffer[] { bb });
+            sc.flush();
+        } finally {
+            sc.close();
+        }
+    }
+
+    /**
+     * Loads the list of pages saved by {@link #saveHotPages()}. If the list
+     * is longer than the buffer pool, the least recently used pages are
+     * dropped. The remaining pages are sorted so that they can be read
+     * sequentially.
+     */
+    private PageId[] loadHotPages() {
+        if (!storageFactory.exists(warmupFile)) {
+            return new PageId[0];
+        }
+        ByteBuffer bb;
+        StorageContainer sc = storageFactory.open(warmupFile);
+        try {
+            long size = sc.size();
+            if (size < TypeSize.INTEGER || size > Integer.MAX_VALUE) {
+                return new PageId[0];
+            }
+            bb = ByteBuffer.allocate((int) size);
+            sc.read(0, bb);
+        } finally {
+            sc.close();
+        }
+        bb.flip();
+        int n = bb.remaining() >= TypeSize.INTEGER ? bb.getInt() : -1;
+        if (n < 0 || bb.remaining() != n * 2 * TypeSize.INTEGER) {
+            /*
+             * The list was not saved completely; it is only a hint, so we
+             * ignore it.
+             */
+            return new PageId[0];
+        }
+        int skip = Math.max(0, n - bufferPoolSize);
+        bb.position(bb.position() + skip * 2 * TypeSize.INTEGER);
+        PageId[] pageids = new PageId[n - skip];
+        for (int i = 0; i < pageids.length; i++) {
+            int containerId = bb.getInt();
+            int pageNumber = bb.getInt();
+            pageids[i] = new PageId(containerId, pageNumber);
+        }
+        Arrays.sort(pageids);
+        return pageids;
+    }
+
+    /**
+     * Notes an access to a page, and if the page continues a sequential run of
+     * pages in the same container, reads ahead the pages that follow it.
+     */
+    private void noteAccess(PageId pageid) {
+        /*
+         * The read ahead window is limited to a quarter of the smallest
+         * partition of the pool, so that a scan cannot flush the pool with
+         * pages it has not yet asked for.
+         */
+        BufferPartition[] p = getPool(pageid.getContainerId()).partitions;
+        int depth = Math.min(prefetchDepth, p[p.length - 1].numFrames / 4);
+        if (depth <= 0 || prefetchService == null) {
+            return;
+        }
+        int containerId = pageid.getContainerId();
+        int pageNumber = pageid.getPageNumber();
+        SequentialDetector detector = detectors[(containerId & 0x7FFFFFFF)
+                % detectors.length];
+        int from = 0;
+        int to = -1;
+        synchronized (detector) {
+            if (detector.containerId == containerId
+                    && pageNumber == detector.lastPageNumber + 1) {
+                detector.runLength++;
+            } else if (detector.containerId != containerId
+                    || pageNumber != detector.lastPageNumber) {
+                detector.containerId = containerId;
+                detector.runLength = 1;
+                detector.prefetchedUpTo = pageNumber;
+            }
+            detector.lastPageNumber = pageNumber;
+            /*
+             * Once a sequential run is detected, keep at least half the
+             * read ahead window in front of the reader.
+             */
+            if (detector.runLength >= SEQUENTIAL_THRESHOLD
+                    && detector.prefetchedUpTo - pageNumber <= depth / 2) {
+                from = Math.max(pageNumber, detector.prefetchedUpTo) + 1;
+                to = pageNumber + depth;
+                detector.prefetchedUpTo = to;
+            }
+        }
+        if (to >= from) {
+            PageId[] pageids = new PageId[to - from + 1];
+            for (int i = 0; i < pageids.length; i++) {
+                pageids[i] = new PageId(containerId, from + i);
+            }
+            prefetch(pageids);
+        }
+    }
+
     private void incrementDirtyBuffersCount() {
         statistics.getDirtyBuffers().increment();
     }
@@ -1083,9 +1870,8 @@ public final class BufferManagerImpl implements BufferManager {
      */
     public DirtyPageInfo[] getDirtyPages() {
         ArrayList<DirtyPageInfo> dplist = new ArrayList<DirtyPageInfo>();
-        lruLatch.readLock().lock();
-        try {
-            for (BufferControlBlock bcb : lru) {
+        for (BufferPartition partition : partitions) {
+            for (BufferControlBlock bcb : partition.getBuffers()) {
                 bcb.lock();
                 try {
                     DirtyPageInfo dp = bcb.getDirtyPageInfo();
@@ -1096,10 +1882,8 @@ public final class BufferManagerImpl implements BufferManager {
                     bcb.unlock();
                 }
             }
-            return dplist.toArray(new DirtyPageInfo[0]);
-        } finally {
-            lruLatch.readLock().unlock();
         }
+        return dplist.toArray(new DirtyPageInfo[0]);
     }
 
     /**
@@ -1109,12 +1893,14 @@ public final class BufferManagerImpl implements BufferManager {
      * @param dirty_pages
      */
     public void updateRecoveryLsns(DirtyPageInfo[] dirty_pages) {
-        for (BufferControlBlock bcb : lru) {
-            if (bcb.isDirty() && bcb.isValid()) {
-                for (DirtyPageInfo dp : dirty_pages) {
-                    if (dp.getPageId().equals(bcb.getPageId())) {
-                        bcb.setRecoveryLsn(dp.getRealRecoveryLsn());
-                        break;
+        for (BufferPartition partition : partitions) {
+            for (BufferControlBlock bcb : partition.getBuffers()) {
+                if (bcb.isDirty() && bcb.isValid()) {
+                    for (DirtyPageInfo dp : dirty_pages) {
+                        if (dp.getPageId().equals(bcb.getPageId())) {
+                            bcb.setRecoveryLsn(dp.getRealRecoveryLsn());
+                            break;
+                        }
                     }
                 }
             }
@@ -1128,9 +1914,8 @@ public final class BufferManagerImpl implements BufferManager {
 
         while (true) {
             int writeWaits = 0;
-            lruLatch.readLock().lock();
-            try {
-                for (BufferControlBlock bcb : lru) {
+            for (BufferPartition partition : partitions) {
+                for (BufferControlBlock bcb : partition.getBuffers()) {
                     bcb.lock();
                     try {
                         if (bcb.isValid()
@@ -1153,8 +1938,6 @@ public final class BufferManagerImpl implements BufferManager {
                         bcb.unlock();
                     }
                 }
-            } finally {
-                lruLatch.readLock().unlock();
             }
             if (writeWaits == 0) {
                 break;
@@ -1167,22 +1950,13 @@ public final class BufferManagerImpl implements BufferManager {
         /*
          * TODO - the format of the output needs to be reviewed
          */
-        /*
-         * First make a list of all the dirty pages. By making a copy we avoid
-         * having to lock the LRU list for long.
-         */
-        lruLatch.readLock().lock();
-        try {
-            /*
-             * We scan the LRU list and make a note of the dirty pages.
-             */
-            for (BufferControlBlock bcb : lru) {
-                int h = (bcb.pageId.hashCode() & 0x7FFFFFFF)
-                        % bufferHash.length;
-                stream.println(bcb + ", buffer hash: " + h);
+        for (int i = 0; i < partitions.length; i++) {
+            BufferPartition partition = partitions[i];
+            for (BufferControlBlock bcb : partition.getBuffers()) {
+                int h = partition.bufferHash.home(bcb.key);
+                stream.println(bcb + ", partition: " + i + ", buffer hash: "
+                        + h);
             }
-        } finally {
-            lruLatch.readLock().unlock();
         }
     }
 
@@ -1192,7 +1966,7 @@ public final class BufferManagerImpl implements BufferManager {
      * @param bcb
      */
     private void flushUsingWriteAheadLogProtocol(BufferControlBlock bcb) {
-        Page page = bufferpool[bcb.getFrameIndex()];
+        Page page = getPage(bcb.getFrameIndex());
         assert bcb.getPageId().equals(page.getPageId());
         Lsn lsn = page.getPageLsn();
         if (logMgr != null && !lsn.isNull()) {
@@ -1202,104 +1976,449 @@ public final class BufferManagerImpl implements BufferManager {
              */
             logMgr.flush(lsn);
         }
-        pageFactory.store(page);
+        pageFactory.store(page, getFrameBuffer(bcb.getFrameIndex()));
         decrementDirtyBuffersCount();
+        statistics.noteWrite(bcb);
+        statistics.getWriteCalls().increment();
     }
 
     /**
-     * Write a buffer page. No locks are held during IO. A flag is set to alert
-     * other processes that the page is being written.
+     * Starts writing a run of buffer pages that are adjacent in their
+     * container, using a single write. No locks are held during IO.
      * 
-     * @param bcb
+     * @param run BCBs of the pages, in page number order
+     * @return The write, which must be completed by
+     *         {@link #completeRun(PendingWrite)}
+     */
+    private PendingWrite flushUsingWriteAheadLogProtocol(
+            ArrayList<BufferControlBlock> run) {
+        Page[] pages = new Page[run.size()];
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        Lsn maxLsn = new Lsn();
+        for (int i = 0; i < pages.length; i++) {
+            BufferControlBlock bcb = run.get(i);
+            pages[i] = getPage(bcb.getFrameIndex());
+            assert bcb.getPageId().equals(pages[i].getPageId());
+            buffers[i] = getFrameBuffer(bcb.getFrameIndex());
+            Lsn lsn = pages[i].getPageLsn();
+            if (maxLsn.lessThan(lsn)) {
+                maxLsn = lsn;
+            }
+        }
+        if (logMgr != null && !maxLsn.isNull()) {
+            /*
+             * A single log flush satisfies the Write Ahead Log protocol
+             * for all the pages.
+             */
+            logMgr.flush(maxLsn);
+        }
+        return new PendingWrite(new ArrayList<BufferControlBlock>(run),
+                pageFactory.storeAsync(pages, buffers));
+    }
+
+    /**
+     * Waits for a write started by
+     * {@link #flushUsingWriteAheadLogProtocol(ArrayList)} to complete, and
+     * marks the pages clean.
+     * 
+     * @return The error that caused the write to fail, or null
      */
-    private void cleanBCB(BufferControlBlock bcb) {
+    private Throwable completeRun(PendingWrite write) {
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    write.future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Must wait for the write to complete
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return e.getCause();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (BufferControlBlock bcb : write.run) {
+            decrementDirtyBuffersCount();
+            statistics.noteWrite(bcb);
+        }
+        statistics.getWriteCalls().increment();
+        for (BufferControlBlock bcb : write.run) {
+            completeWrite(bcb);
+        }
+        return null;
+    }
 
-        boolean doWrite = false;
+    /**
+     * Checks whether a dirty page can be written out, and if so, sets a flag
+     * to alert other processes that the page is being written.
+     * 
+     * @return True if the page has been reserved for writing
+     */
+    private boolean reserveForWrite(BufferControlBlock bcb) {
         bcb.lock();
         try {
             /*
              * Check that all pre-conditions are met.
              */
             if (bcb.isValid() && !bcb.isBeingRead() && !bcb.isBeingWritten()
-                    && bcb.isDirty() && !bcb.isInUse()) {
+                    && bcb.isDirty()) {
                 /*
                  * Set a flag to indicate that the page is being written out.
                  * Pages can be accessed for reading (shared mode) when this is
-                 * true, but not for writing (exclusive mode).
+                 * true, but not for writing (exclusive mode). The flag must be
+                 * set before the fix count is tested; see
+                 * BufferControlBlock.tryPin().
                  */
                 bcb.setBeingWritten(true);
-                doWrite = true;
+                if (bcb.isInUse()) {
+                    bcb.setBeingWritten(false);
+                    return false;
+                }
                 if (log.isTraceEnabled()) {
                     log.trace(this.getClass(), "writeBuffers",
                             "SIMPLEDBM-DEBUG: WRITING Page " + bcb.getPageId());
                 }
+                return true;
             }
+            return false;
         } finally {
             bcb.unlock();
         }
+    }
 
-        if (doWrite) {
-            flushUsingWriteAheadLogProtocol(bcb);
-            bcb.lock();
-            try {
-                if (log.isTraceEnabled()) {
-                    log.trace(this.getClass(), "writeBuffers",
-                            "SIMPLEDBM-DEBUG: COMPLETED WRITING Page "
-                                    + bcb.getPageId());
-                }
-                bcb.setRecoveryLsn(new Lsn());
-                bcb.setDirty(false);
-                bcb.setBeingWritten(false);
-                bcb.signalIOCompleted();
-            } finally {
-                bcb.unlock();
+    /**
+     * Marks a page that has been written out as clean, and informs clients
+     * waiting for the write to complete.
+     */
+    private void completeWrite(BufferControlBlock bcb) {
+        bcb.lock();
+        try {
+            if (log.isTraceEnabled()) {
+                log.trace(this.getClass(), "writeBuffers",
+                        "SIMPLEDBM-DEBUG: COMPLETED WRITING Page "
+                                + bcb.getPageId());
             }
+            bcb.setRecoveryLsn(new Lsn());
+            bcb.setDirty(false);
+            bcb.setBeingWritten(false);
+            bcb.signalIOCompleted();
+        } finally {
+            bcb.unlock();
         }
     }
 
     /**
-     * Writes dirty pages to disk. After each page is written, clients waiting
-     * for free frames are informed so that they can try again.
+     * Writes out dirty pages, which must be sorted by container and page
+     * number. Pages that are adjacent in a container are combined into a
+     * single write of up to {@link #writerMaxPages} pages. Up to
+     * {@link #writerQueueDepth} writes are kept in progress at the same
+     * time. Pages that are in use or busy are skipped.
      */
-    public void writeBuffers() {
-
-        /*
-         * First make a list of all the dirty pages. By making a copy we avoid
-         * having to lock the LRU list for long.
-         */
-        ArrayList<BufferControlBlock> dplist = new ArrayList<BufferControlBlock>();
-        lruLatch.readLock().lock();
+    void writePages(List<BufferControlBlock> dplist) {
+        ArrayList<BufferControlBlock> run = new ArrayList<BufferControlBlock>(
+                writerMaxPages);
+        LinkedList<PendingWrite> pending = new LinkedList<PendingWrite>();
+        Throwable error = null;
         try {
+            for (BufferControlBlock bcb : dplist) {
+                if (!run.isEmpty()) {
+                    PageId last = run.get(run.size() - 1).getPageId();
+                    if (run.size() == writerMaxPages
+                            || last.getContainerId() != bcb.getPageId()
+                                    .getContainerId()
+                            || last.getPageNumber() + 1 != bcb.getPageId()
+                                    .getPageNumber()) {
+                        pending.add(flushUsingWriteAheadLogProtocol(run));
+                        run.clear();
+                        if (pending.size() >= writerQueueDepth) {
+                            error = completeRun(pending.removeFirst());
+                            if (error != null) {
+                                break;
+                            }
+                        }
+                    }
+                }
+                if (reserveForWrite(bcb)) {
+                    run.add(bcb);
+                }
+            }
+            if (!run.isEmpty() && error == null) {
+                pending.add(flushUsingWriteAheadLogProtocol(run));
+            }
+        } finally {
             /*
-             * We scan the LRU list and make a note of the dirty pages.
+             * Writes that have been started must be waited for even if
+             * another write failed, as their frames must not be reused
+             * while they are in progress.
              */
-            for (BufferControlBlock bcb : lru) {
-                if (bcb.isDirty()) {
-                    dplist.add(bcb);
+            while (!pending.isEmpty()) {
+                Throwable e = completeRun(pending.removeFirst());
+                if (error == null) {
+                    error = e;
                 }
             }
-        } finally {
-            lruLatch.readLock().unlock();
         }
-
-        /*
-         * Write out the dirty pages.
-         */
-        for (BufferControlBlock bcb : dplist) {
-            cleanBCB(bcb);
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            exceptionHandler.errorThrow(this.getClass(), "writePages",
+                    new BufferManagerException(new MessageInstance(m_EM0003),
+                            error));
         }
     }
 
-    public final StorageManager getStorageManager() {
-        return storageManager;
-    }
-
-    public final void setStorageManager(StorageManager storageManager) {
-        this.storageManager = storageManager;
+    /**
+     * Resizes the default pool.
+     */
+    public int resize(int numBuffers) {
+        return resize(DEFAULT_POOL, numBuffers);
     }
 
     /**
-     * Maintains administrative information about pages buffered in memory.
+     * Resizes each partition of the pool in turn. The number of partitions
+     * does not change, so pages stay in the partition they belong to, and
+     * each partition must retain at least one frame.
+     */
+    public int resize(String poolName, int numBuffers) {
+        synchronized (resizeLock) {
+            checkStatus();
+            BufferPool pool = null;
+            for (BufferPool p : pools) {
+                if (p.name.equals(poolName)) {
+                    pool = p;
+                }
+            }
+            if (pool == null) {
+                exceptionHandler.errorThrow(this.getClass(), "resize",
+                        new BufferManagerException(new MessageInstance(
+                                m_EM0014, poolName)));
+            }
+            BufferPartition[] partitions = pool.partitions;
+            if (numBuffers < partitions.length) {
+                numBuffers = partitions.length;
+            }
+            int oldSize = pool.numFrames;
+            int total = 0;
+            for (int i = 0; i < partitions.length; i++) {
+                BufferPartition partition = partitions[i];
+                int target = partitionSize(numBuffers, partitions.length, i);
+                if (target > partition.numFrames) {
+                    growPartition(partition, target - partition.numFrames);
+                } else if (target < partition.numFrames) {
+                    shrinkPartition(partition, partition.numFrames - target);
+                }
+                if (partition.bufferHash.capacity() != BufferHashTable
+                        .capacityFor(partition.numFrames)) {
+                    partition.rehash();
+                }
+                total += partition.numFrames;
+            }
+            bufferPoolSize += total - oldSize;
+            pool.numFrames = total;
+            updateSizeStatistics();
+            log.info(this.getClass(), "resize", new MessageInstance(m_IM0013,
+                    poolName, oldSize, total).toString());
+            return total;
+        }
+    }
+
+    /**
+     * Adds frames to a partition. Caller must hold {@link #resizeLock}.
+     */
+    private void growPartition(BufferPartition partition, int n) {
+        int[] frameNos = new int[n];
+        int maxFrameNo = 0;
+        for (int i = 0; i < n; i++) {
+            frameNos[i] = partition.nextFrame();
+            maxFrameNo = Math.max(maxFrameNo, frameNos[i]);
+        }
+        ensureFrameCapacity(maxFrameNo + 1);
+        ByteBuffer[] buffers = allocateFrames(n);
+        for (int i = 0; i < n; i++) {
+            setFrameBuffer(frameNos[i], buffers[i]);
+        }
+        partition.replacementPolicy.lockExclusive();
+        try {
+            partition.replacementPolicy.resize(partition.numFrames + n,
+                    partition.localFrames);
+        } finally {
+            partition.replacementPolicy.unlockExclusive();
+        }
+        for (int i = 0; i < n; i++) {
+            partition.addFrame(frameNos[i]);
+        }
+    }
+
+    /**
+     * Removes up to n frames from a partition. Free frames are taken first,
+     * then frames holding clean pages, and finally frames holding dirty
+     * pages, which are written out before being released. Frames of pages
+     * that are in use cannot be released, so fewer than n frames may be
+     * removed. Caller must hold {@link #resizeLock}.
+     */
+    private void shrinkPartition(BufferPartition partition, int n) {
+        int removed = 0;
+        boolean cleanOnly = true;
+        while (removed < n) {
+            int frameNo = partition.allocateFreeFrame();
+            if (frameNo == -1) {
+                BufferControlBlock victim = partition.replacementPolicy
+                        .selectVictim(this, cleanOnly);
+                if (victim == null) {
+                    if (!cleanOnly) {
+                        break;
+                    }
+                    cleanOnly = false;
+                    continue;
+                }
+                frameNo = evict(partition, victim);
+                if (frameNo == -1) {
+                    continue;
+                }
+            }
+            /*
+             * Release the buffer; the memory is reclaimed by the garbage
+             * collector.
+             */
+            setFrameBuffer(frameNo, null);
+            if (offHeap) {
+                statistics.addOffHeapBytes(-pageFactory.getPageSize());
+            }
+            partition.retireFrame(frameNo);
+            removed++;
+        }
+        partition.replacementPolicy.lockExclusive();
+        try {
+            partition.replacementPolicy.resize(partition.numFrames,
+                    partition.localFrames);
+        } finally {
+            partition.replacementPolicy.unlockExclusive();
+        }
+    }
+
+    private void updateSizeStatistics() {
+        int hashsize = 0;
+        for (BufferPartition partition : partitions) {
+            hashsize += partition.bufferHash.capacity();
+        }
+        statistics.setBufferPoolSize(bufferPoolSize);
+        statistics.setHashTableSize(hashsize);
+        for (BufferPool pool : pools) {
+            statistics.setPoolSize(pool.name, pool.numFrames);
+        }
+    }
+
+    /**
+     * Writes dirty pages to disk. The pages are written in order of container
+     * and page number, so that adjacent pages can be written together. If
+     * there is more than one writer thread, the containers are written in
+     * parallel.
+     */
+    public void writeBuffers() {
+
+        /*
+         * First make a list of all the dirty pages. By making a copy we avoid
+         * having to lock the replacement policy for long.
+         */
+        ArrayList<BufferControlBlock> dplist = new ArrayList<BufferControlBlock>();
+        for (BufferPartition partition : partitions) {
+            /*
+             * We scan the buffers and make a note of the dirty pages.
+             */
+            for (BufferControlBlock bcb : partition.getBuffers()) {
+                if (bcb.isDirty()) {
+                    dplist.add(bcb);
+                }
+            }
+        }
+        Collections.sort(dplist, PAGE_ORDER);
+
+        /*
+         * Write out the dirty pages.
+         */
+        if (writerService == null) {
+            writePages(dplist);
+            return;
+        }
+        ArrayList<Future<?>> writes = new ArrayList<Future<?>>();
+        int from = 0;
+        for (int i = 1; i <= dplist.size(); i++) {
+            if (i == dplist.size()
+                    || dplist.get(i).getPageId().getContainerId() != dplist
+                            .get(from).getPageId().getContainerId()) {
+                List<BufferControlBlock> pages = dplist.subList(from, i);
+                try {
+                    writes.add(writerService.submit(new PageWriter(this,
+                            pages)));
+                } catch (RejectedExecutionException e) {
+                    // The Buffer Manager is shutting down
+                    writePages(pages);
+                }
+                from = i;
+            }
+        }
+        Throwable error = null;
+        boolean interrupted = false;
+        for (Future<?> write : writes) {
+            for (;;) {
+                try {
+                    write.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Must wait for all the writes to complete
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            exceptionHandler.errorThrow(this.getClass(), "writeBuffers",
+                    new BufferManagerException(new MessageInstance(m_EM0003),
+                            error));
+        }
+    }
+
+    public final StorageManager getStorageManager() {
+        return storageManager;
+    }
+
+    public final void setStorageManager(StorageManager storageManager) {
+        this.storageManager = storageManager;
+    }
+
+    public final StorageContainerFactory getStorageFactory() {
+        return storageFactory;
+    }
+
+    /**
+     * Sets the factory used to create the container in which the list of
+     * pages in the buffer pool is saved. Must be called before
+     * {@link #start()} for warm-up to be enabled.
+     */
+    public final void setStorageFactory(StorageContainerFactory storageFactory) {
+        this.storageFactory = storageFactory;
+    }
+
+    /**
+     * Maintains administrative information about pages buffered in memory.
      * Information includes the location of the page (frame) within the buffer
      * pool, the number of times the page has been fixed by clients, the oldest
      * LSN that may have made a change to the page, whether the poge is dirty,
@@ -1333,6 +2452,23 @@ public final class BufferManagerImpl implements BufferManager {
          */
         private final PageId pageId;
 
+        /**
+         * The page id packed into a long, used as the hash table key.
+         */
+        final long key;
+
+        /**
+         * Statistics of the container that the page belongs to. Set before
+         * the BCB is added to the hash table.
+         */
+        PageGroupStatistics containerStatistics;
+
+        /**
+         * Statistics of the type of the page. Set once the page has been
+         * read in, before the frame index is set.
+         */
+        PageGroupStatistics pageTypeStatistics;
+
         /**
          * Location of the page within the buffer pool array. When this is -1,
          * the system assumes that the page has yet not been read from disk.
@@ -1369,11 +2505,11 @@ public final class BufferManagerImpl implements BufferManager {
 
         /**
          * Maintains count of the number of fixes. A fixed page cannot be be the
-         * victim of the LRU replacement algorithm. A fixed page also cannot be
+         * victim of the page replacement algorithm. A fixed page also cannot be
          * written out by the Buffer Writer, however, a page may be fixed in
          * shared mode after Buffer Writer has marked the page for writing.
          */
-        private volatile int fixcount = 1;
+        private final AtomicInteger fixcount = new AtomicInteger(1);
 
         /**
          * LSN of the oldest log record that may have made changes to the
@@ -1389,6 +2525,12 @@ public final class BufferManagerImpl implements BufferManager {
          */
         private volatile boolean writeInProgress = false;
 
+        /**
+         * Reference bit used by the replacement policy. Set when the page is
+         * accessed without the sequential hint; cleared by the CLOCK sweep.
+         */
+        private volatile boolean referenced = false;
+
         /**
          * Indicates that the page has just been read in. This is used to
          * determine whether to increment the fixcount or not.
@@ -1407,6 +2549,7 @@ public final class BufferManagerImpl implements BufferManager {
 
         BufferControlBlock(PageId pageId) {
             this.pageId = pageId;
+            this.key = pageKey(pageId);
         }
 
         @Override
@@ -1434,16 +2577,36 @@ public final class BufferManagerImpl implements BufferManager {
         }
 
         final boolean isInUse() {
-            return fixcount > 0;
+            return fixcount.get() > 0;
         }
 
         final void incrementFixCount() {
-            fixcount++;
+            fixcount.incrementAndGet();
         }
 
         final void decrementFixCount() {
-            fixcount--;
-            assert fixcount >= 0;
+            int n = fixcount.decrementAndGet();
+            assert n >= 0;
+        }
+
+        /**
+         * Pins the buffer without locking the BCB, provided that the page
+         * has been read in and is not being written out, and returns true.
+         * Otherwise the pin is undone, and the caller must examine the BCB
+         * while holding the lock.
+         * <p>
+         * The fix count is incremented before the flags are tested. Threads
+         * that evict or write out the page set the write flag before testing
+         * the fix count, so at least one side sees the other. The BCB is
+         * invalidated before an eviction clears the write flag.
+         */
+        final boolean tryPin() {
+            fixcount.incrementAndGet();
+            if (!writeInProgress && !invalid && frameIndex != -1) {
+                return true;
+            }
+            fixcount.decrementAndGet();
+            return false;
         }
 
         final boolean isValid() {
@@ -1508,6 +2671,14 @@ public final class BufferManagerImpl implements BufferManager {
             return null;
         }
 
+        final boolean isReferenced() {
+            return referenced;
+        }
+
+        final void setReferenced(boolean value) {
+            referenced = value;
+        }
+
         final void setNewBuffer(boolean newBuffer) {
             this.newBuffer = newBuffer;
         }
@@ -1545,124 +2716,944 @@ public final class BufferManagerImpl implements BufferManager {
     }
 
     /**
-     * Maintains the hash table chain, and protects with a latch.
-     * 
-     * @author Dibyendu Majumdar
-     * @since 20-Aug-2005
+     * An open addressing hash table of BCBs, keyed by the packed page id
+     * returned by {@link BufferManagerImpl#pageKey(PageId)}. Lookups do not
+     * lock the table; they probe the slots that follow the home slot of the
+     * key until an empty slot is found. Changes are made under the hash table
+     * lock of the partition. A removed BCB is replaced by a marker so that
+     * probe sequences are not broken, and the partition rebuilds the table
+     * when it runs out of empty slots.
+     * <p>
+     * As lookups are not locked, a lookup may find a BCB that is being
+     * removed, or miss one that is being added. BCBs that are found must be
+     * checked once they have been pinned or locked, and a page that is not
+     * found must be searched for again while holding the lock.
      */
-    static final class BufferHashBucket {
+    static final class BufferHashTable {
+
+        /**
+         * Marks a slot whose BCB has been removed.
+         */
+        static final BufferControlBlock REMOVED = new BufferControlBlock(
+                new PageId());
+
+        final AtomicReferenceArray<BufferControlBlock> slots;
+
+        final int mask;
+
         /**
-         * Protects access to the hash chain.
+         * Number of BCBs in the table.
          */
-        final private ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+        int size;
 
         /**
-         * A linked list of hashed BCBs.
-         * <p>
-         * Although the java.util.LinkedList is inefficient for removal, we
-         * don't bother with a custom implementation here because the hash
-         * bucket chains are expected to be small.
+         * Number of slots that are not empty, including removed slots.
          */
-        final LinkedList<BufferControlBlock> chain = new LinkedList<BufferControlBlock>();
+        int used;
 
-        final void lockExclusive() {
-            latch.writeLock().lock();
+        BufferHashTable(int capacity) {
+            slots = new AtomicReferenceArray<BufferControlBlock>(capacity);
+            mask = capacity - 1;
         }
 
-        final void unlockExclusive() {
-            latch.writeLock().unlock();
+        /**
+         * Returns the table capacity for the specified number of BCBs; this
+         * is a power of two, with at least twice as many slots as BCBs.
+         */
+        static int capacityFor(int n) {
+            int capacity = 16;
+            while (capacity < n * 2) {
+                capacity <<= 1;
+            }
+            return capacity;
         }
 
-        final boolean tryLockExclusive() {
-            return latch.writeLock().tryLock();
+        final int capacity() {
+            return mask + 1;
         }
 
-        final void lockShared() {
-            latch.readLock().lock();
+        /**
+         * Returns the home slot of the key.
+         */
+        final int home(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32)) & mask;
         }
 
-        final void unlockShared() {
-            latch.readLock().unlock();
+        /**
+         * Finds the valid BCB for the key. BCBs that have been invalidated
+         * remain in the table until they are evicted, and are skipped.
+         */
+        final BufferControlBlock find(long key) {
+            for (int i = home(key);; i = (i + 1) & mask) {
+                BufferControlBlock bcb = slots.get(i);
+                if (bcb == null) {
+                    return null;
+                }
+                if (bcb.key == key && bcb != REMOVED && bcb.isValid()) {
+                    return bcb;
+                }
+            }
+        }
+
+        /**
+         * Adds a BCB, reusing a removed slot if possible. Returns false if
+         * the table does not have enough empty slots left.
+         */
+        final boolean add(BufferControlBlock bcb) {
+            for (int i = home(bcb.key);; i = (i + 1) & mask) {
+                BufferControlBlock e = slots.get(i);
+                if (e == REMOVED) {
+                    slots.set(i, bcb);
+                    size++;
+                    return true;
+                }
+                if (e == null) {
+                    if ((used + 1) * 4 > capacity() * 3) {
+                        return false;
+                    }
+                    slots.set(i, bcb);
+                    used++;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        final void remove(BufferControlBlock bcb) {
+            for (int i = home(bcb.key);; i = (i + 1) & mask) {
+                BufferControlBlock e = slots.get(i);
+                if (e == null) {
+                    return;
+                }
+                if (e == bcb) {
+                    slots.set(i, REMOVED);
+                    size--;
+                    return;
+                }
+            }
         }
 
-        final boolean tryLockShared() {
-            return latch.readLock().tryLock();
+        /**
+         * Copies the BCBs to another table, which must be large enough.
+         */
+        final void copyTo(BufferHashTable table) {
+            for (int i = 0; i < slots.length(); i++) {
+                BufferControlBlock bcb = slots.get(i);
+                if (bcb != null && bcb != REMOVED) {
+                    boolean added = table.add(bcb);
+                    assert added;
+                }
+            }
         }
     }
 
     /**
-     * Default implementation of BufferAcessBlock. Keeps track of the latch
-     * state so that the correct unlatch action can be taken.
-     * 
-     * @author Dibyendu Majumdar
-     * @since 21-Aug-2005
+     * A named pool of buffers, made up of one or more partitions. Containers
+     * are assigned to a pool through the properties
+     * <code>bufferpool.pool.&lt;name&gt;.containers</code>, and their pages
+     * only ever occupy frames of that pool, so that for example the pages of
+     * an index can be kept resident while a table that is scanned once
+     * recycles a small pool of its own.
      */
-    static final class BufferAccessBlockImpl implements BufferAccessBlock {
-
-        final BufferControlBlock bcb;
+    static final class BufferPool {
 
-        final Page page;
+        final String name;
 
-        final BufferManagerImpl bufMgr;
+        /**
+         * Replacement policy used by the partitions of the pool.
+         */
+        final String policy;
 
-        boolean dirty = false;
+        final BufferPartition[] partitions;
 
-        int latchMode = 0;
+        /**
+         * Number of frames in the pool. Changed under
+         * {@link BufferManagerImpl#resizeLock}.
+         */
+        volatile int numFrames;
 
-        BufferAccessBlockImpl(BufferManagerImpl bufMgr, BufferControlBlock bcb,
-                Page page) {
-            this.bufMgr = bufMgr;
-            this.bcb = bcb;
-            this.page = page;
+        BufferPool(String name, int numFrames, int npartitions, String policy) {
+            if (numFrames < 1) {
+                numFrames = 1;
+            }
+            if (npartitions < 1) {
+                npartitions = 1;
+            } else if (npartitions > numFrames) {
+                npartitions = numFrames;
+            }
+            this.name = name;
+            this.numFrames = numFrames;
+            this.policy = policy;
+            this.partitions = new BufferPartition[npartitions];
         }
+    }
 
-        void latchExclusively() {
-            page.latchExclusive();
-            latchMode = BufferManagerImpl.LATCH_EXCLUSIVE;
-        }
+    /**
+     * A partition of the buffer pool. Each partition has its own hash table,
+     * replacement policy and free frame list. The frames of a partition are
+     * interleaved with those of other partitions; frame <code>f</code>
+     * belongs to partition <code>f % stride</code>, and is known locally by
+     * the index <code>f / stride</code>.
+     */
+    static final class BufferPartition {
 
-        void latchForUpdate() {
-            page.latchUpdate();
-            latchMode = BufferManagerImpl.LATCH_UPDATE;
-        }
+        /**
+         * To enable quick retrieval of cached pages, a hash table of BCBs is
+         * maintained. All pages that are in the partition must be present in
+         * the hash table. The table is replaced when it fills up, or when the
+         * partition is resized.
+         */
+        volatile BufferHashTable bufferHash;
 
-        void latchShared() {
-            page.latchShared();
-            latchMode = BufferManagerImpl.LATCH_SHARED;
-        }
+        /**
+         * Serializes changes to the hash table. Lookups do not need it.
+         */
+        final ReentrantLock hashLock = new ReentrantLock();
 
-        void unlatch() {
-            if (latchMode == BufferManagerImpl.LATCH_EXCLUSIVE) {
-                page.unlatchExclusive();
-            } else if (latchMode == BufferManagerImpl.LATCH_UPDATE) {
-                page.unlatchUpdate();
-            } else if (latchMode == BufferManagerImpl.LATCH_SHARED) {
-                page.unlatchShared();
+        /**
+         * BCBs in the partition are also tracked by the replacement policy,
+         * which decides which page should be evicted when a free frame is
+         * needed.
+         */
+        final ReplacementPolicy replacementPolicy;
+
+        /**
+         * A stack of available free slots in the partition.
+         * {@link #nextAvailableFrame} points to the top of the stack. Access
+         * must be synchronized on the partition for thread safety.
+         */
+        int[] freeFrames;
+
+        /**
+         * Points to the top of the {@link #freeFrames} stack. Access to this
+         * is protected by synchronizing the partition.
+         */
+        int nextAvailableFrame = -1;
+
+        /**
+         * Number of frames currently assigned to the partition.
+         */
+        volatile int numFrames;
+
+        /**
+         * Position of the partition in the buffer pool.
+         */
+        final int index;
+
+        /**
+         * Number of partitions in the buffer pool.
+         */
+        final int stride;
+
+        /**
+         * Number of local frame indexes used so far. Frames released by
+         * shrinking the partition are kept in {@link #retiredFrames} for
+         * reuse. Only accessed by the thread resizing the buffer pool.
+         */
+        int localFrames;
+
+        final ArrayList<Integer> retiredFrames = new ArrayList<Integer>();
+
+        BufferPartition(int index, int stride, int numFrames, String policy) {
+            this.index = index;
+            this.stride = stride;
+            if (POLICY_CLOCK.equalsIgnoreCase(policy)) {
+                replacementPolicy = new ClockPolicy(stride, numFrames);
+            } else if (POLICY_2Q.equalsIgnoreCase(policy)) {
+                replacementPolicy = new TwoQueuePolicy(numFrames);
             } else {
-                bufMgr.exceptionHandler.errorThrow(this.getClass(),
-                        "unlatch", new SimpleDBMException(new MessageInstance(
-                                m_EM0007)));
+                replacementPolicy = new LRUPolicy();
             }
-            latchMode = 0;
+            freeFrames = new int[numFrames];
+            for (int i = 0; i < numFrames; i++) {
+                freeFrames[++nextAvailableFrame] = index + i * stride;
+            }
+            this.numFrames = numFrames;
+            this.localFrames = numFrames;
+            bufferHash = new BufferHashTable(BufferHashTable
+                    .capacityFor(numFrames));
         }
 
-        public boolean isLatchedExclusively() {
-            return latchMode == BufferManagerImpl.LATCH_EXCLUSIVE;
+        /**
+         * Adds a BCB to the hash table, rebuilding the table first if it is
+         * full. Caller must hold {@link #hashLock}.
+         */
+        final void addBuffer(BufferControlBlock bcb) {
+            if (!bufferHash.add(bcb)) {
+                rebuildHashTable(Math.max(BufferHashTable
+                        .capacityFor(numFrames), BufferHashTable
+                        .capacityFor(bufferHash.size + 1)));
+                bufferHash.add(bcb);
+            }
         }
 
-        public boolean isLatchedForUpdate() {
-            return latchMode == BufferManagerImpl.LATCH_UPDATE;
+        /**
+         * Rebuilds the hash table to suit the current size of the partition.
+         */
+        final void rehash() {
+            hashLock.lock();
+            try {
+                rebuildHashTable(Math.max(BufferHashTable
+                        .capacityFor(numFrames), BufferHashTable
+                        .capacityFor(bufferHash.size)));
+            } finally {
+                hashLock.unlock();
+            }
         }
 
-        public boolean isLatchedShared() {
-            return latchMode == BufferManagerImpl.LATCH_SHARED;
+        /**
+         * Replaces the hash table with one of the specified capacity, which
+         * leaves out the removed slots. Threads that are probing the old
+         * table carry on undisturbed. Caller must hold {@link #hashLock}.
+         */
+        private void rebuildHashTable(int capacity) {
+            BufferHashTable table = new BufferHashTable(capacity);
+            bufferHash.copyTo(table);
+            bufferHash = table;
         }
 
-        /* (non-Javadoc)
-         * @see org.simpledbm.bm.BufferAccessBlock#setDirty(org.simpledbm.log.Lsn)
+        /**
+         * Returns an unused frame, or -1 if there isn't one.
          */
-        public void setDirty(Lsn lsn) {
-            if (latchMode == BufferManagerImpl.LATCH_EXCLUSIVE) {
+        final synchronized int allocateFreeFrame() {
+            if (nextAvailableFrame >= 0) {
+                return freeFrames[nextAvailableFrame--];
+            }
+            return -1;
+        }
+
+        final synchronized boolean hasFreeFrame() {
+            return nextAvailableFrame >= 0;
+        }
+
+        final synchronized void releaseFreeFrame(int frameNo) {
+            freeFrames[++nextAvailableFrame] = frameNo;
+        }
+
+        /**
+         * Picks the number of a frame to be added to the partition, reusing
+         * a retired frame if there is one. The frame is not usable until
+         * passed to {@link #addFrame(int)}.
+         */
+        final int nextFrame() {
+            if (!retiredFrames.isEmpty()) {
+                return retiredFrames.remove(retiredFrames.size() - 1);
+            }
+            return index + localFrames++ * stride;
+        }
+
+        /**
+         * Adds a new frame to the partition, making it available for use.
+         */
+        final synchronized void addFrame(int frameNo) {
+            if (nextAvailableFrame + 1 == freeFrames.length) {
+                int[] newFreeFrames = new int[freeFrames.length * 2];
+                System.arraycopy(freeFrames, 0, newFreeFrames, 0,
+                        nextAvailableFrame + 1);
+                freeFrames = newFreeFrames;
+            }
+            freeFrames[++nextAvailableFrame] = frameNo;
+            numFrames++;
+        }
+
+        /**
+         * Removes a frame, that must have been obtained from the free frame
+         * list, from the partition.
+         */
+        final synchronized void retireFrame(int frameNo) {
+            retiredFrames.add(frameNo);
+            numFrames--;
+        }
+
+        /**
+         * Returns a copy of the list of buffers in the partition. By making a
+         * copy we avoid having to lock the replacement policy for long.
+         */
+        final ArrayList<BufferControlBlock> getBuffers() {
+            replacementPolicy.lockShared();
+            try {
+                return replacementPolicy.buffers();
+            } finally {
+                replacementPolicy.unlockShared();
+            }
+        }
+    }
+
+    /**
+     * A page replacement policy decides which buffer should be evicted when
+     * the Buffer Manager needs a free frame. The policy maintains its own
+     * latch, which must be acquired before the hash table lock.
+     * <p>
+     * The hint supplied when a page is fixed is passed on to the policy;
+     * {@link BufferManager#HINT_SEQUENTIAL} indicates that the page is
+     * unlikely to be needed again soon, and {@link #HINT_PREFETCH} that the
+     * page has been read ahead and not used yet.
+     */
+    static abstract class ReplacementPolicy {
+
+        /**
+         * Protects the data structures maintained by the policy.
+         */
+        final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+
+        /**
+         * Records an access to the page. Called each time a page is fixed,
+         * while the page is in use. No latches should be held by the caller.
+         */
+        abstract void access(BufferControlBlock bcb, int hint);
+
+        /**
+         * Searches for a buffer that can be evicted; candidates are offered to
+         * {@link BufferManagerImpl#reserveVictim(BufferControlBlock, boolean)}
+         * in order of preference. No latches should be held by the caller.
+         * 
+         * @param cleanOnly If set, only buffers that are not dirty are
+         *            considered
+         * @return The reserved victim or null if all buffers are in use
+         */
+        abstract BufferControlBlock selectVictim(BufferManagerImpl bufmgr,
+                boolean cleanOnly);
+
+        /**
+         * Forgets an evicted buffer. Caller must hold the latch in exclusive
+         * mode.
+         */
+        abstract void remove(BufferControlBlock bcb);
+
+        /**
+         * Returns the buffers known to the policy, coldest first. Caller must
+         * hold the latch in shared or exclusive mode.
+         */
+        abstract ArrayList<BufferControlBlock> buffers();
+
+        /**
+         * Informs the policy that the partition has been resized. Caller must
+         * hold the latch in exclusive mode.
+         * 
+         * @param numFrames The new number of frames in the partition
+         * @param localFrames Upper bound of the local frame indexes
+         */
+        abstract void resize(int numFrames, int localFrames);
+
+        abstract String getName();
+
+        final void lockExclusive() {
+            latch.writeLock().lock();
+        }
+
+        final void unlockExclusive() {
+            latch.writeLock().unlock();
+        }
+
+        final void lockShared() {
+            latch.readLock().lock();
+        }
+
+        final void unlockShared() {
+            latch.readLock().unlock();
+        }
+
+        static BufferControlBlock selectVictim(BufferManagerImpl bufmgr,
+                SimpleLinkedList<BufferControlBlock> list, boolean cleanOnly) {
+            for (BufferControlBlock bcb : list) {
+                if (bufmgr.reserveVictim(bcb, cleanOnly)) {
+                    return bcb;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Classic LRU replacement using a single chain. Every access moves the
+     * page to the MRU end of the chain, unless the sequential hint is given,
+     * in which case the page is moved to the LRU end. Pages that have been
+     * read ahead are placed at the MRU end.
+     */
+    static final class LRUPolicy extends ReplacementPolicy {
+
+        /**
+         * The head of the list is the LRU end, whereas the tail is the MRU.
+         */
+        final SimpleLinkedList<BufferControlBlock> lru = new SimpleLinkedList<BufferControlBlock>();
+
+        @Override
+        void access(BufferControlBlock bcb, int hint) {
+            lockExclusive();
+            try {
+                if (hint != HINT_SEQUENTIAL) {
+                    if (lru.getLast() != bcb) {
+                        if (bcb.isMemberOf(lru)) {
+                            lru.remove(bcb);
+                        }
+                        lru.addLast(bcb);
+                    }
+                } else {
+                    if (lru.getFirst() != bcb) {
+                        if (bcb.isMemberOf(lru)) {
+                            lru.remove(bcb);
+                        }
+                        lru.addFirst(bcb);
+                    }
+                }
+            } finally {
+                unlockExclusive();
+            }
+        }
+
+        @Override
+        BufferControlBlock selectVictim(BufferManagerImpl bufmgr,
+                boolean cleanOnly) {
+            lockShared();
+            try {
+                return selectVictim(bufmgr, lru, cleanOnly);
+            } finally {
+                unlockShared();
+            }
+        }
+
+        @Override
+        void remove(BufferControlBlock bcb) {
+            if (bcb.isMemberOf(lru)) {
+                lru.remove(bcb);
+            }
+        }
+
+        @Override
+        ArrayList<BufferControlBlock> buffers() {
+            ArrayList<BufferControlBlock> list = new ArrayList<BufferControlBlock>(
+                    lru.size());
+            for (BufferControlBlock bcb : lru) {
+                list.add(bcb);
+            }
+            return list;
+        }
+
+        @Override
+        void resize(int numFrames, int localFrames) {
+        }
+
+        @Override
+        String getName() {
+            return POLICY_LRU;
+        }
+    }
+
+    /**
+     * CLOCK replacement. Buffers are arranged in a ring indexed by frame, and
+     * each has a reference bit that is set on access. A page hit therefore
+     * requires no latch and no list manipulation. When a victim is needed, the
+     * clock hand sweeps the ring clearing reference bits, and the first
+     * unreferenced buffer that is not in use is evicted.
+     * <p>
+     * Pages accessed with the sequential hint do not get their reference bit
+     * set. They are also queued as preferred victims, so that a scan recycles
+     * its own buffers rather than moving the clock hand, which would
+     * eventually clear the reference bits of all other pages. Pages that have
+     * been read ahead get neither treatment, and are left to the clock hand.
+     */
+    static final class ClockPolicy extends ReplacementPolicy {
+
+        /**
+         * Buffers indexed by the local index of their frame within the
+         * partition; updated under the exclusive latch.
+         */
+        volatile BufferControlBlock[] ring;
+
+        /**
+         * Number of partitions, which converts a frame number to its local
+         * index.
+         */
+        final int stride;
+
+        final AtomicInteger hand = new AtomicInteger(0);
+
+        /**
+         * Buffers accessed with the sequential hint, to be evicted before
+         * the clock hand is moved.
+         */
+        final ArrayBlockingQueue<BufferControlBlock> sequential;
+
+        ClockPolicy(int stride, int numFrames) {
+            this.stride = stride;
+            ring = new BufferControlBlock[numFrames];
+            sequential = new ArrayBlockingQueue<BufferControlBlock>(Math.max(
+                    1, numFrames / 4));
+        }
+
+        @Override
+        void access(BufferControlBlock bcb, int hint) {
+            int frameNo = bcb.getFrameIndex() / stride;
+            /*
+             * As the page is in use it cannot be removed from the ring
+             * concurrently, so an unlatched check is safe here.
+             */
+            if (ring[frameNo] != bcb) {
+                lockExclusive();
+                try {
+                    ring[frameNo] = bcb;
+                } finally {
+                    unlockExclusive();
+                }
+            }
+            if (hint == HINT_NORMAL) {
+                if (!bcb.isReferenced()) {
+                    bcb.setReferenced(true);
+                }
+            } else if (hint == HINT_SEQUENTIAL && !bcb.isReferenced()) {
+                /*
+                 * If the queue is full the page is left to the clock hand.
+                 */
+                sequential.offer(bcb);
+            }
+        }
+
+        @Override
+        BufferControlBlock selectVictim(BufferManagerImpl bufmgr,
+                boolean cleanOnly) {
+            lockShared();
+            try {
+                BufferControlBlock[] ring = this.ring;
+                /*
+                 * Entries may be stale as the buffer may have been referenced
+                 * or evicted since it was queued.
+                 */
+                BufferControlBlock candidate;
+                while ((candidate = sequential.poll()) != null) {
+                    if (!candidate.isReferenced()
+                            && ring[candidate.getFrameIndex() / stride] == candidate
+                            && bufmgr.reserveVictim(candidate, cleanOnly)) {
+                        return candidate;
+                    }
+                }
+                /*
+                 * The first revolution clears reference bits, so any buffer
+                 * not in use will be found by the second one. Allow an extra
+                 * revolution for concurrent activity.
+                 */
+                int n = ring.length * 3;
+                for (int i = 0; i < n; i++) {
+                    int pos = (hand.getAndIncrement() & 0x7FFFFFFF)
+                            % ring.length;
+                    BufferControlBlock bcb = ring[pos];
+                    if (bcb == null) {
+                        continue;
+                    }
+                    if (bcb.isReferenced()) {
+                        bcb.setReferenced(false);
+                        continue;
+                    }
+                    if (bufmgr.reserveVictim(bcb, cleanOnly)) {
+                        return bcb;
+                    }
+                }
+                return null;
+            } finally {
+                unlockShared();
+            }
+        }
+
+        @Override
+        void remove(BufferControlBlock bcb) {
+            int frameNo = bcb.getFrameIndex() / stride;
+            if (ring[frameNo] == bcb) {
+                ring[frameNo] = null;
+            }
+        }
+
+        @Override
+        void resize(int numFrames, int localFrames) {
+            if (localFrames > ring.length) {
+                BufferControlBlock[] newRing = new BufferControlBlock[localFrames];
+                System.arraycopy(ring, 0, newRing, 0, ring.length);
+                ring = newRing;
+            }
+        }
+
+        @Override
+        ArrayList<BufferControlBlock> buffers() {
+            ArrayList<BufferControlBlock> list = new ArrayList<BufferControlBlock>(
+                    ring.length);
+            for (BufferControlBlock bcb : ring) {
+                if (bcb != null) {
+                    list.add(bcb);
+                }
+            }
+            return list;
+        }
+
+        @Override
+        String getName() {
+            return POLICY_CLOCK;
+        }
+    }
+
+    /**
+     * Scan resistant 2Q replacement, based upon <cite>2Q: A Low Overhead High
+     * Performance Buffer Management Replacement Algorithm, by Theodore Johnson
+     * and Dennis Shasha.</cite>
+     * <p>
+     * Pages accessed for the first time go into a FIFO queue (A1in); hits on
+     * pages in this queue do not change anything. When a page is evicted from
+     * A1in, its id is remembered in a ghost queue (A1out). Only pages that are
+     * accessed again while remembered in A1out are admitted to the main LRU
+     * queue (Am). A large scan therefore only cycles through A1in and cannot
+     * push out frequently used pages held in Am. Pages accessed with the
+     * sequential hint, or read ahead, are never admitted to Am.
+     */
+    static final class TwoQueuePolicy extends ReplacementPolicy {
+
+        /**
+         * FIFO of pages seen once; head is the oldest.
+         */
+        final SimpleLinkedList<BufferControlBlock> a1in = new SimpleLinkedList<BufferControlBlock>();
+
+        /**
+         * LRU of frequently accessed pages; head is the LRU end.
+         */
+        final SimpleLinkedList<BufferControlBlock> am = new SimpleLinkedList<BufferControlBlock>();
+
+        /**
+         * Ids of pages recently evicted from A1in.
+         */
+        final LinkedHashMap<PageId, PageId> a1out;
+
+        /**
+         * Target size of A1in.
+         */
+        int kin;
+
+        /**
+         * Maximum size of A1out.
+         */
+        int kout;
+
+        TwoQueuePolicy(int numFrames) {
+            resize(numFrames, numFrames);
+            a1out = new LinkedHashMap<PageId, PageId>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<PageId, PageId> eldest) {
+                    return size() > kout;
+                }
+            };
+        }
+
+        @Override
+        void access(BufferControlBlock bcb, int hint) {
+            if (hint == HINT_NORMAL && !bcb.isReferenced()) {
+                bcb.setReferenced(true);
+            }
+            /*
+             * Hits in A1in are ignored. As the page is in use it cannot be
+             * removed from A1in concurrently, so an unlatched check is safe.
+             */
+            if (bcb.isMemberOf(a1in)) {
+                return;
+            }
+            lockExclusive();
+            try {
+                if (bcb.isMemberOf(am)) {
+                    if (hint == HINT_NORMAL && am.getLast() != bcb) {
+                        am.remove(bcb);
+                        am.addLast(bcb);
+                    }
+                } else if (!bcb.isMemberOf(a1in)) {
+                    if (hint == HINT_NORMAL
+                            && a1out.remove(bcb.getPageId()) != null) {
+                        am.addLast(bcb);
+                    } else if (hint == HINT_SEQUENTIAL) {
+                        a1in.addFirst(bcb);
+                    } else {
+                        a1in.addLast(bcb);
+                    }
+                }
+            } finally {
+                unlockExclusive();
+            }
+        }
+
+        @Override
+        BufferControlBlock selectVictim(BufferManagerImpl bufmgr,
+                boolean cleanOnly) {
+            lockShared();
+            try {
+                BufferControlBlock victim;
+                if (a1in.size() > kin) {
+                    victim = selectVictim(bufmgr, a1in, cleanOnly);
+                    if (victim == null) {
+                        victim = selectVictim(bufmgr, am, cleanOnly);
+                    }
+                } else {
+                    victim = selectVictim(bufmgr, am, cleanOnly);
+                    if (victim == null) {
+                        victim = selectVictim(bufmgr, a1in, cleanOnly);
+                    }
+                }
+                return victim;
+            } finally {
+                unlockShared();
+            }
+        }
+
+        @Override
+        void remove(BufferControlBlock bcb) {
+            if (bcb.isMemberOf(a1in)) {
+                a1in.remove(bcb);
+                /*
+                 * Pages that were only scanned sequentially are not
+                 * remembered.
+                 */
+                if (bcb.isReferenced()) {
+                    a1out.put(bcb.getPageId(), bcb.getPageId());
+                }
+            } else if (bcb.isMemberOf(am)) {
+                am.remove(bcb);
+            }
+        }
+
+        @Override
+        ArrayList<BufferControlBlock> buffers() {
+            ArrayList<BufferControlBlock> list = new ArrayList<BufferControlBlock>(
+                    a1in.size() + am.size());
+            for (BufferControlBlock bcb : a1in) {
+                list.add(bcb);
+            }
+            for (BufferControlBlock bcb : am) {
+                list.add(bcb);
+            }
+            return list;
+        }
+
+        @Override
+        void resize(int numFrames, int localFrames) {
+            kin = Math.max(1, numFrames / 4);
+            kout = Math.max(1, numFrames / 2);
+        }
+
+        @Override
+        String getName() {
+            return POLICY_2Q;
+        }
+    }
+
+    /**
+     * Default implementation of BufferAcessBlock. Keeps track of the latch
+     * state so that the correct unlatch action can be taken.
+     * 
+     * @author Dibyendu Majumdar
+     * @since 21-Aug-2005
+     */
+    static final class BufferAccessBlockImpl implements BufferAccessBlock {
+
+        final BufferControlBlock bcb;
+
+        final Page page;
+
+        final BufferManagerImpl bufMgr;
+
+        boolean dirty = false;
+
+        int latchMode = 0;
+
+        /**
+         * Version of the page when it was fixed optimistically.
+         */
+        int version;
+
+        /**
+         * Written before the page version is checked, so that reads of the
+         * page are not reordered after the check.
+         */
+        volatile boolean validating;
+
+        BufferAccessBlockImpl(BufferManagerImpl bufMgr, BufferControlBlock bcb,
+                Page page) {
+            this.bufMgr = bufMgr;
+            this.bcb = bcb;
+            this.page = page;
+        }
+
+        void latchExclusively() {
+            page.latchExclusive();
+            latchMode = BufferManagerImpl.LATCH_EXCLUSIVE;
+        }
+
+        void latchForUpdate() {
+            page.latchUpdate();
+            latchMode = BufferManagerImpl.LATCH_UPDATE;
+        }
+
+        void latchShared() {
+            page.latchShared();
+            latchMode = BufferManagerImpl.LATCH_SHARED;
+        }
+
+        void noteVersion() {
+            version = page.getVersion();
+            latchMode = BufferManagerImpl.LATCH_OPTIMISTIC;
+        }
+
+        void unlatch() {
+            if (latchMode == BufferManagerImpl.LATCH_EXCLUSIVE) {
+                page.unlatchExclusive();
+            } else if (latchMode == BufferManagerImpl.LATCH_UPDATE) {
+                page.unlatchUpdate();
+            } else if (latchMode == BufferManagerImpl.LATCH_SHARED) {
+                page.unlatchShared();
+            } else if (latchMode == BufferManagerImpl.LATCH_OPTIMISTIC) {
+                // Nothing to release
+            } else {
+                bufMgr.exceptionHandler.errorThrow(this.getClass(),
+                        "unlatch", new SimpleDBMException(new MessageInstance(
+                                m_EM0007)));
+            }
+            latchMode = 0;
+        }
+
+        public boolean isLatchedExclusively() {
+            return latchMode == BufferManagerImpl.LATCH_EXCLUSIVE;
+        }
+
+        public boolean isLatchedForUpdate() {
+            return latchMode == BufferManagerImpl.LATCH_UPDATE;
+        }
+
+        public boolean isLatchedShared() {
+            return latchMode == BufferManagerImpl.LATCH_SHARED;
+        }
+
+        public boolean validate() {
+            if (latchMode != BufferManagerImpl.LATCH_OPTIMISTIC) {
+                return true;
+            }
+            validating = true;
+            return (version & 1) == 0 && page.getVersion() == version;
+        }
+
+        public boolean validateAndLatchShared() {
+            if (latchMode != BufferManagerImpl.LATCH_OPTIMISTIC) {
+                bufMgr.exceptionHandler.errorThrow(this.getClass(),
+                        "validateAndLatchShared", new SimpleDBMException(
+                                new MessageInstance(m_EM0007)));
+            }
+            page.latchShared();
+            if ((version & 1) == 0 && page.getVersion() == version) {
+                latchMode = BufferManagerImpl.LATCH_SHARED;
+                return true;
+            }
+            page.unlatchShared();
+            return false;
+        }
+
+        /* (non-Javadoc)
+         * @see org.simpledbm.bm.BufferAccessBlock#setDirty(org.simpledbm.log.Lsn)
+         */
+        public void setDirty(Lsn lsn) {
+            if (latchMode == BufferManagerImpl.LATCH_EXCLUSIVE) {
                 dirty = true;
                 page.setPageLsn(lsn);
             } else {
@@ -1758,6 +3749,135 @@ public final class BufferManagerImpl implements BufferManager {
         }
     }
 
+    /**
+     * Writes the dirty pages of a container on behalf of
+     * {@link BufferManagerImpl#writeBuffers()}.
+     */
+    static final class PageWriter implements Runnable {
+
+        final BufferManagerImpl bufmgr;
+
+        final List<BufferControlBlock> pages;
+
+        PageWriter(BufferManagerImpl bufmgr, List<BufferControlBlock> pages) {
+            this.bufmgr = bufmgr;
+            this.pages = pages;
+        }
+
+        public final void run() {
+            bufmgr.writePages(pages);
+        }
+    }
+
+    /**
+     * A run of pages whose write is in progress.
+     */
+    static final class PendingWrite {
+
+        final ArrayList<BufferControlBlock> run;
+
+        final Future<Integer> future;
+
+        PendingWrite(ArrayList<BufferControlBlock> run, Future<Integer> future) {
+            this.run = run;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Reads the pages that were in the buffer pool before the last shutdown.
+     */
+    static final class WarmUp implements Runnable {
+
+        final BufferManagerImpl bufmgr;
+
+        final PageId[] pageids;
+
+        WarmUp(BufferManagerImpl bufmgr, PageId[] pageids) {
+            this.bufmgr = bufmgr;
+            this.pageids = pageids;
+        }
+
+        public final void run() {
+            try {
+                bufmgr.warmUp(pageids);
+            } catch (Exception e) {
+                bufmgr.log.warn(this.getClass(), "run",
+                        "SIMPLEDBM-DEBUG: Buffer pool warm-up failed", e);
+            }
+        }
+    }
+
+    /**
+     * Periodically saves the list of pages in the buffer pool.
+     */
+    static final class HotPageSaver implements Runnable {
+
+        final BufferManagerImpl bufmgr;
+
+        HotPageSaver(BufferManagerImpl bufmgr) {
+            this.bufmgr = bufmgr;
+        }
+
+        public final void run() {
+            if (bufmgr.stop) {
+                return;
+            }
+            try {
+                bufmgr.saveHotPages();
+            } catch (Exception e) {
+                bufmgr.log.warn(this.getClass(), "run",
+                        "SIMPLEDBM-DEBUG: Unable to save buffer pool page list", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a list of pages into the buffer pool, in order. Errors are ignored,
+     * as prefetching is only an optimization; a page that could not be read
+     * will be read again, and the error reported, when it is fixed.
+     */
+    static final class Prefetcher implements Runnable {
+
+        final BufferManagerImpl bufmgr;
+
+        final PageId[] pageids;
+
+        Prefetcher(BufferManagerImpl bufmgr, PageId[] pageids) {
+            this.bufmgr = bufmgr;
+            this.pageids = pageids;
+        }
+
+        public final void run() {
+            for (PageId pageid : pageids) {
+                if (bufmgr.stop) {
+                    return;
+                }
+                try {
+                    bufmgr.prefetchPage(pageid);
+                } catch (Exception e) {
+                    if (bufmgr.log.isDebugEnabled()) {
+                        bufmgr.log.debug(this.getClass(), "run",
+                                "SIMPLEDBM-DEBUG: Failed to prefetch page "
+                                        + pageid + ": " + e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remembers the last page read from a container, and the length of the
+     * current run of consecutive pages. Protected by synchronizing on the
+     * detector.
+     */
+    static final class SequentialDetector {
+        int containerId = -1;
+        int lastPageNumber = -1;
+        int runLength = 0;
+        int prefetchedUpTo = -1;
+    }
+
     public void setBufferWriterSleepInterval(int bufferWriterSleepInterval) {
         this.bufferWriterSleepInterval = bufferWriterSleepInterval;
     }
@@ -1770,15 +3890,47 @@ public final class BufferManagerImpl implements BufferManager {
         LongStatistic cacheHits;
         LongStatistic writerSleepInterval;
         LongStatistic hashTableSize;
+        LongStatistic evictions;
+        LongStatistic partitions;
+        InfoStatistic replacementPolicy;
+        LongStatistic offHeapBytes;
+        LongStatistic prefetchRequests;
+        LongStatistic prefetchedPages;
+        LongStatistic pagesWritten;
+        LongStatistic writeCalls;
+        LongStatistic warmupPages;
+        LongStatistic warmupPending;
+
+        final InformationManager im;
+
+        final ConcurrentHashMap<Integer, PageGroupStatistics> containers = new ConcurrentHashMap<Integer, PageGroupStatistics>();
+
+        final ConcurrentHashMap<Integer, PageGroupStatistics> pageTypes = new ConcurrentHashMap<Integer, PageGroupStatistics>();
 
         BufferManagerStatistics(InformationManager im) {
+            this.im = im;
             bufferPoolSize = im.newLongStatistic("bufmgr.bufferPoolSize");
             dirtyBuffers = im.newLongStatistic("bufmgr.dirtyBuffers");
-            fixCount = im.newLongStatistic("bufmgr.fixCount");
-            cacheHits = im.newLongStatistic("bufmgr.cacheHits");
+            /*
+             * Counters updated on every fix are striped, so that they do not
+             * make all fixes contend.
+             */
+            fixCount = im.newStripedLongStatistic("bufmgr.fixCount");
+            cacheHits = im.newStripedLongStatistic("bufmgr.cacheHits");
             writerSleepInterval = im
                     .newLongStatistic("bufmgr.writerSleepInterval");
             hashTableSize = im.newLongStatistic("bufmgr.hashTableSize");
+            evictions = im.newLongStatistic("bufmgr.evictions");
+            partitions = im.newLongStatistic("bufmgr.partitions");
+            replacementPolicy = im
+                    .newInfoStatistic("bufmgr.replacementPolicy");
+            offHeapBytes = im.newLongStatistic("bufmgr.offHeapBytes");
+            prefetchRequests = im.newLongStatistic("bufmgr.prefetchRequests");
+            prefetchedPages = im.newLongStatistic("bufmgr.prefetchedPages");
+            pagesWritten = im.newLongStatistic("bufmgr.pagesWritten");
+            writeCalls = im.newLongStatistic("bufmgr.writeCalls");
+            warmupPages = im.newLongStatistic("bufmgr.warmupPages");
+            warmupPending = im.newLongStatistic("bufmgr.warmupPending");
         }
 
         public LongStatistic getDirtyBuffers() {
@@ -1793,6 +3945,43 @@ public final class BufferManagerImpl implements BufferManager {
             return cacheHits;
         }
 
+        public LongStatistic getEvictions() {
+            return evictions;
+        }
+
+        public LongStatistic getPrefetchRequests() {
+            return prefetchRequests;
+        }
+
+        public LongStatistic getPrefetchedPages() {
+            return prefetchedPages;
+        }
+
+        public LongStatistic getPagesWritten() {
+            return pagesWritten;
+        }
+
+        public LongStatistic getWriteCalls() {
+            return writeCalls;
+        }
+
+        public LongStatistic getWarmupPages() {
+            return warmupPages;
+        }
+
+        public LongStatistic getWarmupPending() {
+            return warmupPending;
+        }
+
+        public void setWarmupPages(int n) {
+            warmupPages.set(n);
+            warmupPending.set(n);
+        }
+
+        public void setReplacementPolicy(String name) {
+            replacementPolicy.set(name);
+        }
+
         public void setWriterSleepInterval(int bufferWriterSleepInterval) {
             writerSleepInterval.set(bufferWriterSleepInterval);
         }
@@ -1801,9 +3990,126 @@ public final class BufferManagerImpl implements BufferManager {
             hashTableSize.set(hashsize);
         }
 
+        public void addOffHeapBytes(long n) {
+            offHeapBytes.add(n);
+        }
+
+        public void setPartitions(int n) {
+            partitions.set(n);
+        }
+
         public void setBufferPoolSize(int bpsz) {
             bufferPoolSize.set(bpsz);
         }
+
+        public void setPoolSize(String pool, int n) {
+            im.newLongStatistic("bufmgr.pool." + pool + ".bufferPoolSize")
+                    .set(n);
+        }
+
+        /**
+         * Returns the statistics of a container, published under the name
+         * <code>bufmgr.container.&lt;id&gt;</code>.
+         */
+        PageGroupStatistics forContainer(int containerId) {
+            return getGroup(containers, containerId, "bufmgr.container.");
+        }
+
+        /**
+         * Returns the statistics of a page type, published under the name
+         * <code>bufmgr.pageType.&lt;type&gt;</code>.
+         */
+        PageGroupStatistics forPageType(int pageType) {
+            return getGroup(pageTypes, pageType, "bufmgr.pageType.");
+        }
+
+        private PageGroupStatistics getGroup(
+                ConcurrentHashMap<Integer, PageGroupStatistics> groups,
+                int id, String prefix) {
+            PageGroupStatistics group = groups.get(id);
+            if (group == null) {
+                group = new PageGroupStatistics(im, prefix + id + ".");
+                PageGroupStatistics existing = groups.putIfAbsent(id, group);
+                if (existing != null) {
+                    group = existing;
+                }
+            }
+            return group;
+        }
+
+        void noteHit(BufferControlBlock bcb) {
+            cacheHits.increment();
+            bcb.containerStatistics.cacheHits.increment();
+            bcb.pageTypeStatistics.cacheHits.increment();
+        }
+
+        /**
+         * Records a fix that did not find the page in the buffer pool. New
+         * pages are not read from disk, so they are counted apart from the
+         * misses.
+         */
+        void noteMiss(BufferControlBlock bcb, boolean isNew) {
+            if (isNew) {
+                bcb.containerStatistics.newPages.increment();
+                bcb.pageTypeStatistics.newPages.increment();
+            } else {
+                bcb.containerStatistics.misses.increment();
+                bcb.pageTypeStatistics.misses.increment();
+            }
+        }
+
+        void noteFix(BufferControlBlock bcb, long nanos) {
+            bcb.containerStatistics.noteFix(nanos);
+            bcb.pageTypeStatistics.noteFix(nanos);
+        }
+
+        void noteWrite(BufferControlBlock bcb) {
+            pagesWritten.increment();
+            bcb.containerStatistics.pagesWritten.increment();
+            bcb.pageTypeStatistics.pagesWritten.increment();
+        }
+    }
+
+    /**
+     * Statistics of the pages of one container, or of one page type. Every
+     * fix is counted as a cache hit, a miss, or a new page. Fix wait time is
+     * only recorded when <code>bufferpool.fixTiming</code> is set; it covers
+     * the whole of a fix call, including any wait for IO and for the page
+     * latch.
+     */
+    static final class PageGroupStatistics {
+
+        final LongStatistic cacheHits;
+        final LongStatistic misses;
+        final LongStatistic newPages;
+        final LongStatistic evictions;
+        final LongStatistic pagesWritten;
+        final LongStatistic fixWaitNanos;
+        final LongStatistic timedFixes;
+
+        PageGroupStatistics(InformationManager im, String prefix) {
+            cacheHits = im.newStripedLongStatistic(prefix + "cacheHits");
+            misses = im.newLongStatistic(prefix + "misses");
+            newPages = im.newLongStatistic(prefix + "newPages");
+            evictions = im.newLongStatistic(prefix + "evictions");
+            pagesWritten = im.newLongStatistic(prefix + "pagesWritten");
+            fixWaitNanos = im.newStripedLongStatistic(prefix + "fixWaitNanos");
+            timedFixes = im.newStripedLongStatistic(prefix + "timedFixes");
+        }
+
+        void noteFix(long nanos) {
+            fixWaitNanos.add(nanos);
+            timedFixes.increment();
+        }
+
+        /**
+         * Returns the average time taken by a timed fix. The two totals are
+         * not read together atomically, so the result is approximate.
+         */
+        long getAverageFixWaitNanos() {
+            long fixes = timedFixes.get();
+            return fixes == 0 ? 0 : fixWaitNanos.get() / fixes;
+        }
     }
 
     void dumpStatistics() {
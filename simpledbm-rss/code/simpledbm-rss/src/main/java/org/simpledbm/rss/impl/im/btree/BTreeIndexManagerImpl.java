@@ -33,6 +33,7 @@ package org.simpledbm.rss.impl.im.btree;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.LinkedList;
 import java.util.Properties;
 
@@ -2879,6 +2880,14 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
                                 + bcursor.getSearchKey());
             }
 
+            /*
+             * Most descents are not disturbed by concurrent updates, so
+             * first try without latching the non-leaf pages.
+             */
+            if (optimisticTraverse(bcursor)) {
+                return;
+            }
+
             /*
              * Fix root page
              */
@@ -2921,6 +2930,86 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
             } while (!p.isLeaf());
         }
 
+        /**
+         * Walks down the tree in the same way as
+         * {@link #readModeTraverse(BTreeContext)}, but reads each page without
+         * latching it, and validates the page version before following the
+         * link to the next page. Only the leaf page is latched, and only if it
+         * has not changed since it was read. Returns false if a concurrent
+         * update was detected, in which case nothing is left fixed and the
+         * caller must repeat the traversal using latches.
+         */
+        final boolean optimisticTraverse(BTreeContext bcursor) {
+            PageId pageId = new PageId(containerId,
+                    BTreeIndexManagerImpl.ROOT_PAGE_NUMBER);
+            tracer.event(89, pageId.getContainerId(), pageId.getPageNumber());
+            BufferAccessBlock bab = btreeMgr.bufmgr.fixOptimistic(pageId,
+                    BufferManager.HINT_NORMAL);
+            try {
+                while (true) {
+                    int next = -1;
+                    try {
+                        BTreeNode p = new BTreeNode(po, indexItemFactory, bab
+                                .getPage(), true);
+                        IndexItem v = p.getHighKey();
+                        if (v.compareTo(bcursor.getSearchKey()) < 0) {
+                            next = p.header.rightSibling;
+                        } else if (!p.isLeaf()) {
+                            SearchResult sr = p.search(bcursor.getSearchKey());
+                            if (sr.item == null) {
+                                throw new ConcurrentModificationException();
+                            }
+                            next = sr.item.getChildPageNumber();
+                        }
+                    } catch (RuntimeException e) {
+                        /*
+                         * The page may have been modified while we were
+                         * reading it.
+                         */
+                        if (bab.validate()) {
+                            throw e;
+                        }
+                        return false;
+                    } catch (AssertionError e) {
+                        if (bab.validate()) {
+                            throw e;
+                        }
+                        return false;
+                    }
+                    if (next == -1) {
+                        if (!bab.validateAndLatchShared()) {
+                            return false;
+                        }
+                        bcursor.setP(bab);
+                        bab = null;
+                        return true;
+                    }
+                    if (!bab.validate()) {
+                        return false;
+                    }
+                    pageId = new PageId(containerId, next);
+                    tracer.event(91, pageId.getContainerId(), pageId
+                            .getPageNumber());
+                    BufferAccessBlock q = btreeMgr.bufmgr.fixOptimistic(
+                            pageId, BufferManager.HINT_NORMAL);
+                    /*
+                     * The link we followed must still be valid now that the
+                     * next page is fixed.
+                     */
+                    boolean valid = bab.validate();
+                    bab.unfix();
+                    bab = q;
+                    if (!valid) {
+                        return false;
+                    }
+                }
+            } finally {
+                if (bab != null) {
+                    bab.unfix();
+                }
+            }
+        }
+
         /**
          * Traverses a BTree down to the leaf level, and prepares the leaf page
          * for inserting the new key. bcursor.p must hold the root node in
@@ -3543,6 +3632,7 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
                 icursor.bcursor.unfixQ();
                 node = new BTreeNode(po, indexItemFactory, icursor.bcursor
                         .getP().getPage());
+                prefetchRightSibling(node);
                 sr = node.search(icursor.currentKey);
                 if (sr.k == SearchResult.KEY_OUT_OF_BOUNDS) {
                     if (node.header.rightSibling == -1) {
@@ -3601,6 +3691,18 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
             return sr;
         }
 
+        /**
+         * A scan that has moved to a leaf node is likely to move on to its
+         * right sibling, so ask the Buffer Manager to read it in the
+         * background.
+         */
+        private void prefetchRightSibling(BTreeNode node) {
+            int rightSibling = node.header.rightSibling;
+            if (rightSibling != -1) {
+                btreeMgr.bufmgr.prefetch(new PageId(containerId, rightSibling));
+            }
+        }
+
         /**
          * Saves the cursor position
          */
@@ -4410,21 +4512,45 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
 
         final TraceBuffer tracer;
 
+        /**
+         * Set when the page is being read without a latch. The contents of
+         * the page may change while it is being read, so sanity checks are
+         * skipped; the caller must validate the page version instead.
+         */
+        final boolean optimistic;
+
         BTreeNode(PlatformObjects po, IndexItemFactory indexItemFactory,
                 Page page) {
+            this(po, indexItemFactory, page, false);
+        }
+
+        BTreeNode(PlatformObjects po, IndexItemFactory indexItemFactory,
+                Page page, boolean optimistic) {
             this.po = po;
+            this.optimistic = optimistic;
             this.tracer = po.getTraceBuffer();
             this.indexItemFactory = indexItemFactory;
             this.page = (SlottedPage) page;
             this.pageId = page.getPageId();
             this.pageLsn = page.getPageLsn();
-            this.header = (BTreeNodeHeader) this.page.get(HEADER_KEY_POS,
-                    new BTreeNodeHeader.BTreeNodeHeaderStorabeFactory());
+            if (optimistic) {
+                this.header = (BTreeNodeHeader) this.page.peek(HEADER_KEY_POS,
+                        new BTreeNodeHeader.BTreeNodeHeaderStorabeFactory());
+                if (this.header == null) {
+                    throw new ConcurrentModificationException();
+                }
+            } else {
+                this.header = (BTreeNodeHeader) this.page.get(HEADER_KEY_POS,
+                        new BTreeNodeHeader.BTreeNodeHeaderStorabeFactory());
+            }
             this.partialIndexItemFactory = new PartialIndexItem.PartialIndexItemFactory(
                     isLeaf());
         }
 
         private final boolean sanityCheck() {
+            if (optimistic) {
+                return true;
+            }
             if (page != null && pageId.equals(page.getPageId())
                     && pageLsn.equals(page.getPageLsn())) {
                 return true;
@@ -4790,6 +4916,17 @@ public final class BTreeIndexManagerImpl extends BaseTransactionalModule
          */
         public final IndexItem getItem(int slotNumber) {
             sanityCheck();
+            if (optimistic) {
+                /*
+                 * The page may be changing under us, so bounds are checked
+                 * without reporting an error.
+                 */
+                IndexItem item = (IndexItem) page.peek(slotNumber, this);
+                if (item == null) {
+                    throw new ConcurrentModificationException();
+                }
+                return item;
+            }
             return (IndexItem) page.get(slotNumber, this);
         }
 
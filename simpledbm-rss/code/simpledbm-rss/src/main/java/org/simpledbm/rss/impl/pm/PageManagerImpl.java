@@ -33,6 +33,9 @@ package org.simpledbm.rss.impl.pm;
 
 import java.nio.ByteBuffer;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
 import org.simpledbm.common.api.platform.Platform;
@@ -51,6 +54,7 @@ import org.simpledbm.rss.api.pm.PageFactory;
 import org.simpledbm.rss.api.pm.PageId;
 import org.simpledbm.rss.api.pm.PageManager;
 import org.simpledbm.rss.api.pm.PageReadException;
+import org.simpledbm.rss.api.st.AsyncStorageContainer;
 import org.simpledbm.rss.api.st.StorageContainer;
 import org.simpledbm.rss.api.st.StorageManager;
 
@@ -78,6 +82,11 @@ public final class PageManagerImpl implements PageManager {
      */
     private static final int DEFAULT_PAGE_SIZE = 8 * 1024;
 
+    /**
+     * Used to clear the unused portion of a page image.
+     */
+    private static final byte[] ZEROS = new byte[512];
+
     /**
      * The size of all pages managed by the PageManager is fixed at the time of
      * construction.
@@ -203,76 +212,184 @@ public final class PageManagerImpl implements PageManager {
         return page;
     }
 
-    /* (non-Javadoc)
-     * @see org.simpledbm.rss.api.pm.PageFactory#retrieve(org.simpledbm.rss.api.pm.PageId)
-     */
-    public final Page retrieve(PageId pageId) {
+    private StorageContainer getContainer(PageId pageId, Message message,
+            String method) {
         StorageContainer container = storageManager.getInstance(pageId
                 .getContainerId());
         if (container == null) {
-            exceptionHandler.errorThrow(this.getClass(), "retrieve",
-                    new PageException(new MessageInstance(m_EP0002, pageId)));
+            exceptionHandler.errorThrow(this.getClass(), method,
+                    new PageException(new MessageInstance(message, pageId)));
         }
-        long offset = pageId.getPageNumber() * pageSize;
-        byte[] data = new byte[pageSize];
-        int n = container.read(offset, data, 0, pageSize);
-        if (n != pageSize) {
-            exceptionHandler.errorThrow(this.getClass(), "retrieve",
-                    new PageReadException(new MessageInstance(m_EP0001, pageId,
-                            n, pageSize)));
-        }
-        /*
-         * The first 4 bytes of a page contains a checksum calculated over the
-         * rest of the page data. We need to validate that the checksum obtained
-         * from the page matches the calculated checksum of the page data.
-         */
-        long checksumCalculated = ChecksumCalculator.compute(data,
+        return container;
+    }
+
+    /**
+     * The first 8 bytes of a page contains a checksum calculated over the rest
+     * of the page data. We need to validate that the checksum obtained from the
+     * page matches the calculated checksum of the page data.
+     */
+    private void validateChecksum(PageId pageId, ByteBuffer bb) {
+        long checksumCalculated = ChecksumCalculator.compute(bb,
                 TypeSize.LONG, pageSize - TypeSize.LONG);
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        long checksumOnPage = bb.getLong();
+        long checksumOnPage = bb.getLong(0);
         if (checksumOnPage != checksumCalculated) {
             exceptionHandler
                     .errorThrow(this.getClass(), "retrieve",
                             new PageReadException(new MessageInstance(m_EP0004,
                                     pageId)));
         }
-        return getInstance(pageId, bb);
     }
 
-    /* (non-Javadoc)
-     * @see org.simpledbm.rss.api.pm.PageFactory#store(org.simpledbm.rss.api.pm.Page)
+    /**
+     * Serializes the page into the buffer, and sets the checksum in the first 8
+     * bytes of the page. Any space not used by the page is cleared, as the
+     * buffer may be a frame that previously held another page. On return the
+     * buffer is positioned at the start of the page image.
      */
-    public final void store(Page page) {
-        StorageContainer container = storageManager.getInstance(page
-                .getPageId().getContainerId());
-        if (container == null) {
-            exceptionHandler.errorThrow(this.getClass(), "retrieve",
-                    new PageException(new MessageInstance(m_EP0003, page
-                            .getPageId())));
-        }
-
-        byte[] data = new byte[pageSize];
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        bb.mark();
+    private void serialize(Page page, ByteBuffer bb) {
         /*
-         * The first 4 bytes of a page contains a checksum calculated over the
-         * rest of the page data. 
          * As we do not know the checksum yet, we insert a place holder.
          */
         bb.putLong(0);
         page.store(bb);
+        while (bb.hasRemaining()) {
+            bb.put(ZEROS, 0, Math.min(ZEROS.length, bb.remaining()));
+        }
         /*
-         * Calculate the checksum and store it in the first 4 bytes.
+         * Calculate the checksum and store it in the first 8 bytes.
          */
-        long checksum = ChecksumCalculator.compute(data, TypeSize.LONG,
-                pageSize - TypeSize.LONG);
-        bb.reset();
-        bb.putLong(checksum);
+        long checksum = ChecksumCalculator.compute(bb, TypeSize.LONG, pageSize
+                - TypeSize.LONG);
+        bb.putLong(0, checksum);
+        bb.clear();
+        bb.limit(pageSize);
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageFactory#retrieve(org.simpledbm.rss.api.pm.PageId)
+     */
+    public final Page retrieve(PageId pageId) {
+        return retrieve(pageId, ByteBuffer.allocate(pageSize));
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageManager#retrieve(org.simpledbm.rss.api.pm.PageId, java.nio.ByteBuffer)
+     */
+    public final Page retrieve(PageId pageId, ByteBuffer frame) {
+        StorageContainer container = getContainer(pageId, m_EP0002,
+                "retrieve");
+        long offset = (long) pageId.getPageNumber() * pageSize;
+        /*
+         * The frame is handed to the page as is, as pages may keep a view of
+         * the frame instead of copying its contents.
+         */
+        ByteBuffer bb = frame;
+        bb.clear();
+        bb.limit(pageSize);
+        int n = container.read(offset, bb);
+        if (n != pageSize) {
+            exceptionHandler.errorThrow(this.getClass(), "retrieve",
+                    new PageReadException(new MessageInstance(m_EP0001, pageId,
+                            n, pageSize)));
+        }
+        validateChecksum(pageId, bb);
+        bb.position(TypeSize.LONG);
+        return getInstance(pageId, bb);
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageManager#exists(org.simpledbm.rss.api.pm.PageId)
+     */
+    public final boolean exists(PageId pageId) {
+        StorageContainer container = storageManager.getInstance(pageId
+                .getContainerId());
+        return container != null
+                && ((long) pageId.getPageNumber() + 1) * pageSize <= container
+                        .size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageFactory#store(org.simpledbm.rss.api.pm.Page)
+     */
+    public final void store(Page page) {
+        store(page, ByteBuffer.allocate(pageSize));
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageManager#store(org.simpledbm.rss.api.pm.Page, java.nio.ByteBuffer)
+     */
+    public final void store(Page page, ByteBuffer frame) {
+        StorageContainer container = getContainer(page.getPageId(), m_EP0003,
+                "store");
+        /*
+         * If the page is a view of the frame, it recognizes the frame and only
+         * updates the page header.
+         */
+        ByteBuffer bb = frame;
+        bb.clear();
+        bb.limit(pageSize);
+        serialize(page, bb);
         /*
          * Now we can persist the page.
          */
-        long offset = page.getPageId().getPageNumber() * pageSize;
-        container.write(offset, data, 0, pageSize);
+        long offset = (long) page.getPageId().getPageNumber() * pageSize;
+        container.write(offset, new ByteBuffer[] { bb });
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageManager#store(org.simpledbm.rss.api.pm.Page[], java.nio.ByteBuffer[])
+     */
+    public final void store(Page[] pages, ByteBuffer[] frames) {
+        PageId first = pages[0].getPageId();
+        StorageContainer container = getContainer(first, m_EP0003, "store");
+        ByteBuffer[] bbs = serialize(pages, frames);
+        long offset = (long) first.getPageNumber() * pageSize;
+        container.write(offset, bbs);
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.pm.PageManager#storeAsync(org.simpledbm.rss.api.pm.Page[], java.nio.ByteBuffer[])
+     */
+    public final Future<Integer> storeAsync(Page[] pages, ByteBuffer[] frames) {
+        PageId first = pages[0].getPageId();
+        final StorageContainer container = getContainer(first, m_EP0003,
+                "storeAsync");
+        final ByteBuffer[] bbs = serialize(pages, frames);
+        final long offset = (long) first.getPageNumber() * pageSize;
+        if (container instanceof AsyncStorageContainer) {
+            return ((AsyncStorageContainer) container).writeAsync(offset, bbs);
+        }
+        FutureTask<Integer> task = new FutureTask<Integer>(
+                new Callable<Integer>() {
+                    public Integer call() {
+                        container.write(offset, bbs);
+                        return bbs.length * pageSize;
+                    }
+                });
+        task.run();
+        return task;
+    }
+
+    /**
+     * Serializes a run of pages into their frames, and returns the frames
+     * positioned at the start of the page images.
+     */
+    private ByteBuffer[] serialize(Page[] pages, ByteBuffer[] frames) {
+        PageId first = pages[0].getPageId();
+        ByteBuffer[] bbs = new ByteBuffer[pages.length];
+        for (int i = 0; i < pages.length; i++) {
+            assert pages[i].getPageId().getContainerId() == first
+                    .getContainerId();
+            assert pages[i].getPageId().getPageNumber() == first
+                    .getPageNumber()
+                    + i;
+            ByteBuffer bb = frames[i];
+            bb.clear();
+            bb.limit(pageSize);
+            serialize(pages[i], bb);
+            bbs[i] = bb;
+        }
+        return bbs;
     }
 
     public int getRawPageType() {
@@ -32,7 +32,6 @@
 package org.simpledbm.rss.impl.sp;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
 import org.simpledbm.common.api.platform.PlatformObjects;
@@ -76,6 +75,11 @@ import org.simpledbm.rss.api.sp.SlottedPage;
  * <dd>tracks the end of the slot table. Any slot data must follow the slot
  * table.</dd>
  * </dl>
+ * <p>
+ * The slot table and slot data are accessed in place. When a page is read, it
+ * keeps a view of the buffer it was read from rather than copying and parsing
+ * its contents; and when it is stored back to that buffer, only the page
+ * header needs to be written.
  * 
  * @author Dibyendu Majumdar
  * @since 9 Sep 2005
@@ -153,15 +157,18 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     private int spaceMapPageNumber = -1;
 
     /**
-     * The slots and the slot data are stored in this byte array. The size of
-     * this depends on the page size.
+     * The slots and the slot data are stored in this buffer. The size of this
+     * depends on the page size. The buffer is only accessed using absolute
+     * positions, or through duplicates, so that concurrent readers do not
+     * interfere with each other.
      */
-    private byte[] data;
+    private ByteBuffer data;
 
     /**
-     * The slot table is maintained in memory for efficiency.
+     * If the page data is a view of the buffer from which the page was read,
+     * this is that buffer. Transient.
      */
-    private transient ArrayList<Slot> slotTable = new ArrayList<Slot>();
+    private ByteBuffer frame;
 
     /**
      * A Slot entry in the slot table.
@@ -189,8 +196,6 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
          */
         private final short length;
 
-        static Slot NULL_SLOT = new Slot();
-
         /**
          * Default constructor
          */
@@ -282,15 +287,11 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         highWaterMark = bb.getInt();
         spaceMapPageNumber = bb.getInt();
         validatePageHeader();
-        data = new byte[getSpace()];
-        bb.get(data);
-        slotTable.clear();
-        slotTable.ensureCapacity(numberOfSlots);
-        ByteBuffer bb1 = ByteBuffer.wrap(data);
-        for (int slotNumber = 0; slotNumber < numberOfSlots; slotNumber++) {
-            Slot slot = new Slot(bb1);
-            slotTable.add(slotNumber, slot);
-        }
+        ByteBuffer view = bb.slice();
+        view.limit(getSpace());
+        data = view.slice();
+        bb.position(bb.position() + getSpace());
+        frame = bb;
         validatePageSize();
     }
 
@@ -303,12 +304,16 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         bb.putInt(freeSpace);
         bb.putInt(highWaterMark);
         bb.putInt(spaceMapPageNumber);
-        ByteBuffer bb1 = ByteBuffer.wrap(data);
-        for (int slotNumber = 0; slotNumber < numberOfSlots; slotNumber++) {
-            Slot slot = slotTable.get(slotNumber);
-            slot.store(bb1);
+        if (bb == frame) {
+            /*
+             * The page data is already held in the target buffer.
+             */
+            bb.position(bb.position() + getSpace());
+        } else {
+            ByteBuffer src = data.duplicate();
+            src.clear();
+            bb.put(src);
         }
-        bb.put(data);
     }
 
     private void validatePageHeader() {
@@ -366,8 +371,61 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         freeSpace = getSpace();
         highWaterMark = freeSpace;
         spaceMapPageNumber = -1;
-        data = new byte[getSpace()];
-        slotTable = new ArrayList<Slot>();
+        if (data == null || data.capacity() != getSpace()) {
+            data = ByteBuffer.allocate(getSpace());
+            frame = null;
+        } else {
+            for (int i = 0; i < data.capacity(); i++) {
+                data.put(i, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the offset of the slot's data.
+     */
+    private int getSlotOffset(int slotNo) {
+        return data.getShort(slotNo * Slot.SIZE);
+    }
+
+    /**
+     * Returns the flags stored in the slot table entry.
+     */
+    private short getSlotFlags(int slotNo) {
+        return data.getShort(slotNo * Slot.SIZE + TypeSize.SHORT);
+    }
+
+    /**
+     * Returns the length of the slot's data, 0 if the slot is deleted.
+     */
+    private int getSlotDataLength(int slotNo) {
+        return data.getShort(slotNo * Slot.SIZE + TypeSize.SHORT * 2);
+    }
+
+    /**
+     * Updates the slot table entry.
+     */
+    private void setSlot(int slotNo, int flags, int offset, int length) {
+        int pos = slotNo * Slot.SIZE;
+        data.putShort(pos, (short) offset);
+        data.putShort(pos + TypeSize.SHORT, (short) flags);
+        data.putShort(pos + TypeSize.SHORT * 2, (short) length);
+    }
+
+    /**
+     * Copies a slot table entry to another position in the slot table.
+     */
+    private void copySlot(int from, int to) {
+        setSlot(to, getSlotFlags(from), getSlotOffset(from),
+                getSlotDataLength(from));
+    }
+
+    /**
+     * Returns a copy of the slot table entry.
+     */
+    private Slot getSlot(int slotNo) {
+        return new Slot(getSlotFlags(slotNo), getSlotOffset(slotNo),
+                getSlotDataLength(slotNo));
     }
 
     /**
@@ -384,7 +442,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     @Override
     public final int getSlotLength(int slotNo) {
         validateSlotNumber(slotNo, false);
-        return slotTable.get(slotNo).getLength() + Slot.SIZE;
+        return getSlotDataLength(slotNo) + Slot.SIZE;
     }
 
     /**
@@ -393,7 +451,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     @Override
     public final int getDataLength(int slotNo) {
         validateSlotNumber(slotNo, false);
-        return slotTable.get(slotNo).getLength();
+        return getSlotDataLength(slotNo);
     }
 
     /**
@@ -405,7 +463,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     @Override
     public final boolean isSlotDeleted(int slotNo) {
         validateSlotNumber(slotNo, false);
-        return slotTable.get(slotNo).getLength() == 0;
+        return getSlotDataLength(slotNo) == 0;
     }
 
     /**
@@ -491,26 +549,27 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     private void addSlot(int slotNumber, Storable item, Slot slot) {
         if (slotNumber == numberOfSlots) {
             numberOfSlots++;
-            slotTable.ensureCapacity(numberOfSlots);
-            slotTable.add(slotNumber, slot);
             freeSpace -= calculateSlotLength(slot.getLength());
         } else {
             if (isSlotDeleted(slotNumber)) {
                 // deleted slot being reused
                 deletedSlots--;
-                slotTable.set(slotNumber, slot);
                 freeSpace -= slot.getLength();
             } else {
                 // if in insert mode, shift existing tuples to the right
+                for (int i = numberOfSlots; i > slotNumber; i--) {
+                    copySlot(i - 1, i);
+                }
                 numberOfSlots++;
-                slotTable.ensureCapacity(numberOfSlots);
-                slotTable.add(slotNumber, slot);
                 freeSpace -= calculateSlotLength(slot.getLength());
             }
         }
-        highWaterMark -= slot.getLength();
-        ByteBuffer bb = ByteBuffer.wrap(data, slot.getOffset(), slot
+        setSlot(slotNumber, slot.getFlags(), slot.getOffset(), slot
                 .getLength());
+        highWaterMark -= slot.getLength();
+        ByteBuffer bb = data.duplicate();
+        bb.position(slot.getOffset());
+        bb.limit(slot.getOffset() + slot.getLength());
         item.store(bb);
     }
 
@@ -518,23 +577,30 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
      * Get rid of holes.
      */
     private void defragment() {
-        byte[] newdata = new byte[getSpace()];
+        /*
+         * The slot data is moved within the page, so we work from a copy of
+         * the original contents. The slot table itself is never overwritten
+         * by slot data.
+         */
+        byte[] olddata = new byte[getSpace()];
+        ByteBuffer bb = data.duplicate();
+        bb.clear();
+        bb.get(olddata);
         highWaterMark = freeSpace = getSpace();
         freeSpace -= (Slot.SIZE * numberOfSlots);
         for (int slotNumber = 0; slotNumber < numberOfSlots; slotNumber++) {
             if (isSlotDeleted(slotNumber)) {
                 continue;
             }
-            Slot slot = slotTable.get(slotNumber);
-            int startPos = highWaterMark - slot.getLength();
-            System.arraycopy(data, slot.getOffset(), newdata, startPos, slot
-                    .getLength());
-            slotTable.set(slotNumber, new Slot(slot.getFlags(), startPos, slot
-                    .getLength()));
-            highWaterMark -= slot.getLength();
-            freeSpace -= slot.getLength();
+            int length = getSlotDataLength(slotNumber);
+            int startPos = highWaterMark - length;
+            bb.clear();
+            bb.position(startPos);
+            bb.put(olddata, getSlotOffset(slotNumber), length);
+            setSlot(slotNumber, getSlotFlags(slotNumber), startPos, length);
+            highWaterMark -= length;
+            freeSpace -= length;
         }
-        data = newdata;
     }
 
     private boolean hasSpace(int slotNumber, int len) {
@@ -617,7 +683,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
             // If we are in replaceMode,
             // we may need to delete an existing tuple
             if (slotNumber < numberOfSlots && !isSlotDeleted(slotNumber)) {
-                savedFlags = slotTable.get(slotNumber).getFlags();
+                savedFlags = getSlotFlags(slotNumber);
                 delete(slotNumber);
             }
         }
@@ -653,7 +719,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         }
         freeSpace += getDataLength(slotNumber);
         deletedSlots++;
-        slotTable.set(slotNumber, Slot.NULL_SLOT);
+        setSlot(slotNumber, 0, 0, 0);
     }
 
     /**
@@ -671,7 +737,9 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
             deletedSlots--;
         }
         freeSpace += getSlotLength(slotNumber);
-        slotTable.remove(slotNumber);
+        for (int i = slotNumber + 1; i < numberOfSlots; i++) {
+            copySlot(i, i - 1);
+        }
         numberOfSlots -= 1;
     }
 
@@ -707,13 +775,32 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     @Override
     public final Storable get(int slotNumber, StorableFactory storableFactory) {
         validateSlotNumber(slotNumber, false);
-        Slot slot = slotTable.get(slotNumber);
-        ByteBuffer bb = ByteBuffer.wrap(data, slot.getOffset(), slot
-                .getLength()).asReadOnlyBuffer();
+        int offset = getSlotOffset(slotNumber);
+        ByteBuffer bb = data.asReadOnlyBuffer();
+        bb.position(offset);
+        bb.limit(offset + getSlotDataLength(slotNumber));
         Storable item = storableFactory.getStorable(bb);
         return item;
     }
 
+    @Override
+    public final Storable peek(int slotNumber, StorableFactory storableFactory) {
+        int slots = numberOfSlots;
+        if (slotNumber < 0 || slotNumber >= slots) {
+            return null;
+        }
+        int offset = getSlotOffset(slotNumber);
+        int length = getSlotDataLength(slotNumber);
+        if (length < 0 || (length > 0 && offset < slots * Slot.SIZE)
+                || offset + length > data.capacity()) {
+            return null;
+        }
+        ByteBuffer bb = data.asReadOnlyBuffer();
+        bb.limit(offset + length);
+        bb.position(offset);
+        return storableFactory.getStorable(bb);
+    }
+
     /**
      * Set flags for a particular slot.
      * 
@@ -724,9 +811,8 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     public final void setFlags(int slotNumber, short flags) {
         validateLatchHeldExclusively();
         validateSlotNumber(slotNumber, false);
-        Slot slot = slotTable.get(slotNumber);
-        slotTable.set(slotNumber, new Slot(flags, slot.getOffset(), slot
-                .getLength()));
+        setSlot(slotNumber, flags, getSlotOffset(slotNumber),
+                getSlotDataLength(slotNumber));
     }
 
     /**
@@ -737,8 +823,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
     @Override
     public final int getFlags(int slotNumber) {
         validateSlotNumber(slotNumber, false);
-        Slot slot = slotTable.get(slotNumber);
-        return slot.getFlags();
+        return getSlotFlags(slotNumber);
     }
 
     public final short getDeletedSlots() {
@@ -811,7 +896,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         int length = 0;
         for (int i = 0; i < getNumberOfSlots(); i++) {
             sb.append("Slot#").append(i).append("=");
-            slotTable.get(i).appendTo(sb).append(newline);
+            getSlot(i).appendTo(sb).append(newline);
             length += getSlotLength(i);
         }
         length += FIXED_OVERHEAD;
@@ -843,7 +928,7 @@ public final class SlottedPageImpl extends SlottedPage implements Dumpable {
         DiagnosticLogger.log("FreeSpace=" + getFreeSpace());
         DiagnosticLogger.log("SpaceMapPage=" + getSpaceMapPageNumber());
         for (int i = 0; i < getNumberOfSlots(); i++) {
-            DiagnosticLogger.log("Slot#" + i + "=" + slotTable.get(i));
+            DiagnosticLogger.log("Slot#" + i + "=" + getSlot(i));
         }
     }
 
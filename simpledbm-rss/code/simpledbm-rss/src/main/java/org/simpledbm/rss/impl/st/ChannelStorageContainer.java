@@ -0,0 +1,508 @@
+/**
+ * DO NOT REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Contributor(s):
+ *
+ * The Original Software is SimpleDBM (www.simpledbm.org).
+ * The Initial Developer of the Original Software is Dibyendu Majumdar.
+ *
+ * Portions Copyright 2005-2014 Dibyendu Majumdar. All Rights Reserved.
+ *
+ * The contents of this file are subject to the terms of the
+ * Apache License Version 2 (the "APL"). You may not use this
+ * file except in compliance with the License. A copy of the
+ * APL may be obtained from:
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the APL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the APL, the GPL or the LGPL.
+ *
+ * Copies of GPL and LGPL may be obtained from:
+ * http://www.gnu.org/licenses/license-list.html
+ */
+package org.simpledbm.rss.impl.st;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.simpledbm.common.api.exception.ExceptionHandler;
+import org.simpledbm.common.api.platform.PlatformObjects;
+import org.simpledbm.common.util.Dumpable;
+import org.simpledbm.common.util.mcat.MessageInstance;
+import org.simpledbm.rss.api.st.AsyncStorageContainer;
+import org.simpledbm.rss.api.st.StorageException;
+
+/**
+ * Implements a File based StorageContainer that uses positional reads and
+ * writes on the file's channel. Unlike {@link FileStorageContainer}, reads and
+ * writes do not synchronize on the container, so several threads can have
+ * I/O in progress against the same file at the same time. Callers must not
+ * write overlapping regions concurrently; the Buffer Manager never does, as a
+ * page is only written by the thread that holds it for writing.
+ * <p>
+ * Asynchronous reads and writes are handed to an executor shared by all the
+ * containers of a factory. The JDK's AsynchronousFileChannel is not used as
+ * this code base targets Java 6; on most platforms it also performs file I/O
+ * on a thread pool. Without an executor, asynchronous requests are carried
+ * out by the calling thread.
+ * <p>
+ * A container may also be opened memory mapped, in which case reads are
+ * served by copying from a read only mapping of the file, without a system
+ * call. Writes still go through the channel; this relies on the operating
+ * system sharing its file cache between mappings and file I/O, as Linux,
+ * Windows and Mac OS X do. Mappings cannot be released explicitly in Java 6,
+ * so they are freed when they are garbage collected.
+ * <p>
+ * A thread that is interrupted while it is doing I/O on a FileChannel closes
+ * the channel, for all the threads using it. When an operation finds the
+ * channel closed, the container therefore reopens the file and repeats the
+ * operation, keeping the thread's interrupt status set. Only
+ * {@link #close()} closes the container.
+ * 
+ * @since 18-Oct-2026
+ */
+public final class ChannelStorageContainer implements AsyncStorageContainer,
+        Dumpable {
+
+    private final ExceptionHandler exceptionHandler;
+
+    /**
+     * The underlying file object, kept open for the lifetime of the channel.
+     * Replaced, together with the channel, when the file is reopened.
+     */
+    private volatile RandomAccessFile file;
+
+    private volatile FileChannel channel;
+
+    private final String name;
+
+    /**
+     * Name and mode used to reopen the file.
+     */
+    private final String path;
+
+    private final String mode;
+
+    /**
+     * Set when the container has been closed.
+     */
+    private volatile boolean closed;
+
+    private final String flushMode;
+
+    /**
+     * Executes asynchronous reads and writes; may be null.
+     */
+    private final Executor executor;
+
+    /**
+     * Size of each region of the file that is mapped separately, as a single
+     * mapping cannot exceed 2GB.
+     */
+    static final int MAP_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Read only mappings of the file, by segment, or null if the container is
+     * not memory mapped. A segment mapped while the file was shorter is
+     * mapped again when a read goes past its end. Replaced as a whole under
+     * the container monitor, so that reads need no locking.
+     */
+    private volatile MappedByteBuffer[] segments;
+
+    private FileLock lock;
+
+    /**
+     * Creates a new ChannelStorageContainer from an existing file object.
+     * 
+     * @param path Name of the file, used to reopen it.
+     * @param mode Mode in which to reopen the file.
+     * @param file Existing file object.
+     * @param executor Executes asynchronous requests, or null if they are to
+     *            be executed by the caller.
+     * @param mapped If true, reads are served from a memory mapping of the
+     *            file.
+     */
+    ChannelStorageContainer(PlatformObjects po, String name, String path,
+            String mode, RandomAccessFile file, String flushMode,
+            Executor executor, boolean mapped) {
+        this.exceptionHandler = po.getExceptionHandler();
+        this.name = name;
+        this.path = path;
+        this.mode = mode;
+        this.file = file;
+        this.channel = file.getChannel();
+        this.flushMode = flushMode;
+        this.executor = executor;
+        this.segments = mapped ? new MappedByteBuffer[0] : null;
+    }
+
+    /**
+     * Checks if the file is available for reading and writing.
+     * 
+     * @throws StorageException Thrown if the file has been closed.
+     */
+    private void isValid() throws StorageException {
+        if (closed) {
+            exceptionHandler.errorThrow(getClass(), "isValid",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0001, name)));
+        }
+    }
+
+    /**
+     * An operation on the channel.
+     */
+    private interface ChannelOperation {
+        long run(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Runs the operation, repeating it on a reopened channel if the channel
+     * was closed by an interrupt. Operations must keep track of their own
+     * progress, so that a repeat continues where the failed attempt stopped.
+     */
+    private long execute(ChannelOperation operation) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                FileChannel ch = channel;
+                try {
+                    return operation.run(ch);
+                } catch (ClosedChannelException e) {
+                    /*
+                     * The interrupt must be cleared, else the repeat would be
+                     * interrupted too; it is restored when we are done.
+                     */
+                    if (Thread.interrupted()) {
+                        interrupted = true;
+                    }
+                    reopen(ch, e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reopens the file if the channel is still the one that was found closed.
+     * A file lock held by the container was released when the channel was
+     * closed, so it is acquired again.
+     */
+    private synchronized void reopen(FileChannel failed,
+            ClosedChannelException e) throws IOException {
+        if (closed) {
+            throw e;
+        }
+        if (channel != failed) {
+            /* Already reopened by another thread */
+            return;
+        }
+        file.close();
+        RandomAccessFile newFile = new RandomAccessFile(path, mode);
+        file = newFile;
+        channel = newFile.getChannel();
+        if (lock != null) {
+            lock = channel.tryLock();
+            if (lock == null) {
+                throw new IOException("Unable to lock " + path
+                        + " after it was reopened");
+            }
+        }
+    }
+
+    public final void write(long position, byte[] data, int offset, int length) {
+        write(position, new ByteBuffer[] { ByteBuffer
+                .wrap(data, offset, length) });
+    }
+
+    /**
+     * Writes each buffer in turn at its position. There is no positional form
+     * of a gathering write, and moving the channel's position would require
+     * the writes to be serialized.
+     */
+    public final void write(final long position, final ByteBuffer[] buffers) {
+        isValid();
+        final long[] next = new long[] { position };
+        try {
+            execute(new ChannelOperation() {
+                public long run(FileChannel channel) throws IOException {
+                    for (ByteBuffer buffer : buffers) {
+                        while (buffer.hasRemaining()) {
+                            next[0] += channel.write(buffer, next[0]);
+                        }
+                    }
+                    return 0;
+                }
+            });
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(getClass(), "write",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0003, name), e));
+        }
+    }
+
+    public final int read(long position, byte[] data, int offset, int length) {
+        return read(position, ByteBuffer.wrap(data, offset, length));
+    }
+
+    public final int read(final long position, final ByteBuffer buffer) {
+        isValid();
+        final int start = buffer.position();
+        try {
+            execute(new ChannelOperation() {
+                public long run(FileChannel channel) throws IOException {
+                    /*
+                     * Progress is taken from the buffer, so that a repeated
+                     * read continues where the last one stopped.
+                     */
+                    while (buffer.hasRemaining()) {
+                        long pos = position + buffer.position() - start;
+                        int count = segments != null ? readMapped(pos, buffer)
+                                : channel.read(buffer, pos);
+                        if (count < 0) {
+                            break;
+                        }
+                    }
+                    return 0;
+                }
+            });
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(getClass(), "read",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0004, name), e));
+        }
+        int n = buffer.position() - start;
+        return n == 0 && buffer.hasRemaining() ? -1 : n;
+    }
+
+    /**
+     * Copies bytes from the mapped segments into the buffer.
+     */
+    private int readMapped(long position, ByteBuffer buffer)
+            throws IOException {
+        int n = 0;
+        while (buffer.hasRemaining()) {
+            long pos = position + n;
+            int k = (int) (pos / MAP_SEGMENT_SIZE);
+            int offset = (int) (pos % MAP_SEGMENT_SIZE);
+            MappedByteBuffer segment = getSegment(k, offset + 1);
+            if (segment == null) {
+                break;
+            }
+            int count = Math.min(buffer.remaining(), segment.capacity()
+                    - offset);
+            ByteBuffer src = segment.duplicate();
+            src.limit(offset + count);
+            src.position(offset);
+            buffer.put(src);
+            n += count;
+        }
+        return n == 0 && buffer.hasRemaining() ? -1 : n;
+    }
+
+    /**
+     * Returns the mapping of segment k, if at least the required number of
+     * bytes of the segment exist in the file; else returns null.
+     */
+    private MappedByteBuffer getSegment(int k, int required)
+            throws IOException {
+        MappedByteBuffer[] s = segments;
+        if (k < s.length && s[k] != null && s[k].capacity() >= required) {
+            return s[k];
+        }
+        return mapSegment(k, required);
+    }
+
+    private synchronized MappedByteBuffer mapSegment(int k, int required)
+            throws IOException {
+        MappedByteBuffer[] s = segments;
+        if (k < s.length && s[k] != null && s[k].capacity() >= required) {
+            return s[k];
+        }
+        long start = (long) k * MAP_SEGMENT_SIZE;
+        long size = channel.size();
+        if (start + required > size) {
+            return null;
+        }
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                start, Math.min(MAP_SEGMENT_SIZE, size - start));
+        MappedByteBuffer[] newSegments = new MappedByteBuffer[Math.max(
+                s.length, k + 1)];
+        System.arraycopy(s, 0, newSegments, 0, s.length);
+        newSegments[k] = segment;
+        segments = newSegments;
+        return segment;
+    }
+
+    public final Future<Integer> readAsync(final long position,
+            final ByteBuffer buffer) {
+        return submit(new Callable<Integer>() {
+            public Integer call() {
+                return read(position, buffer);
+            }
+        });
+    }
+
+    public final Future<Integer> writeAsync(final long position,
+            final ByteBuffer[] buffers) {
+        return submit(new Callable<Integer>() {
+            public Integer call() {
+                int n = 0;
+                for (ByteBuffer buffer : buffers) {
+                    n += buffer.remaining();
+                }
+                write(position, buffers);
+                return n;
+            }
+        });
+    }
+
+    private Future<Integer> submit(Callable<Integer> request) {
+        isValid();
+        FutureTask<Integer> task = new FutureTask<Integer>(request);
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    public final long size() {
+        isValid();
+        long size = 0;
+        try {
+            size = execute(new ChannelOperation() {
+                public long run(FileChannel channel) throws IOException {
+                    return channel.size();
+                }
+            });
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(getClass(), "size",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0004, name), e));
+        }
+        return size;
+    }
+
+    public final void flush() {
+        isValid();
+        if (!"force.true".equals(flushMode)
+                && !"force.false".equals(flushMode)) {
+            return;
+        }
+        try {
+            execute(new ChannelOperation() {
+                public long run(FileChannel channel) throws IOException {
+                    channel.force("force.true".equals(flushMode));
+                    return 0;
+                }
+            });
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(getClass(), "flush",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0005, name), e));
+        }
+    }
+
+    public final synchronized void close() {
+        isValid();
+        closed = true;
+        try {
+            file.close();
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(getClass(), "close",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0006, name), e));
+        }
+    }
+
+    public final synchronized void lock() {
+        isValid();
+        if (lock != null) {
+            exceptionHandler.errorThrow(this.getClass(), "lock",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0007, name)));
+        }
+        try {
+            try {
+                execute(new ChannelOperation() {
+                    public long run(FileChannel channel) throws IOException {
+                        lock = channel.tryLock();
+                        return 0;
+                    }
+                });
+            } catch (OverlappingFileLockException e) {
+                // ignore this error
+            }
+            if (lock == null) {
+                exceptionHandler.errorThrow(this.getClass(), "lock",
+                        new StorageException(new MessageInstance(
+                                FileStorageContainer.m_ES0008, name)));
+            }
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(this.getClass(), "lock",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0008, name), e));
+        }
+    }
+
+    public final synchronized void unlock() {
+        isValid();
+        if (lock == null) {
+            exceptionHandler.errorThrow(this.getClass(), "lock",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0009, name)));
+        }
+        try {
+            try {
+                lock.release();
+            } catch (ClosedChannelException e) {
+                /* The lock was released when the channel was closed */
+            }
+            lock = null;
+        } catch (IOException e) {
+            exceptionHandler.errorThrow(this.getClass(), "lock",
+                    new StorageException(new MessageInstance(
+                            FileStorageContainer.m_ES0010, name), e));
+        }
+    }
+
+    public final String getName() {
+        return name;
+    }
+
+    public final StringBuilder appendTo(StringBuilder sb) {
+        sb.append("ChannelStorageContainer(name=").append(name).append(
+                ", file=").append(file).append(", mapped=").append(
+                segments != null).append(")");
+        return sb;
+    }
+
+    @Override
+    public final String toString() {
+        return appendTo(new StringBuilder()).toString();
+    }
+}
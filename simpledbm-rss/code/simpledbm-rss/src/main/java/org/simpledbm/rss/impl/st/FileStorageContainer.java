@@ -33,6 +33,7 @@ package org.simpledbm.rss.impl.st;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
@@ -133,6 +134,33 @@ public final class FileStorageContainer implements StorageContainer, Dumpable {
         }
     }
 
+    public final synchronized void write(long position, ByteBuffer[] buffers) {
+        isValid();
+        try {
+            FileChannel channel = file.getChannel();
+            if (buffers.length == 1) {
+                ByteBuffer buffer = buffers[0];
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } else {
+                long remaining = 0;
+                for (ByteBuffer buffer : buffers) {
+                    remaining += buffer.remaining();
+                }
+                channel.position(position);
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+            }
+        } catch (IOException e) {
+            exceptionHandler
+                    .errorThrow(getClass(), "write",
+                            new StorageException(new MessageInstance(m_ES0003,
+                                    name), e));
+        }
+    }
+
     public final synchronized int read(long position,
                                        byte[] data,
                                        int offset,
@@ -151,6 +179,41 @@ public final class FileStorageContainer implements StorageContainer, Dumpable {
         return n;
     }
 
+    public final synchronized int read(long position, ByteBuffer buffer) {
+        isValid();
+        int n = 0;
+        try {
+            FileChannel channel = file.getChannel();
+            while (buffer.hasRemaining()) {
+                int count = channel.read(buffer, position + n);
+                if (count < 0) {
+                    break;
+                }
+                n += count;
+            }
+        } catch (IOException e) {
+            exceptionHandler
+                    .errorThrow(getClass(), "read",
+                            new StorageException(new MessageInstance(m_ES0004,
+                                    name), e));
+        }
+        return n == 0 && buffer.hasRemaining() ? -1 : n;
+    }
+
+    public final synchronized long size() {
+        isValid();
+        long size = 0;
+        try {
+            size = file.length();
+        } catch (IOException e) {
+            exceptionHandler
+                    .errorThrow(getClass(), "size",
+                            new StorageException(new MessageInstance(m_ES0004,
+                                    name), e));
+        }
+        return size;
+    }
+
     public final synchronized void flush() {
         isValid();
         try {
@@ -35,7 +35,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
 import org.simpledbm.common.api.platform.Platform;
@@ -108,6 +114,40 @@ public final class FileStorageContainerFactory implements
     private static final String FLUSH_MODE = "storage.flushMode";
     private static final String DEFAULT_FLUSH_MODE = "force.true";
 
+    /**
+     * Selects the StorageContainer implementation. Values can be file, which
+     * serializes the I/O on each container, channel, which allows concurrent
+     * positional reads and writes, or async, which in addition carries out
+     * asynchronous requests on a pool of I/O threads.
+     */
+    private final String ioMode;
+    private static final String IO_MODE = "storage.ioMode";
+    private static final String IO_MODE_FILE = "file";
+    private static final String IO_MODE_CHANNEL = "channel";
+    private static final String IO_MODE_ASYNC = "async";
+
+    /**
+     * Number of threads that carry out asynchronous requests, which is the
+     * number of requests that can be in progress at the same time.
+     */
+    private static final String IO_THREADS = "storage.ioThreads";
+    private static final int DEFAULT_IO_THREADS = 16;
+
+    /**
+     * Comma separated names of containers whose reads are served from a
+     * memory mapping of the file.
+     */
+    private static final String MAPPED_CONTAINERS = "storage.mappedContainers";
+
+    private final Set<String> mappedContainers = new HashSet<String>();
+
+    /**
+     * Executes asynchronous requests for all the containers of this factory.
+     * The threads exit when idle, so the factory does not need to be shut
+     * down.
+     */
+    private ThreadPoolExecutor ioExecutor;
+
     // storage manager messages
     static Message m_ES0011 = new Message('R', 'S', MessageType.ERROR, 11,
             "Directory specified by {0}={1} does not exist");
@@ -137,6 +177,8 @@ public final class FileStorageContainerFactory implements
             "Unable to delete {0} as named object is not a StorageContainer");
     static Message m_ES0024 = new Message('R', 'S', MessageType.ERROR, 24,
             "Unable to delete path name {0}");
+    static Message m_ES0025 = new Message('R', 'S', MessageType.ERROR, 25,
+            "Invalid value {1} specified for {0}");
 
     public FileStorageContainerFactory(Platform platform, Properties props) {
         po = platform.getPlatformObjects(StorageContainerFactory.LOGGER_NAME);
@@ -146,6 +188,43 @@ public final class FileStorageContainerFactory implements
         createMode = props.getProperty(CREATE_MODE, defaultCreateMode);
         openMode = props.getProperty(OPEN_MODE, defaultOpenMode);
         flushMode = props.getProperty(FLUSH_MODE, DEFAULT_FLUSH_MODE);
+        ioMode = props.getProperty(IO_MODE, IO_MODE_FILE);
+        for (String name : props.getProperty(MAPPED_CONTAINERS, "").split(",")) {
+            name = name.trim();
+            if (name.length() > 0) {
+                mappedContainers.add(name);
+            }
+        }
+        if (IO_MODE_ASYNC.equals(ioMode)) {
+            String value = props.getProperty(IO_THREADS, Integer
+                    .toString(DEFAULT_IO_THREADS));
+            int ioThreads = 0;
+            try {
+                ioThreads = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+            }
+            if (ioThreads < 1) {
+                exceptionHandler.errorThrow(getClass(),
+                        "FileStorageContainerFactory", new StorageException(
+                                new MessageInstance(m_ES0025, IO_THREADS,
+                                        value)));
+            }
+            ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "StorageIO");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            ioExecutor.allowCoreThreadTimeOut(true);
+        } else if (!IO_MODE_FILE.equals(ioMode)
+                && !IO_MODE_CHANNEL.equals(ioMode)) {
+            exceptionHandler.errorThrow(getClass(),
+                    "FileStorageContainerFactory", new StorageException(
+                            new MessageInstance(m_ES0025, IO_MODE, ioMode)));
+        }
     }
 
     public FileStorageContainerFactory(Platform platform) {
@@ -156,6 +235,7 @@ public final class FileStorageContainerFactory implements
         createMode = defaultCreateMode;
         openMode = defaultOpenMode;
         flushMode = DEFAULT_FLUSH_MODE;
+        ioMode = IO_MODE_FILE;
     }
 
     public void init() {
@@ -231,6 +311,23 @@ public final class FileStorageContainerFactory implements
         return s;
     }
 
+    /**
+     * Wraps an open file in the StorageContainer implementation selected by
+     * the I/O mode. Memory mapped containers always use positional I/O for
+     * writes. The file name is needed by containers that may have to reopen
+     * the file.
+     */
+    private StorageContainer newContainer(String logicalName, String name,
+            RandomAccessFile rafile) {
+        boolean mapped = mappedContainers.contains(logicalName);
+        if (mapped || IO_MODE_CHANNEL.equals(ioMode)
+                || IO_MODE_ASYNC.equals(ioMode)) {
+            return new ChannelStorageContainer(po, logicalName, name,
+                    openMode, rafile, flushMode, ioExecutor, mapped);
+        }
+        return new FileStorageContainer(po, logicalName, rafile, flushMode);
+    }
+
     /**
      * Creates a new File based Storage Container object. If a container of the
      * same name already exists, it is over-written. By default the container is
@@ -262,7 +359,7 @@ public final class FileStorageContainerFactory implements
                             new StorageException(new MessageInstance(m_ES0018,
                                     name), e));
         }
-        return new FileStorageContainer(po, logicalName, rafile, flushMode);
+        return newContainer(logicalName, name, rafile);
     }
 
     /**
@@ -303,7 +400,7 @@ public final class FileStorageContainerFactory implements
                             new StorageException(new MessageInstance(m_ES0018,
                                     name), e));
         }
-        return new FileStorageContainer(po, logicalName, rafile, flushMode);
+        return newContainer(logicalName, name, rafile);
     }
 
     /**
@@ -333,7 +430,7 @@ public final class FileStorageContainerFactory implements
                             new StorageException(new MessageInstance(m_ES0020,
                                     name), e));
         }
-        return new FileStorageContainer(po, logicalName, rafile, flushMode);
+        return newContainer(logicalName, name, rafile);
     }
 
     /**
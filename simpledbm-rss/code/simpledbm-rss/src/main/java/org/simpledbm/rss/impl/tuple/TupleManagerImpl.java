@@ -38,6 +38,8 @@ package org.simpledbm.rss.impl.tuple;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.Properties;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
@@ -1776,6 +1778,18 @@ public class TupleManagerImpl extends BaseTransactionalModule implements
          */
         FreeSpaceScan spaceScan;
 
+        /**
+         * Number of pages the scan reads ahead of the current page.
+         */
+        static final int READ_AHEAD = 8;
+
+        /**
+         * Pages found by the space scan that have not been visited yet. The
+         * scan runs ahead of the current page, so that the Buffer Manager can
+         * be asked to read these pages in the background.
+         */
+        final LinkedList<Integer> pendingPages = new LinkedList<Integer>();
+
         /**
          * This flag indicates whether EOF condition is true.
          */
@@ -1788,6 +1802,25 @@ public class TupleManagerImpl extends BaseTransactionalModule implements
 
         Location previousLocation = null;
 
+        /**
+         * Tops up the list of pending pages once it falls to half the read
+         * ahead size, and requests that the new pages be prefetched.
+         */
+        void readAhead() {
+            if (pendingPages.size() > READ_AHEAD / 2 || spaceScan.isEof()) {
+                return;
+            }
+            ArrayList<PageId> pageIds = new ArrayList<PageId>();
+            while (pendingPages.size() < READ_AHEAD && spaceScan.fetchNext()) {
+                int pageNumber = spaceScan.getCurrentPage();
+                pendingPages.add(pageNumber);
+                pageIds.add(new PageId(tupleContainer.containerId, pageNumber));
+            }
+            if (!pageIds.isEmpty()) {
+                tuplemgr.bufmgr.prefetch(pageIds.toArray(new PageId[0]));
+            }
+        }
+
         /**
          * Initializes the scan.
          */
@@ -1883,8 +1916,9 @@ public class TupleManagerImpl extends BaseTransactionalModule implements
             Lsn savedPageLsn = null;
             while (state != LOCK_GRANTED) {
                 if (state == FETCH_NEXT_PAGE) {
-                    if (spaceScan.fetchNext()) {
-                        currentPage = spaceScan.getCurrentPage();
+                    readAhead();
+                    if (!pendingPages.isEmpty()) {
+                        currentPage = pendingPages.removeFirst();
                         currentSlot = -1;
                         state = FIND_NEXT_SLOT;
                     } else {
@@ -1892,9 +1926,13 @@ public class TupleManagerImpl extends BaseTransactionalModule implements
                         return false;
                     }
                 } else if (state == FIND_NEXT_SLOT) {
+                    /*
+                     * Pages are visited in sequence, so tell the Buffer
+                     * Manager not to let the scan push out other pages.
+                     */
                     BufferAccessBlock bab = tupleContainer.tuplemgr.bufmgr
                             .fixShared(new PageId(tupleContainer.containerId,
-                                    currentPage), 0);
+                                    currentPage), BufferManager.HINT_SEQUENTIAL);
                     try {
                         Page p = bab.getPage();
                         /*
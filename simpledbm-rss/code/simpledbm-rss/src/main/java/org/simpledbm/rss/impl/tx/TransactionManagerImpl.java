@@ -570,10 +570,19 @@ public final class TransactionManagerImpl implements TransactionManager {
      * transaction table.
      */
     public final Transaction begin(IsolationMode isolationMode) {
+        return begin(isolationMode, false);
+    }
+
+    /* (non-Javadoc)
+     * @see org.simpledbm.rss.api.tx.TransactionManager#begin(org.simpledbm.common.api.tx.IsolationMode, boolean)
+     */
+    public final Transaction begin(IsolationMode isolationMode,
+            boolean asyncCommit) {
         latch.exclusiveLock();
         try {
             TransactionImpl trx = newTransaction(null);
             trx.isolationMode = isolationMode;
+            trx.asyncCommit = asyncCommit;
             return trx;
         } finally {
             latch.unlockExclusive();
@@ -1754,6 +1763,13 @@ public final class TransactionManagerImpl implements TransactionManager {
          */
         IsolationMode isolationMode = IsolationMode.READ_COMMITTED;
 
+        /**
+         * If set, commit does not wait for the log to be flushed, unless there
+         * are post commit actions, which must not be performed until the
+         * commit is durable.
+         */
+        boolean asyncCommit = false;
+
         /**
          * Lock wait timeout in seconds
          */
@@ -2229,7 +2245,9 @@ public final class TransactionManagerImpl implements TransactionManager {
                  */
                 Lsn myLsn = getTrxmgr().doLogInsert(prepareLogRec);
                 registerLsn(prepareLogRec, myLsn);
-                getTrxmgr().logmgr.flush(myLsn);
+                if (!isAsyncCommit()) {
+                    getTrxmgr().logmgr.flush(myLsn);
+                }
             }
             state = TrxState.TRX_PREPARED;
             /*
@@ -2255,7 +2273,20 @@ public final class TransactionManagerImpl implements TransactionManager {
             commitLogRec.setPrevTrxLsn(lastLsn);
             Lsn myLsn = getTrxmgr().doLogInsert(commitLogRec);
             registerLsn(commitLogRec, myLsn);
-            getTrxmgr().logmgr.flush(myLsn);
+            if (isAsyncCommit()) {
+                getTrxmgr().logmgr.flushAsync(myLsn);
+            } else {
+                getTrxmgr().logmgr.flush(myLsn);
+            }
+        }
+
+        /**
+         * Determines whether the commit can complete without waiting for the
+         * log flush. Post commit actions, such as dropping containers, cannot
+         * be safely performed until the commit is durable.
+         */
+        private final boolean isAsyncCommit() {
+            return asyncCommit && postCommitActions.isEmpty();
         }
 
         /* (non-Javadoc)
@@ -89,6 +89,56 @@ import org.simpledbm.rss.api.wal.LogManager;
  * <td>log.flush.interval</td>
  * <td>Sets the interval (in seconds) between log flushes.</td>
  * </tr>
+ * <tr>
+ * <td>log.groupCommit</td>
+ * <td>If set to true, concurrent flush requests (such as those issued by
+ * committing transactions) are combined into a single log flush. Defaults to
+ * false.</td>
+ * </tr>
+ * <tr>
+ * <td>log.groupCommit.maxWait</td>
+ * <td>Sets the maximum time (in microseconds) that a group flush waits for
+ * other requests to join the group. Defaults to 200.</td>
+ * </tr>
+ * <tr>
+ * <td>log.groupCommit.maxBatch</td>
+ * <td>Sets the number of pending flush requests that causes a group flush to
+ * start without waiting any further. Defaults to 32.</td>
+ * </tr>
+ * <tr>
+ * <td>log.archive.threads</td>
+ * <td>Sets the number of full log files that may be archived concurrently.
+ * Defaults to 2.</td>
+ * </tr>
+ * <tr>
+ * <td>log.archive.compress</td>
+ * <td>If set to true, archived log files are compressed. Compressed archive
+ * log files are decompressed when log records are read from them. Defaults to
+ * false.</td>
+ * </tr>
+ * <tr>
+ * <td>log.asyncFlush.interval</td>
+ * <td>Sets the interval in milliseconds at which the log is flushed on
+ * behalf of transactions that commit asynchronously; this bounds the commits
+ * that may be lost after a system failure. Defaults to 50.</td>
+ * </tr>
+ * <tr>
+ * <td>log.readAhead.size</td>
+ * <td>Sets the size in bytes of the blocks that forward log scans, such as
+ * restart recovery, read from log files. The next block is read ahead in
+ * the background. Set to 0 to disable read ahead. Defaults to 1MB.</td>
+ * </tr>
+ * <tr>
+ * <td>log.readCache.blocks</td>
+ * <td>Sets the number of flushed log blocks cached for random reads of log
+ * records, such as those made by transaction rollback. Set to 0 to disable
+ * the cache. Defaults to 64.</td>
+ * </tr>
+ * <tr>
+ * <td>log.readCache.blockSize</td>
+ * <td>Sets the size in bytes of the blocks in the log read cache. Defaults to
+ * 32KB.</td>
+ * </tr>
  * </table>
  * 
  * @author Dibyendu Majumdar
@@ -132,6 +182,12 @@ public final class LogFactoryImpl implements LogFactory {
                 parms.logBufferSize, parms.maxLogBuffers,
                 parms.logFlushInterval, parms.disableExplicitFlushRequests);
         logmgr.setCtlFiles(parms.ctlFiles);
+        logmgr.setGroupCommit(parms.groupCommit, parms.groupCommitMaxWait,
+                parms.groupCommitMaxBatch);
+        logmgr.setArchiveOptions(parms.archiveThreads, parms.archiveCompress);
+        logmgr.setAsyncFlushInterval(parms.asyncFlushInterval);
+        logmgr.setReadAheadSize(parms.readAheadSize);
+        logmgr.setReadCache(parms.readCacheBlocks, parms.readCacheBlockSize);
         return logmgr;
     }
 
@@ -161,6 +217,24 @@ public final class LogFactoryImpl implements LogFactory {
 
         boolean disableExplicitFlushRequests;
 
+        boolean groupCommit;
+
+        int groupCommitMaxWait;
+
+        int groupCommitMaxBatch;
+
+        int archiveThreads;
+
+        boolean archiveCompress;
+
+        int asyncFlushInterval;
+
+        int readAheadSize;
+
+        int readCacheBlocks;
+
+        int readCacheBlockSize;
+
         final void setDefaults() {
             ctlFiles = new String[LogManagerImpl.DEFAULT_CTL_FILES];
             for (int i = 0; i < LogManagerImpl.DEFAULT_CTL_FILES; i++) {
@@ -177,6 +251,15 @@ public final class LogFactoryImpl implements LogFactory {
             logFlushInterval = 60000;
             maxLogBuffers = n_LogFiles * 10;
             disableExplicitFlushRequests = false;
+            groupCommit = false;
+            groupCommitMaxWait = LogManagerImpl.DEFAULT_GROUP_COMMIT_MAX_WAIT;
+            groupCommitMaxBatch = LogManagerImpl.DEFAULT_GROUP_COMMIT_MAX_BATCH;
+            archiveThreads = LogManagerImpl.DEFAULT_ARCHIVE_THREADS;
+            archiveCompress = false;
+            asyncFlushInterval = LogManagerImpl.DEFAULT_ASYNC_FLUSH_INTERVAL;
+            readAheadSize = LogManagerImpl.DEFAULT_READ_AHEAD_SIZE;
+            readCacheBlocks = LogManagerImpl.DEFAULT_READ_CACHE_BLOCKS;
+            readCacheBlockSize = LogManagerImpl.DEFAULT_READ_CACHE_BLOCK_SIZE;
         }
 
         LogMgrParms(Properties props) {
@@ -243,6 +326,51 @@ public final class LogFactoryImpl implements LogFactory {
             if (value != null) {
                 disableExplicitFlushRequests = Boolean.parseBoolean(value);
             }
+            key = "log.groupCommit";
+            value = props.getProperty(key);
+            if (value != null) {
+                groupCommit = Boolean.parseBoolean(value);
+            }
+            key = "log.groupCommit.maxWait";
+            value = props.getProperty(key);
+            if (value != null) {
+                groupCommitMaxWait = Integer.parseInt(value);
+            }
+            key = "log.groupCommit.maxBatch";
+            value = props.getProperty(key);
+            if (value != null) {
+                groupCommitMaxBatch = Integer.parseInt(value);
+            }
+            key = "log.archive.threads";
+            value = props.getProperty(key);
+            if (value != null) {
+                archiveThreads = Integer.parseInt(value);
+            }
+            key = "log.archive.compress";
+            value = props.getProperty(key);
+            if (value != null) {
+                archiveCompress = Boolean.parseBoolean(value);
+            }
+            key = "log.asyncFlush.interval";
+            value = props.getProperty(key);
+            if (value != null) {
+                asyncFlushInterval = Integer.parseInt(value);
+            }
+            key = "log.readAhead.size";
+            value = props.getProperty(key);
+            if (value != null) {
+                readAheadSize = Integer.parseInt(value);
+            }
+            key = "log.readCache.blocks";
+            value = props.getProperty(key);
+            if (value != null) {
+                readCacheBlocks = Integer.parseInt(value);
+            }
+            key = "log.readCache.blockSize";
+            value = props.getProperty(key);
+            if (value != null) {
+                readCacheBlockSize = Integer.parseInt(value);
+            }
         }
     }
 }
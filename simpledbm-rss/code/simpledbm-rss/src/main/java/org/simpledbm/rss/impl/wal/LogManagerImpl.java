@@ -33,22 +33,36 @@
 package org.simpledbm.rss.impl.wal;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.simpledbm.common.api.exception.ExceptionHandler;
 import org.simpledbm.common.api.exception.SimpleDBMException;
+import org.simpledbm.common.api.info.InformationManager;
+import org.simpledbm.common.api.info.LongStatistic;
 import org.simpledbm.common.api.platform.Platform;
 import org.simpledbm.common.api.platform.PlatformObjects;
 import org.simpledbm.common.api.registry.Storable;
@@ -259,6 +273,46 @@ public final class LogManagerImpl implements LogManager {
 
     static final int DEFAULT_LOG_FILE_SIZE = 2 * 1024; // * 1024;
 
+    /**
+     * Size of the writes used to preallocate log files.
+     */
+    static final int PREALLOCATE_CHUNK_SIZE = 256 * 1024;
+
+    static final int DEFAULT_GROUP_COMMIT_MAX_WAIT = 200;
+
+    static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 32;
+
+    static final int DEFAULT_READ_AHEAD_SIZE = 1024 * 1024;
+
+    static final int DEFAULT_READ_CACHE_BLOCKS = 64;
+
+    static final int DEFAULT_READ_CACHE_BLOCK_SIZE = 32 * 1024;
+
+    static final int DEFAULT_ASYNC_FLUSH_INTERVAL = 50;
+
+    static final int DEFAULT_ARCHIVE_THREADS = 2;
+
+    /**
+     * Size of the reads used to copy log files to the archive.
+     */
+    static final int ARCHIVE_BUFFER_SIZE = 1024 * 1024;
+
+    static final String ARCHIVE_SUFFIX = ".log";
+
+    static final String COMPRESSED_ARCHIVE_SUFFIX = ".log.z";
+
+    /**
+     * Number of times an inserter spins waiting for preceding log records to
+     * be published before it starts yielding the processor.
+     */
+    static final int PUBLISH_SPINS = 100;
+
+    /**
+     * Maximum time in milliseconds that an inserter waits for log buffers to
+     * become available before waking up the Log Writer again.
+     */
+    static final int LOG_BUFFER_WAIT = 100;
+
     /**
      * Each Log Group has a single character ID. The ID stored in the file
      * header of all log files belonging to a group.
@@ -307,10 +361,20 @@ public final class LogManagerImpl implements LogManager {
     private static final int EOF_LOGREC_SIZE = LOGREC_HEADER_SIZE;
 
     /**
-     * Currently active buffer, access to this is protected via
-     * {@link #bufferLock}.
+     * Currently active buffer. Inserters read this without any locks, but it
+     * is only changed while holding {@link #bufferLock}.
+     */
+    private volatile LogBuffer currentBuffer;
+
+    /**
+     * The Lsn that follows the last published log record, packed into a long
+     * as (index << 32 | offset). Log records are published strictly in Lsn
+     * order; an inserter waits until this matches the Lsn of its record before
+     * publishing it. Only the inserter that is publishing updates this.
+     * 
+     * @see #publish(LogBuffer, Lsn, int, Lsn)
      */
-    private LogBuffer currentBuffer;
+    private volatile long publishedLsn;
 
     /**
      * List of log buffers; the active buffer is always at the tail of this
@@ -318,6 +382,13 @@ public final class LogManagerImpl implements LogManager {
      */
     private final LinkedList<LogBuffer> logBuffers;
 
+    /**
+     * Memory of log buffers that have been released, kept for reuse as
+     * allocating direct buffers is expensive. Access is protected via
+     * {@link #bufferLock}.
+     */
+    private final LinkedList<ByteBuffer> spareLogBuffers = new LinkedList<ByteBuffer>();
+
     /**
      * Holds control information about the Log. Access protected via
      * {@link #anchorLock} and {@link #anchorWriteLock}.
@@ -391,6 +462,21 @@ public final class LogManagerImpl implements LogManager {
     //    private ScheduledExecutorService flushService;
     ScheduledFuture<?> flushService;
 
+    /**
+     * The Log Writer task, which is run periodically by the
+     * {@link #flushService}, and on demand when inserters run out of log
+     * buffers.
+     * 
+     * @see #wakeLogWriter()
+     */
+    private LogWriter logWriter;
+
+    /**
+     * Set when an immediate run of the Log Writer has been requested and the
+     * Log Writer has not started yet.
+     */
+    final AtomicBoolean logWriterWakeup = new AtomicBoolean(false);
+
     /**
      * A Single Threaded Executor service is used to handle archive log file
      * requests.
@@ -407,9 +493,38 @@ public final class LogManagerImpl implements LogManager {
     ScheduledFuture<?> archiveCleaner;
 
     /**
-     * Tracks the logIndex of the last archived file.
+     * Archive requests whose log files have been copied, but which are waiting
+     * for the archiving of preceding log files to complete. Protected by
+     * {@link #archiveLock}.
+     * 
+     * @see #handleNextArchiveRequest(ArchiveRequest)
+     */
+    private final TreeMap<Integer, ArchiveRequest> copiedArchiveRequests = new TreeMap<Integer, ArchiveRequest>();
+
+    /**
+     * Number of full log files that have not yet been archived.
+     */
+    private final AtomicInteger archiveLag = new AtomicInteger(0);
+
+    /**
+     * Number of log files that may be archived concurrently.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     */
+    private int archiveThreads = DEFAULT_ARCHIVE_THREADS;
+
+    /**
+     * If set, archived log files are compressed.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     */
+    private boolean archiveCompress = false;
+
+    /**
+     * The most recently decompressed archived log file, retained because
+     * readers tend to read many records from the same log file.
      */
-    private volatile int lastArchivedFile = -1;
+    private volatile InflatedLogFile lastInflatedLogFile;
 
     /*
      * Note on multi-threading issues. The goals of the design are to ensure
@@ -418,7 +533,9 @@ public final class LogManagerImpl implements LogManager {
      * a) Clients who want to insert log records do not block because a log
      * flush is taking place. The only situation where the clients will block is
      * if there is not enough memory left to allocate buffers for the new log
-     * record.
+     * record. Clients also do not block each other: space for a log record is
+     * reserved atomically in the current log buffer, and the record is copied
+     * into the buffer without holding any locks.
      * 
      * b) Log flush should be performed by either a dedicated thread or by the
      * calling thread. Either way, only one log flush is allowed to be active at
@@ -464,8 +581,10 @@ public final class LogManagerImpl implements LogManager {
     private final ReentrantLock anchorLock;
 
     /**
-     * Protects access to {@link #currentBuffer} and {@link #logBuffers}. Must
-     * be acquired before {@link #anchorLock}.
+     * Protects access to {@link #logBuffers}, and changes to
+     * {@link #currentBuffer}. Inserters do not acquire this lock unless they
+     * need to switch the current buffer. Must be acquired before
+     * {@link #anchorLock}.
      */
     private final ReentrantLock bufferLock;
 
@@ -504,6 +623,130 @@ public final class LogManagerImpl implements LogManager {
      */
     private final boolean disableExplicitFlushRequests;
 
+    /**
+     * If set, explicit flush requests are handled using group commit.
+     * Requesters register the Lsn they need to be durable and wait; one of
+     * them becomes the flusher for the group, writes out all the log records
+     * needed by the group in a single flush, and then wakes up the rest.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     * 
+     * @see #groupCommitFlush(Lsn)
+     */
+    private boolean groupCommit = false;
+
+    /**
+     * The maximum time in microseconds that the flusher of a group will wait
+     * for the group to fill up before starting the flush.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     */
+    private int groupCommitMaxWait = DEFAULT_GROUP_COMMIT_MAX_WAIT;
+
+    /**
+     * The flusher stops waiting for the group to fill up as soon as this
+     * many flush requests are pending.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     */
+    private int groupCommitMaxBatch = DEFAULT_GROUP_COMMIT_MAX_BATCH;
+
+    /**
+     * Interval in milliseconds at which asynchronous flush requests are
+     * serviced; this bounds the window of commits that may be lost after a
+     * system failure when transactions commit asynchronously.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     * 
+     * @see #flushAsync(Lsn)
+     */
+    private int asyncFlushInterval = DEFAULT_ASYNC_FLUSH_INTERVAL;
+
+    /**
+     * Highest Lsn for which an asynchronous flush has been requested.
+     * 
+     * @see #flushAsync(Lsn)
+     * @see AsyncFlusher
+     */
+    final AtomicReference<Lsn> asyncFlushLsn = new AtomicReference<Lsn>(
+            new Lsn());
+
+    /**
+     * Periodically services asynchronous flush requests.
+     * 
+     * @see AsyncFlusher
+     */
+    ScheduledFuture<?> asyncFlushService;
+
+    /**
+     * Size of the blocks read by forward scanning readers; 0 disables read
+     * ahead.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     * 
+     * @see LogForwardReaderImpl
+     */
+    private int readAheadSize = DEFAULT_READ_AHEAD_SIZE;
+
+    /**
+     * Cache of blocks of flushed log data, used to satisfy random reads of
+     * log records, such as those made by transaction rollback, which are no
+     * longer in the log buffers. Null if the cache is disabled.
+     * <p>
+     * MT safe, because it is updated only once, before the Log is started.
+     * 
+     * @see #readFromCache(Lsn)
+     */
+    private LogBlockCache readCache = new LogBlockCache(
+            DEFAULT_READ_CACHE_BLOCKS, DEFAULT_READ_CACHE_BLOCK_SIZE);
+
+    /**
+     * Protects the group commit state: {@link #groupCommitFlushActive},
+     * {@link #groupCommitPendingLsn} and {@link #groupCommitPendingCount}.
+     * Must be acquired before {@link #flushLock} if both are needed, and must
+     * not be held while the flush is executed.
+     */
+    private final ReentrantLock groupCommitLock;
+
+    /**
+     * Signalled by the flusher of a group when the flush is over; requesters
+     * waiting for their Lsn to become durable wait on this condition.
+     */
+    private final Condition groupCommitDone;
+
+    /**
+     * Signalled when the group is full, so that the flusher can stop
+     * waiting for more requests.
+     */
+    private final Condition groupCommitFull;
+
+    /**
+     * Set while a group flush is in progress. Protected by
+     * {@link #groupCommitLock}.
+     */
+    private boolean groupCommitFlushActive = false;
+
+    /**
+     * Highest Lsn requested by the requests in the next group. Protected by
+     * {@link #groupCommitLock}.
+     */
+    private Lsn groupCommitPendingLsn = null;
+
+    /**
+     * Number of requests that are waiting to join the next group. Protected by
+     * {@link #groupCommitLock}.
+     */
+    private int groupCommitPendingCount = 0;
+
+    /**
+     * Incremented each time a flusher takes the pending requests as its
+     * group, so that a requester can tell whether it still belongs to the
+     * pending group. Protected by {@link #groupCommitLock}.
+     */
+    private long groupCommitGeneration = 0;
+
+    final LogManagerStatistics statistics;
+
     /**
      * The size of a log buffer.
      * <p>
@@ -604,6 +847,14 @@ public final class LogManagerImpl implements LogManager {
     		"Invalid log file (signature did not match)");
     static Message m_EW0036 = new Message('R', 'W', MessageType.ERROR, 36,
     		"Invalid log anchor (signature did not match)");
+    static Message m_EW0037 = new Message('R', 'W', MessageType.ERROR, 37,
+            "Interrupted while waiting for group commit of Log Record {0}");
+    static Message m_EW0038 = new Message('R', 'W', MessageType.ERROR, 38,
+            "Interrupted while waiting for log buffers to become available");
+    static Message m_EW0039 = new Message('R', 'W', MessageType.ERROR, 39,
+            "Interrupted while waiting for log read ahead of Log Record {0}");
+    static Message m_EW0040 = new Message('R', 'W', MessageType.ERROR, 40,
+            "Compressed archive log file {0} is corrupt");
 
     /* (non-Javadoc)
      * @see org.simpledbm.rss.api.wal.LogManager#insert(byte[], int)
@@ -616,58 +867,79 @@ public final class LogManagerImpl implements LogManager {
                     new LogException(new MessageInstance(m_EW0001, reclen,
                             getMaxLogRecSize())));
         }
-        bufferLock.lock();
-        /*
-         * Following code has the problem that if we run out of
-         * log buffers it will wait until the log flush kicks in.
-         * This can be a long wait depending upon how often the
-         * log writer flushes the log.
-         * An alternative is to force the log flush here.
-         */
-        /*
-        if (logBuffers.size() > anchor.maxBuffers) {
-            try {
-                buffersAvailable.await();
-            } catch (InterruptedException e) {
-                logger.error(getClass(), "insert", mcat
-                    .getMessage("EW0002"), e);
-                throw new LogException(mcat.getMessage("EW0002"), e);
+        for (;;) {
+            /*
+             * Fast path - reserve space for the log record in the current
+             * buffer. This also determines the Lsn of the log record.
+             */
+            LogBuffer buf = currentBuffer;
+            long r = buf.reserve(reclen, getEofPos());
+            if (r != LogBuffer.NO_SPACE) {
+                Lsn lsn = buf.getNextLsn(r);
+                addToBuffer(buf, lsn, data, length, buf.getPrevLsn(r),
+                        advanceToNextRecord(lsn, reclen));
+                return lsn;
             }
+            /*
+             * Slow path - either the buffer or the log file is full.
+             */
+            switchLogBuffer(buf, reclen);
         }
-         */
-        /*
-         * FIXME Following is a temporary workaround for this issue.
-         * Problem is that this is not optimum for performance,
-         * as we don't have to wait for a full flush to complete
-         * before resuming the insert. Ideally, we want to trigger 
-         * the Log Writer here and start waiting on buffersAvailable.
-         */
-        if (logBuffers.size() > maxBuffers) {
+    }
+
+    /**
+     * Replaces the current log buffer when there isn't enough space in it for
+     * a log record of the specified length. If the log file does not have
+     * enough space either, an EOF record is added and the new buffer is
+     * started in the next log file.
+     * 
+     * @param buf The buffer that was found to be full
+     * @param reclen Length of the log record that did not fit
+     */
+    private void switchLogBuffer(LogBuffer buf, int reclen) {
+        bufferLock.lock();
+        if (currentBuffer != buf) {
+            // Some other thread has already switched the buffer
             bufferLock.unlock();
-            flush();
-            bufferLock.lock();
+            return;
+        }
+        if (logBuffers.size() > maxBuffers) {
+            /*
+             * We have run out of log buffers. Rather than flushing the log
+             * ourselves, we trigger the Log Writer and wait for it to
+             * release some buffers.
+             */
+            try {
+                waitForLogBuffers();
+            } finally {
+                bufferLock.unlock();
+            }
+            return;
         }
 
         try {
-            anchorLock.lock();
-            try {
-                Lsn nextLsn = advanceToNextRecord(anchor.currentLsn, reclen);
-                if (nextLsn.getOffset() > getEofPos()) {
-                    // Add EOF record
-                    // System.err.println("ADDING EOF AT " + anchor.currentLsn);
-                    addToBuffer(anchor.currentLsn, new byte[1], 0,
-                            anchor.maxLsn);
-                    anchor.maxLsn = anchor.currentLsn;
-                    anchor.currentLsn = advanceToNextFile(anchor.currentLsn);
-                    nextLsn = advanceToNextRecord(anchor.currentLsn, reclen);
+            long r = buf.seal();
+            Lsn lsn = buf.getNextLsn(r);
+            Lsn prevLsn = buf.getPrevLsn(r);
+            if (advanceToNextRecord(lsn, reclen).getOffset() > getEofPos()) {
+                // Add EOF record
+                LogBuffer eofBuf = buf;
+                int eofEnd = lsn.getOffset() + EOF_LOGREC_SIZE;
+                if (eofEnd - buf.startOffset > buf.buffer.capacity()) {
+                    // No space in the buffer for the EOF record
+                    eofBuf = newLogBuffer(lsn, prevLsn);
+                    eofBuf.seal();
+                    logBuffers.add(eofBuf);
                 }
-                addToBuffer(anchor.currentLsn, data, length, anchor.maxLsn);
-                anchor.maxLsn = anchor.currentLsn;
-                anchor.currentLsn = nextLsn;
-                return anchor.maxLsn;
-            } finally {
-                anchorLock.unlock();
+                eofBuf.sealedEnd = eofEnd;
+                Lsn nextLsn = advanceToNextFile(lsn);
+                addToBuffer(eofBuf, lsn, new byte[1], 0, prevLsn, nextLsn);
+                prevLsn = lsn;
+                lsn = nextLsn;
             }
+            LogBuffer newBuf = newLogBuffer(lsn, prevLsn);
+            logBuffers.add(newBuf);
+            currentBuffer = newBuf;
         } finally {
             bufferLock.unlock();
         }
@@ -679,7 +951,154 @@ public final class LogManagerImpl implements LogManager {
     public final void flush(Lsn upto) {
         assertIsOpen();
         if (!getDisableExplicitFlushRequests() || anchorDirty || upto == null) {
-            handleFlushRequest(new FlushRequest(upto));
+            if (groupCommit && upto != null) {
+                groupCommitFlush(upto);
+            } else {
+                handleFlushRequest(new FlushRequest(upto));
+            }
+        }
+    }
+
+    /**
+     * Records the Lsn to be flushed, and returns without waiting. The
+     * {@link AsyncFlusher} flushes the log upto the highest requested Lsn
+     * every {@link #asyncFlushInterval} milliseconds.
+     * 
+     * @see org.simpledbm.rss.api.wal.LogManager#flushAsync(org.simpledbm.rss.api.wal.Lsn)
+     */
+    public final void flushAsync(Lsn upto) {
+        assertIsOpen();
+        if (getDisableExplicitFlushRequests()
+                || upto.compareTo(anchor.durableLsn) <= 0) {
+            return;
+        }
+        for (;;) {
+            Lsn lsn = asyncFlushLsn.get();
+            if (upto.compareTo(lsn) <= 0
+                    || asyncFlushLsn.compareAndSet(lsn, upto)) {
+                break;
+            }
+        }
+        statistics.asyncFlushRequests.increment();
+    }
+
+    /**
+     * Flushes the log upto the highest Lsn for which an asynchronous flush
+     * has been requested, if that is not already durable.
+     */
+    final void handleAsyncFlush() {
+        Lsn lsn = asyncFlushLsn.get();
+        if (lsn.isNull() || lsn.compareTo(anchor.durableLsn) <= 0) {
+            return;
+        }
+        handleFlushRequest(new FlushRequest(lsn));
+        statistics.asyncFlushes.increment();
+    }
+
+    /**
+     * Handles an explicit flush request in group commit mode. The requester
+     * adds itself to the pending group and waits until its Lsn is durable. If
+     * no group flush is in progress, the requester becomes the flusher: it
+     * waits up to {@link #groupCommitMaxWait} microseconds for the group to
+     * fill up (or until {@link #groupCommitMaxBatch} requests are pending),
+     * then flushes the log up to the highest Lsn requested by the group, and
+     * finally wakes up all the waiting requesters. Requesters whose Lsn is
+     * still not durable (because they arrived after the group was closed)
+     * will form the next group.
+     * 
+     * @param upto Lsn that must be made durable
+     */
+    private void groupCommitFlush(Lsn upto) {
+        if (upto.compareTo(anchor.durableLsn) <= 0) {
+            return;
+        }
+        Lsn groupLsn = null;
+        int groupSize = 0;
+        boolean flusher = false;
+        long generation;
+        groupCommitLock.lock();
+        generation = groupCommitGeneration;
+        try {
+            groupCommitPendingCount++;
+            if (groupCommitPendingLsn == null
+                    || upto.compareTo(groupCommitPendingLsn) > 0) {
+                groupCommitPendingLsn = upto;
+            }
+            if (groupCommitPendingCount >= groupCommitMaxBatch) {
+                groupCommitFull.signal();
+            }
+            for (;;) {
+                if (upto.compareTo(anchor.durableLsn) <= 0) {
+                    return;
+                }
+                if (!groupCommitFlushActive) {
+                    break;
+                }
+                groupCommitDone.await();
+            }
+            /*
+             * We are the flusher for the next group. Give other requesters a
+             * chance to join the group.
+             */
+            groupCommitFlushActive = true;
+            flusher = true;
+            long nanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMaxWait);
+            while (nanos > 0 && groupCommitPendingCount < groupCommitMaxBatch) {
+                nanos = groupCommitFull.awaitNanos(nanos);
+            }
+            groupLsn = groupCommitPendingLsn;
+            groupSize = groupCommitPendingCount;
+            groupCommitPendingLsn = null;
+            groupCommitPendingCount = 0;
+            groupCommitGeneration++;
+        } catch (InterruptedException e) {
+            if (flusher) {
+                /*
+                 * Let one of the other requesters take over as the flusher.
+                 */
+                groupCommitFlushActive = false;
+                groupCommitDone.signalAll();
+            }
+            exceptionHandler.errorThrow(getClass(), "groupCommitFlush",
+                    new LogException(new MessageInstance(m_EW0037, upto), e));
+        } finally {
+            if (generation == groupCommitGeneration) {
+                /*
+                 * We are leaving before a flusher took our request into its
+                 * group, either because our Lsn became durable or because we
+                 * were interrupted, so we must withdraw from the pending
+                 * group.
+                 */
+                if (--groupCommitPendingCount == 0) {
+                    groupCommitPendingLsn = null;
+                }
+            }
+            groupCommitLock.unlock();
+        }
+
+        try {
+            handleFlushRequest(new FlushRequest(groupLsn, true));
+            statistics.recordGroupCommit(groupSize);
+        } finally {
+            groupCommitLock.lock();
+            try {
+                groupCommitFlushActive = false;
+                groupCommitDone.signalAll();
+            } finally {
+                groupCommitLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting to join the next group.
+     */
+    final int getGroupCommitPendingCount() {
+        groupCommitLock.lock();
+        try {
+            return groupCommitPendingCount;
+        } finally {
+            groupCommitLock.unlock();
         }
     }
 
@@ -725,6 +1144,7 @@ public final class LogManagerImpl implements LogManager {
         openCtlFiles();
         openLogFiles();
         scanToEof();
+        initLogBuffers();
         setupBackgroundThreads();
         errored = false;
         started = true;
@@ -742,6 +1162,7 @@ public final class LogManagerImpl implements LogManager {
              * to avoid unnecessary conflicts.
              */
             flushService.cancel(false);
+            asyncFlushService.cancel(false);
             logger.info(this.getClass(), "shutdown",
                     new MessageInstance(m_IW0030).toString());
             if (!errored) {
@@ -878,22 +1299,43 @@ public final class LogManagerImpl implements LogManager {
             }
         }
 
+        logWriter = new LogWriter(this);
         flushService = platform.getScheduler().scheduleWithFixedDelay(
-                Priority.SERVER_TASK, new LogWriter(this), logFlushInterval,
+                Priority.SERVER_TASK, logWriter, logFlushInterval,
                 logFlushInterval, TimeUnit.SECONDS);
         logger.info(this.getClass(), "setupBackgroundThreads",
                 new MessageInstance(m_IW0028).toString());
 
+        asyncFlushService = platform.getScheduler().scheduleWithFixedDelay(
+                Priority.SERVER_TASK, new AsyncFlusher(this),
+                asyncFlushInterval, asyncFlushInterval, TimeUnit.MILLISECONDS);
+
         archiveCleaner = platform.getScheduler().scheduleWithFixedDelay(
                 Priority.SERVER_TASK, new ArchiveCleaner(this),
                 logFlushInterval, logFlushInterval, TimeUnit.SECONDS);
         logger.info(this.getClass(), "setupBackgroundThreads",
                 new MessageInstance(m_IW0029).toString());
         
-        archiveService = Executors.newSingleThreadExecutor();
+        archiveService = Executors.newFixedThreadPool(archiveThreads);
         logger.info(this.getClass(), "setupBackgroundThreads",
                 new MessageInstance(m_IW0033).toString());
-        
+
+        /*
+         * Log files that became full but were not archived before the Log was
+         * last closed are archived now, in log index order.
+         */
+        TreeMap<Integer, ArchiveRequest> pending = new TreeMap<Integer, ArchiveRequest>();
+        for (int i = 0; i < anchor.n_LogFiles; i++) {
+            if (anchor.fileStatus[i] == LOG_FILE_FULL) {
+                ArchiveRequest arec = new ArchiveRequest();
+                arec.fileno = i;
+                arec.logIndex = anchor.logIndexes[i];
+                pending.put(arec.logIndex, arec);
+            }
+        }
+        for (ArchiveRequest arec : pending.values()) {
+            submitArchiveRequest(arec);
+        }
     }
 
     /**
@@ -1077,6 +1519,9 @@ public final class LogManagerImpl implements LogManager {
         bufferLock = new ReentrantLock();
         buffersAvailable = bufferLock.newCondition();
         anchorWriteLock = new ReentrantLock();
+        groupCommitLock = new ReentrantLock();
+        groupCommitDone = groupCommitLock.newCondition();
+        groupCommitFull = groupCommitLock.newCondition();
         readLocks = new ReentrantLock[MAX_LOG_FILES];
         for (int i = 0; i < MAX_LOG_FILES; i++) {
             readLocks[i] = new ReentrantLock();
@@ -1087,10 +1532,9 @@ public final class LogManagerImpl implements LogManager {
         files = new StorageContainer[MAX_LOG_GROUPS][MAX_LOG_FILES];
         ctlFiles = new StorageContainer[MAX_CTL_FILES];
         logBuffers = new LinkedList<LogBuffer>();
-        currentBuffer = new LogBuffer(logBufferSize);
-        logBuffers.add(currentBuffer);
 
         this.storageFactory = storageFactory;
+        this.statistics = new LogManagerStatistics(po.getInformationManager());
 
         errored = false;
         started = false;
@@ -1212,11 +1656,12 @@ public final class LogManagerImpl implements LogManager {
     }
 
     /**
-     * Creates a Log File, autoextending it to its maximum length. The file
+     * Creates a Log File, preallocating it to its maximum length. The file
      * header is initialized, and the rest of the file is set to Null bytes.
      * 
      * @param filename
      * @param header
+     * @see #preallocateLogFile(StorageContainer, LogFileHeader)
      */
     private void createLogFile(String filename, LogFileHeader header) {
 
@@ -1226,40 +1671,9 @@ public final class LogManagerImpl implements LogManager {
         }
 
         StorageContainer file = null;
-        int buflen = 8192;
-        int len = logBufferSize;
-        if (len < buflen) {
-            buflen = len;
-        }
-        byte buf[] = new byte[buflen];
-
         try {
             file = storageFactory.create(filename);
-
-            int written = 0;
-            boolean needToWriteHeader = true;
-
-            while (written < len) {
-                int left = len - written;
-                int n;
-
-                if (needToWriteHeader) {
-                    ByteBuffer bb = ByteBuffer.wrap(buf, 0, LogFileHeader.SIZE);
-                    header.store(bb);
-                }
-
-                if (left > buf.length)
-                    n = buf.length;
-                else
-                    n = left;
-                file.write(written, buf, 0, n);
-                written += n;
-                if (needToWriteHeader) {
-                    needToWriteHeader = false;
-                    buf = new byte[buflen];
-                }
-            }
-            file.flush();
+            preallocateLogFile(file, header);
         } finally {
             if (file != null) {
                 file.close();
@@ -1267,6 +1681,31 @@ public final class LogManagerImpl implements LogManager {
         }
     }
 
+    /**
+     * Writes the file header followed by Null bytes upto the full length of
+     * the log file, so that subsequent log writes overwrite already allocated
+     * blocks rather than extend the file.
+     * 
+     * @param file Log file to be initialized
+     * @param header Header of the log file
+     */
+    private void preallocateLogFile(StorageContainer file, LogFileHeader header) {
+        int len = anchor.logFileSize;
+        byte buf[] = new byte[Math.min(len, PREALLOCATE_CHUNK_SIZE)];
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, LogFileHeader.SIZE);
+        header.store(bb);
+        int written = 0;
+        while (written < len) {
+            int n = Math.min(len - written, buf.length);
+            file.write(written, buf, 0, n);
+            if (written == 0) {
+                Arrays.fill(buf, 0, LogFileHeader.SIZE, (byte) 0);
+            }
+            written += n;
+        }
+        file.flush();
+    }
+
     /**
      * Creates all the log files.
      * 
@@ -1284,20 +1723,34 @@ public final class LogManagerImpl implements LogManager {
     }
 
     /**
-     * Resets a log file by initializing the header record.
+     * Recycles a log file in place by rewriting the header record with the
+     * new log index. The rest of the file is not touched: the log index acts
+     * as the generation number of the file, and as every log record carries
+     * its Lsn, which includes the log index, stale records left over from a
+     * previous use of the file are detected when read.
+     * <p>
+     * Log files that were not fully preallocated when created, are
+     * preallocated now, as their contents are no longer needed.
      * 
      * @param logfile
      */
     private void resetLogFiles(int logfile) {
         ByteBuffer bb = ByteBuffer.allocate(LogFileHeader.SIZE);
+        byte[] lastByte = new byte[1];
 
         for (int i = 0; i < anchor.n_LogGroups; i++) {
             LogFileHeader header = new LogFileHeader(anchor.groups[i].id,
                     anchor.logIndexes[logfile]);
+            StorageContainer file = files[i][logfile];
+            if (file.read(anchor.logFileSize - 1, lastByte, 0, 1) != 1) {
+                preallocateLogFile(file, header);
+                continue;
+            }
             bb.clear();
             header.store(bb);
             bb.flip();
-            files[i][logfile].write(0, bb.array(), 0, bb.limit());
+            file.write(0, bb.array(), 0, bb.limit());
+            file.flush();
         }
     }
 
@@ -1420,38 +1873,233 @@ public final class LogManagerImpl implements LogManager {
         anchor.archiveMode = mode;
     }
 
-    public final Lsn getMaxLsn() {
-        return anchor.maxLsn;
+    /**
+     * Enables or disables group commit. Must be called before the Log is
+     * started.
+     * 
+     * @param enabled Enables group commit if true
+     * @param maxWait Maximum time in microseconds that a group flush waits for
+     *            more requests to join the group
+     * @param maxBatch Number of pending requests that will close the group
+     * @see #groupCommitFlush(Lsn)
+     */
+    final void setGroupCommit(boolean enabled, int maxWait, int maxBatch) {
+        this.groupCommit = enabled;
+        this.groupCommitMaxWait = maxWait;
+        this.groupCommitMaxBatch = maxBatch;
     }
 
-    public final Lsn getDurableLsn() {
-        return anchor.durableLsn;
+    /**
+     * Sets up log archiving. Must be called before the Log is started.
+     * 
+     * @param threads Number of log files that may be archived concurrently
+     * @param compress If set, archived log files are compressed
+     */
+    final void setArchiveOptions(int threads, boolean compress) {
+        this.archiveThreads = threads;
+        this.archiveCompress = compress;
     }
 
-    private void assertIsOpen() {
-        if (!started || errored) {
-            exceptionHandler.errorThrow(getClass(), "assertIsOpen",
-                    new LogException(new MessageInstance(m_EW0016)));
-        }
+    /**
+     * Sets the interval in milliseconds at which asynchronous flush requests
+     * are serviced. Must be called before the Log is started.
+     * 
+     * @param interval Interval in milliseconds
+     * @see #flushAsync(Lsn)
+     */
+    final void setAsyncFlushInterval(int interval) {
+        this.asyncFlushInterval = interval;
     }
 
     /**
-     * Inserts a log record into the log buffers. If there is not enough space
-     * in the current log buffer, a new buffer is allocated.
+     * Sets the size of the blocks read by forward scanning readers. Must be
+     * called before the Log is started.
      * 
-     * @param lsn
-     * @param data
-     * @param length
-     * @param prevLsn
+     * @param size Block size in bytes, 0 disables read ahead
      */
-    private void addToBuffer(Lsn lsn, byte[] data, int length, Lsn prevLsn) {
-        int reclen = calculateLogRecordSize(length);
-        if (currentBuffer.getRemaining() < reclen) {
-            // System.err.println("CURRENT BUFFER " + currentBuffer + " IS FULL");
-            currentBuffer = new LogBuffer(logBufferSize);
-            logBuffers.add(currentBuffer);
-        }
-        currentBuffer.insert(lsn, data, length, prevLsn);
+    final void setReadAheadSize(int size) {
+        this.readAheadSize = size;
+    }
+
+    /**
+     * Sets up the cache of flushed log blocks used by random reads. Must be
+     * called before the Log is started.
+     * 
+     * @param blocks Number of blocks to cache, 0 disables the cache
+     * @param blockSize Size of each block in bytes
+     */
+    final void setReadCache(int blocks, int blockSize) {
+        if (blocks > 0 && blockSize > 0) {
+            this.readCache = new LogBlockCache(blocks, blockSize);
+        } else {
+            this.readCache = null;
+        }
+    }
+
+    public final Lsn getMaxLsn() {
+        return anchor.maxLsn;
+    }
+
+    public final Lsn getDurableLsn() {
+        return anchor.durableLsn;
+    }
+
+    private void assertIsOpen() {
+        if (!started || errored) {
+            exceptionHandler.errorThrow(getClass(), "assertIsOpen",
+                    new LogException(new MessageInstance(m_EW0016)));
+        }
+    }
+
+    /**
+     * Waits until the number of log buffers falls within the limit. The Log
+     * Writer is woken up to flush the log and release the buffers; the wait is
+     * bounded so that the Log Writer is woken up again if the buffers are still
+     * not available. Must be called with {@link #bufferLock} held.
+     */
+    private void waitForLogBuffers() {
+        long startTime = System.nanoTime();
+        try {
+            while (logBuffers.size() > maxBuffers) {
+                assertIsOpen();
+                if (stopped) {
+                    /*
+                     * The Log Writer is no longer running, so we must do the
+                     * flush ourselves.
+                     */
+                    bufferLock.unlock();
+                    try {
+                        flush();
+                    } finally {
+                        bufferLock.lock();
+                    }
+                    break;
+                }
+                wakeLogWriter();
+                buffersAvailable.await(LOG_BUFFER_WAIT, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            exceptionHandler.errorThrow(getClass(), "waitForLogBuffers",
+                    new LogException(new MessageInstance(m_EW0038), e));
+        } finally {
+            statistics.recordBufferStall(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Requests the Log Writer to run immediately, unless such a request is
+     * already pending.
+     */
+    private void wakeLogWriter() {
+        if (logWriterWakeup.compareAndSet(false, true)) {
+            platform.getScheduler().execute(Priority.SERVER_TASK, logWriter);
+        }
+    }
+
+    /**
+     * Copies a log record into the space reserved for it in a log buffer, and
+     * then publishes it. Log records are published in Lsn order, hence this
+     * may have to wait for inserters of preceding log records to finish
+     * copying their log records.
+     * 
+     * @param buf Buffer where space has been reserved for the log record
+     * @param lsn Lsn of the log record
+     * @param data Contents of the log record
+     * @param length Length of the data
+     * @param prevLsn Lsn of the previous log record
+     * @param nextLsn Lsn that follows the log record
+     */
+    private void addToBuffer(LogBuffer buf, Lsn lsn, byte[] data, int length,
+            Lsn prevLsn, Lsn nextLsn) {
+        boolean copied = false;
+        try {
+            buf.insert(lsn, data, length, prevLsn);
+            copied = true;
+        } finally {
+            if (!copied) {
+                /*
+                 * The reserved space cannot be left unpublished, as later
+                 * inserters would wait forever to publish their records.
+                 * The log record is published regardless, and the log is
+                 * marked as errored.
+                 */
+                errored = true;
+            }
+            publish(buf, lsn, calculateLogRecordSize(length), nextLsn);
+        }
+    }
+
+    /**
+     * Publishes a log record once all the preceding log records have been
+     * published.
+     * 
+     * @see #publishedLsn
+     */
+    private void publish(LogBuffer buf, Lsn lsn, int reclen, Lsn nextLsn) {
+        long packedLsn = packLsn(lsn);
+        int spins = 0;
+        while (publishedLsn != packedLsn) {
+            if (++spins > PUBLISH_SPINS) {
+                Thread.yield();
+            }
+        }
+        buf.publish(lsn.getOffset(), reclen);
+        /*
+         * Only the thread publishing a log record updates these, hence we do
+         * not need the anchorLock here.
+         */
+        anchor.maxLsn = lsn;
+        anchor.currentLsn = nextLsn;
+        publishedLsn = packLsn(nextLsn);
+    }
+
+    /**
+     * Packs an Lsn into a long, preserving the ordering of Lsns.
+     */
+    static long packLsn(Lsn lsn) {
+        return ((long) lsn.getIndex() << 32)
+                | (lsn.getOffset() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Creates a new log buffer, reusing the memory of a previously released
+     * buffer if possible. Must be called with {@link #bufferLock} held.
+     * 
+     * @param startLsn Lsn of the first log record in the buffer
+     * @param prevLsn Lsn of the log record preceding startLsn
+     */
+    private LogBuffer newLogBuffer(Lsn startLsn, Lsn prevLsn) {
+        ByteBuffer memory = spareLogBuffers.poll();
+        if (memory == null) {
+            memory = ByteBuffer.allocateDirect(logBufferSize);
+        }
+        return new LogBuffer(memory, startLsn, prevLsn);
+    }
+
+    /**
+     * Retains the memory of a log buffer that is no longer in use, so that it
+     * can be reused. Must be called with {@link #bufferLock} held.
+     */
+    private void releaseLogBuffer(LogBuffer buf) {
+        if (spareLogBuffers.size() <= maxBuffers) {
+            spareLogBuffers.add(buf.buffer);
+        }
+    }
+
+    /**
+     * Sets up the initial log buffer. Must be called after the end of the log
+     * has been located.
+     */
+    private void initLogBuffers() {
+        bufferLock.lock();
+        try {
+            logBuffers.clear();
+            currentBuffer = newLogBuffer(anchor.currentLsn, anchor.maxLsn);
+            logBuffers.add(currentBuffer);
+            publishedLsn = packLsn(anchor.currentLsn);
+        } finally {
+            bufferLock.unlock();
+        }
     }
 
     /**
@@ -1462,6 +2110,8 @@ public final class LogManagerImpl implements LogManager {
      * @see ArchiveRequestHandler
      */
     private void submitArchiveRequest(ArchiveRequest req) {
+        statistics.recordArchiveLag(archiveLag.incrementAndGet(),
+                anchor.logFileSize);
         archiveService.submit(new ArchiveRequestHandler(this, req));
     }
 
@@ -1558,13 +2208,18 @@ public final class LogManagerImpl implements LogManager {
             } finally {
                 anchorLock.unlock();
             }
+            /*
+             * The new header must be durable before the log anchor records
+             * the log file as current, otherwise the log file would fail
+             * validation at restart.
+             */
+            resetLogFiles(next_log_file);
             updateLogAnchors(bb);
         } finally {
             if (anchorWriteLock.isHeldByCurrentThread()) {
                 anchorWriteLock.unlock();
             }
         }
-        resetLogFiles(anchor.currentLogFile);
     }
 
     /**
@@ -1595,8 +2250,7 @@ public final class LogManagerImpl implements LogManager {
 
         int f = anchor.currentLogFile;
         for (int g = 0; g < anchor.n_LogGroups; g++) {
-            files[g][f].write(req.offset, req.buffer.buffer, req.startPosition,
-                    req.length);
+            files[g][f].write(req.offset, req.getBuffers());
         }
     }
 
@@ -1620,10 +2274,12 @@ public final class LogManagerImpl implements LogManager {
     /**
      * Handles log flush requests. The process starts with the oldest log
      * buffer, and then moves progressively forward until the stop condition is
-     * satisfied. To make log writes efficient, the log records in a buffer are
-     * examined and grouped by log files. A single flush request per file is
-     * created. The writes are then handed over to {@link #doLogWrite}. The
-     * grouping does not span log buffers.
+     * satisfied. To make log writes efficient, the log records are examined and
+     * grouped by log files. A single flush request per file is created, which
+     * may span several log buffers, as consecutive buffers hold adjacent
+     * regions of the log file. The writes are then handed over to
+     * {@link #doLogWrite}, which writes out all the buffers of a request in a
+     * single gathering write.
      * <p>
      * If the log buffer being processed is not the current one, then it is
      * freed after all records contained in it have been written out.
@@ -1645,118 +2301,130 @@ public final class LogManagerImpl implements LogManager {
     private void handleFlushRequest_(FlushRequest req) {
 
         LinkedList<LogWriteRequest> iorequests = new LinkedList<LogWriteRequest>();
-        boolean done = false;
+        LinkedList<LogBuffer> flushedBuffers = new LinkedList<LogBuffer>();
         int totalFlushCount = 0;
+        Lsn durableLsn = null;
 
-        while (!done) {
-
-            int flushCount = 0;
-            boolean deleteBuffer = false;
-            LogBuffer buf = null;
-            Lsn durableLsn = null;
-            LogWriteRequest currentRequest = null;
-
-            bufferLock.lock();
+        bufferLock.lock();
+        try {
+            anchorLock.lock();
             try {
-                anchorLock.lock();
-                try {
-                    // Get the oldest log buffer
-                    buf = logBuffers.getFirst();
+                LogWriteRequest currentRequest = null;
+                // Start with the oldest log buffer
+                for (LogBuffer buf : logBuffers) {
                     if (logger.isDebugEnabled()) {
-                        logger.debug(getClass(),
-                                "handleFlushRequest_",
+                        logger.debug(getClass(), "handleFlushRequest_",
                                 "SIMPLEDBM-DEBUG: Flushing Log Buffer " + buf);
                     }
                     // Did we flush all available records?
                     boolean flushedAllRecs = true;
-                    for (LogRecordBuffer rec : buf.records.values()) {
-                        if (rec.getLsn().compareTo(anchor.durableLsn) <= 0) {
-                            // Log record is already on disk
-                            // System.err.println("SKIPPING ALREADY FLUSHED LSN=" + rec.getLsn());
-                            continue;
-                        }
-                        if (req.upto != null
-                                && rec.getLsn().compareTo(req.upto) > 0) {
-                            // System.err.println("BREAKING FLUSH AS REACHED TARGET LSN=" + req.upto);
+                    /*
+                     * Must be determined before the record count is obtained,
+                     * so that a log record published in between is not lost
+                     * when the buffer is deleted.
+                     */
+                    boolean fullyPublished = buf != currentBuffer
+                            && buf.isFullyPublished();
+                    int count = buf.getRecordCount();
+                    // Skip log records that are already on disk
+                    int first = buf.findNext(anchor.durableLsn, count);
+                    int last = count;
+                    if (req.upto != null) {
+                        last = buf.findNext(req.upto, count);
+                        if (last < count) {
                             // we haven't finished with the buffer yet!!
                             flushedAllRecs = false;
-                            done = true;
-                            break;
                         }
-                        // System.err.println("FLUSHING LSN=" + rec.getLsn());
+                    }
+                    if (first < last) {
+                        int offset = buf.getRecordOffset(first);
+                        int lastLength = buf.getRecordLength(last - 1);
+                        int length = buf.getRecordOffset(last - 1) + lastLength
+                                - offset;
                         if (currentRequest == null
-                                || currentRequest.logIndex != rec.getLsn()
-                                        .getIndex()) {
+                                || currentRequest.logIndex != buf.logIndex
+                                || currentRequest.offset
+                                        + currentRequest.length != offset) {
                             // Either this is the first log record or the log
                             // file has changed
-                            currentRequest = createFlushIORequest(buf, rec);
+                            currentRequest = new LogWriteRequest(buf.logIndex,
+                                    offset);
                             iorequests.add(currentRequest);
-                        } else {
-                            // Same log file
-                            currentRequest.length += rec.getLength();
-                            if (rec.getDataLength() == 0) {
-                                // This is an EOF record, so this log is now
-                                // full
-                                currentRequest.logfull = true;
-                            }
                         }
-                        durableLsn = rec.getLsn();
-                        flushCount++;
-                    }
-                    if (flushedAllRecs) {
-                        if (buf != currentBuffer) {
-                            // This buffer can be deleted after we are done with it.
-                            deleteBuffer = true;
+                        // Log records in consecutive buffers are written out
+                        // together
+                        currentRequest.add(buf.getRegion(offset, length));
+                        if (lastLength == EOF_LOGREC_SIZE) {
+                            // This is an EOF record, so this log is now full
+                            currentRequest.logfull = true;
                         }
+                        totalFlushCount += last - first;
+                        durableLsn = buf.getRecordLsn(last - 1);
                     }
-                    if (buf == currentBuffer) {
-                        // we have no more buffers to flush
-                        done = true;
+                    if (!flushedAllRecs || !fullyPublished) {
+                        /*
+                         * Either we have reached the target Lsn, or this is the
+                         * current buffer, or some log records in this buffer
+                         * are still being copied; as records are published in
+                         * Lsn order, there is nothing more to flush.
+                         */
+                        break;
                     }
-                } finally {
-                    anchorLock.unlock();
+                    // This buffer can be deleted after we are done with it.
+                    flushedBuffers.add(buf);
                 }
             } finally {
-                bufferLock.unlock();
+                anchorLock.unlock();
             }
+        } finally {
+            bufferLock.unlock();
+        }
 
-            if (flushCount > 0 || deleteBuffer) {
+        // Perform the flush actions
+        for (LogWriteRequest ioreq : iorequests) {
+            doLogWrite(ioreq);
+        }
 
-                if (flushCount > 0) {
-                    totalFlushCount += flushCount;
+        if (req.force && totalFlushCount > 0) {
+            /*
+             * Force the log file once for the whole flush. Note that earlier
+             * log files would have been forced during the log switch. This
+             * must be done before the new durable Lsn is published, else
+             * a group commit requester could find its Lsn durable and
+             * return before the force.
+             */
+            for (int g = 0; g < anchor.n_LogGroups; g++) {
+                files[g][anchor.currentLogFile].flush();
+            }
+        }
 
-                    // Perform the flush actions
-                    for (LogWriteRequest ioreq : iorequests) {
-                        doLogWrite(ioreq);
+        if (durableLsn != null || !flushedBuffers.isEmpty()) {
+            bufferLock.lock();
+            try {
+                if (durableLsn != null) {
+                    anchorLock.lock();
+                    try {
+                        anchor.durableCurrentLsn = durableLsn;
+                        anchor.durableLsn = durableLsn;
+                    } finally {
+                        anchorLock.unlock();
                     }
                 }
-
-                bufferLock.lock();
-                try {
-                    if (durableLsn != null) {
-                        anchorLock.lock();
-                        try {
-                            anchor.durableCurrentLsn = durableLsn;
-                            anchor.durableLsn = durableLsn;
-                        } finally {
-                            anchorLock.unlock();
-                        }
-                    }
-                    if (deleteBuffer) {
-                        // assert buf.records.getLast().getLsn().compareTo(anchor.durableLsn) <= 0;
-                        assert buf.records.lastKey().compareTo(
-                                anchor.durableLsn) <= 0;
+                if (!flushedBuffers.isEmpty()) {
+                    for (LogBuffer buf : flushedBuffers) {
+                        assert buf.getRecordCount() == 0
+                                || buf.getRecordLsn(buf.getRecordCount() - 1)
+                                        .compareTo(anchor.durableLsn) <= 0;
                         logBuffers.remove(buf);
-                        // Inform inserters that they can proceed to acquire new
-                        // buffer
-                        buffersAvailable.signalAll();
+                        releaseLogBuffer(buf);
                     }
-                } finally {
-                    bufferLock.unlock();
+                    // Inform inserters that they can proceed to acquire new
+                    // buffer
+                    buffersAvailable.signalAll();
                 }
+            } finally {
+                bufferLock.unlock();
             }
-
-            iorequests.clear();
         }
 
         if (totalFlushCount > 0 || anchorDirty) {
@@ -1792,61 +2460,80 @@ public final class LogManagerImpl implements LogManager {
     }
 
     /**
-     * Creates a new flush request, the start position of the request is set to
-     * the start position of the log record.
+     * Returns the name of the archive log file for the specified log index.
      * 
-     * @param buf
-     * @param rec
+     * @param logIndex Log index of the archived log file
+     * @param compressed Whether the name of a compressed archive log file is
+     *            required
      */
-    private LogWriteRequest createFlushIORequest(LogBuffer buf,
-            LogRecordBuffer rec) {
-        LogWriteRequest currentRequest = new LogWriteRequest();
-        currentRequest.buffer = buf;
-        currentRequest.length = rec.getLength();
-        currentRequest.startPosition = rec.getPosition();
-        currentRequest.logIndex = rec.getLsn().getIndex();
-        currentRequest.offset = rec.getLsn().getOffset();
-        if (rec.getDataLength() == 0) {
-            // This is an EOF record, so this log is now full
-            currentRequest.logfull = true;
-        }
-        return currentRequest;
+    final String getArchivedLogName(int logIndex, boolean compressed) {
+        return anchor.archivePath.toString() + "/" + logIndex
+                + (compressed ? COMPRESSED_ARCHIVE_SUFFIX : ARCHIVE_SUFFIX);
     }
 
     /**
      * Archives a specified log file, by copying it to a new archive log file.
      * The archive log file is named in a way that allows it to be located by
-     * the logIndex. The archive file is created in the archive path.
+     * the logIndex. The archive file is created in the archive path. The log
+     * file is read in large sequential chunks, which are compressed if
+     * archive compression is enabled.
+     * <p>
+     * Several log files may be archived concurrently; this is safe because a
+     * full log file is not reused until its archive request completes.
      * 
-     * @param f
+     * @param request
      */
-    private void archiveLogFile(int f) {
-        String name = null;
-        anchorLock.lock();
-        try {
-            name = anchor.archivePath.toString() + "/" + anchor.logIndexes[f]
-                    + ".log";
-        } finally {
-            anchorLock.unlock();
+    private void archiveLogFile(ArchiveRequest request) {
+        String name = getArchivedLogName(request.logIndex, archiveCompress);
+        /*
+         * Remove any stale archive of the same log index left behind by a
+         * previous Log, in the other format, as it would take precedence.
+         */
+        String otherName = getArchivedLogName(request.logIndex,
+                !archiveCompress);
+        if (storageFactory.exists(otherName)) {
+            storageFactory.delete(otherName);
         }
         StorageContainer archive = null;
+        Deflater deflater = null;
         try {
             archive = storageFactory.create(name);
-            byte buf[] = new byte[8192];
+            byte buf[] = new byte[Math.min(anchor.logFileSize,
+                    ARCHIVE_BUFFER_SIZE)];
+            byte out[] = null;
+            if (archiveCompress) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                out = new byte[buf.length];
+            }
+            StorageContainer file = files[0][request.fileno];
             long position = 0;
-            int n = files[0][f].read(position, buf, 0, buf.length);
+            long archivePosition = 0;
+            int n = file.read(position, buf, 0, buf.length);
             while (n > 0) {
-                archive.write(position, buf, 0, n);
+                if (deflater != null) {
+                    deflater.setInput(buf, 0, n);
+                    archivePosition = writeCompressed(deflater, archive,
+                            archivePosition, out, false);
+                } else {
+                    archive.write(position, buf, 0, n);
+                }
                 position += n;
-                n = files[0][f].read(position, buf, 0, buf.length);
+                n = file.read(position, buf, 0, buf.length);
             }
             if (position != anchor.logFileSize) {
                 exceptionHandler.errorThrow(getClass(),
                         "archiveLogFile", new LogException(new MessageInstance(
                                 m_EW0019)));
             }
+            if (deflater != null) {
+                deflater.finish();
+                writeCompressed(deflater, archive, archivePosition, out, true);
+            }
             archive.flush();
         } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
             if (archive != null) {
                 archive.close();
             }
@@ -1855,49 +2542,68 @@ public final class LogManagerImpl implements LogManager {
     }
 
     /**
-     * Process the next archive log file request, ensuring that only one archive
-     * can run at any time. All of the real work is done in
-     * {@link #handleNextArchiveRequest_}.
+     * Writes out the data compressed by the deflater until it needs more
+     * input, or if finish is set, until all the compressed data is written.
+     * 
+     * @return The position in the archive after the compressed data
+     */
+    private static long writeCompressed(Deflater deflater,
+            StorageContainer archive, long position, byte[] out, boolean finish) {
+        while (finish ? !deflater.finished() : !deflater.needsInput()) {
+            int n = deflater.deflate(out);
+            if (n > 0) {
+                archive.write(position, out, 0, n);
+                position += n;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Process an archive log file request. The log file is copied to the
+     * archive first; this may happen concurrently for several log files.
+     * Archiving is completed in log index order, so that the log anchor only
+     * ever marks a contiguous range of log files as archived. All of the
+     * completion work is done in {@link #handleNextArchiveRequest_}.
      * 
      * @see #handleNextArchiveRequest_(ArchiveRequest)
      */
     void handleNextArchiveRequest(ArchiveRequest request) {
+        archiveLogFile(request);
         archiveLock.lock();
         try {
-            if (lastArchivedFile == -1) {
-                lastArchivedFile = request.logIndex;
-            } else {
-                if (request.logIndex != lastArchivedFile + 1) {
-                    this.errored = true;
-                    exceptionHandler.errorThrow(getClass(),
-                            "handleNextArchiveRequest", new LogException(
-                                    new MessageInstance(m_EW0020,
-                                            lastArchivedFile + 1,
-                                            request.logIndex)));
-                }
-                lastArchivedFile = request.logIndex;
+            if (request.logIndex <= anchor.archivedLogIndex
+                    || copiedArchiveRequests.containsKey(request.logIndex)) {
+                this.errored = true;
+                exceptionHandler.errorThrow(getClass(),
+                        "handleNextArchiveRequest", new LogException(
+                                new MessageInstance(m_EW0020,
+                                        anchor.archivedLogIndex + 1,
+                                        request.logIndex)));
+            }
+            copiedArchiveRequests.put(request.logIndex, request);
+            ArchiveRequest next = copiedArchiveRequests
+                    .remove(anchor.archivedLogIndex + 1);
+            while (next != null) {
+                handleNextArchiveRequest_(next);
+                next = copiedArchiveRequests
+                        .remove(anchor.archivedLogIndex + 1);
             }
-            handleNextArchiveRequest_(request);
         } finally {
             archiveLock.unlock();
         }
     }
 
     /**
-     * Handles an Archive Log file request. The specified log file is archived,
-     * and its status updated in the control file. Note the use of
-     * {@link #readLocks} to prevent a reader from conflicting with the change
-     * in the log file status.
-     * <p>
-     * After archiving the log file, the control file is updated.
+     * Completes an Archive Log file request once the specified log file has
+     * been archived, by updating its status in the control file. Note the use
+     * of {@link #readLocks} to prevent a reader from conflicting with the
+     * change in the log file status.
      * 
      * @param request
      */
     private void handleNextArchiveRequest_(ArchiveRequest request) {
 
-        // System.err.println(Thread.currentThread().getName() + ": handleNextArchiveRequest_: Archiving log index " + request.logIndex + " file " + request.fileno);
-        archiveLogFile(request.fileno);
-
         ByteBuffer bb = null;
 
         try {
@@ -1937,6 +2643,9 @@ public final class LogManagerImpl implements LogManager {
             if (anchorWriteLock.isHeldByCurrentThread())
                 anchorWriteLock.unlock();
         }
+        statistics.archivedFiles.increment();
+        statistics.recordArchiveLag(archiveLag.decrementAndGet(),
+                anchor.logFileSize);
         /*
          * Inform the log flush thread that a log file is now available.
          */
@@ -1986,7 +2695,7 @@ public final class LogManagerImpl implements LogManager {
         return doRead(lsn);
     }
 
-    private byte[] readLogRecordData(StorageContainer container, Lsn lsn) {
+    private byte[] readLogRecordData(LogFileSource container, Lsn lsn) {
         long position = lsn.getOffset();
         byte[] lbytes = new byte[Integer.SIZE / Byte.SIZE];
         int n = container.read(position, lbytes, 0, lbytes.length);
@@ -2037,107 +2746,258 @@ public final class LogManagerImpl implements LogManager {
         bufferLock.lock();
         try {
             for (LogBuffer buf : logBuffers) {
-                LogRecordBuffer rec = buf.find(lsn);
-                if (rec != null) {
-                    ByteBuffer bb = ByteBuffer.wrap(buf.buffer, rec
-                            .getPosition(), rec.getLength());
-                    return doRead(lsn, bb);
+                int slot = buf.find(lsn);
+                if (slot >= 0) {
+                    byte[] bytes = new byte[buf.getRecordLength(slot)];
+                    buf.getRegion(buf.getRecordOffset(slot), bytes.length)
+                            .get(bytes);
+                    return doRead(lsn, ByteBuffer.wrap(bytes));
                 }
             }
         } finally {
             bufferLock.unlock();
         }
 
+        /*
+         * Next check the cache of flushed log blocks; only records that are
+         * durable can be found there.
+         */
+        if (readCache != null && lsn.compareTo(getDurableLsn()) <= 0) {
+            LogRecordImpl logrec = readFromCache(lsn);
+            if (logrec != null) {
+                return logrec;
+            }
+        }
+
         /*
          * LogRecord is not in the buffers, it could be in the current log files
          * or in archived log files.
          */
+        LogFileReadHandle handle = acquireLogFileForRead(lsn);
+        try {
+            byte[] bytes = readLogRecordData(handle.file, lsn);
+            ByteBuffer bb = ByteBuffer.wrap(bytes);
+            return doRead(lsn, bb);
+        } finally {
+            releaseLogFileForRead(handle);
+        }
+    }
+
+    /**
+     * Reads a block of bytes from the log file containing the specified Lsn,
+     * starting at the Lsn. Handles the situation where the log file has been
+     * archived.
+     * 
+     * @param lsn Lsn where the read must start
+     * @param data Array to read the data into
+     * @param length Number of bytes to read
+     * @return Number of bytes read
+     * @see #acquireLogFileForRead(Lsn)
+     */
+    final int readLogFile(Lsn lsn, byte[] data, int length) {
+        LogFileReadHandle handle = acquireLogFileForRead(lsn);
+        try {
+            return handle.file.read(lsn.getOffset(), data, 0, length);
+        } finally {
+            releaseLogFileForRead(handle);
+        }
+    }
+
+    /**
+     * Locates the log file that contains the specified Lsn, which may be one
+     * of the current log files or an archived log file. A current log file is
+     * locked to ensure that the archive thread cannot change the log file
+     * status while it is being accessed by the reader; an archived log file is
+     * opened. The caller must call
+     * {@link #releaseLogFileForRead(LogFileReadHandle)} when done.
+     * 
+     * @param lsn Lsn of the data to be read
+     */
+    private LogFileReadHandle acquireLogFileForRead(Lsn lsn) {
         while (true) {
-            boolean archived = false;
-            StorageContainer container = null;
-            boolean readlocked = false;
             int fileno = -1;
 
+            anchorLock.lock();
             try {
-                anchorLock.lock();
-                try {
-                    if (anchor.archivedLogIndex > 0
-                            && lsn.getIndex() <= anchor.archivedLogIndex) {
-                        /*
-                         * The LogRecord is in archived log files.
-                         */
-                        archived = true;
-                    } else {
-                        /*
-                         * The LogRecord is in one of the current log files.
-                         */
-                        fileno = -1;
-                        for (int i = 0; i < anchor.n_LogFiles; i++) {
-                            if (lsn.getIndex() == anchor.logIndexes[i]) {
-                                fileno = i;
-                            }
-                        }
-                        if (fileno == -1) {
-                            exceptionHandler
-                                    .errorThrow(getClass(), "doRead",
-                                            new LogException(
-                                                    new MessageInstance(
-                                                            m_EW0022, lsn)));
-                        }
-                        /*
-                         * Try to obtain a read lock on the file without
-                         * waiting, because the order of locking here is
-                         * opposite to that in handleNextArchiveRequest_()
-                         */
-                        if (readLocks[fileno].tryLock()) {
-                            container = files[0][fileno];
-                            readlocked = true;
-                        } else {
-                            /*
-                             * Log file is being archived, and we could not
-                             * obtain a lock on the file, so we need to retry.
-                             */
-                            continue;
+                if (anchor.archivedLogIndex > 0
+                        && lsn.getIndex() <= anchor.archivedLogIndex) {
+                    /*
+                     * The LogRecord is in archived log files.
+                     */
+                } else {
+                    /*
+                     * The LogRecord is in one of the current log files.
+                     */
+                    for (int i = 0; i < anchor.n_LogFiles; i++) {
+                        if (lsn.getIndex() == anchor.logIndexes[i]) {
+                            fileno = i;
                         }
                     }
-                } finally {
-                    anchorLock.unlock();
-                }
-
-                if (archived) {
-                    String name = anchor.archivePath.toString() + "/"
-                            + lsn.getIndex() + ".log";
+                    if (fileno == -1) {
+                        exceptionHandler.errorThrow(getClass(), "doRead",
+                                new LogException(new MessageInstance(
+                                        m_EW0022, lsn)));
+                    }
                     /*
-                     * TODO: We need to cache files and avoid opening and
-                     * closing them repeatedly.
+                     * Try to obtain a read lock on the file without waiting,
+                     * because the order of locking here is opposite to that in
+                     * handleNextArchiveRequest_()
                      */
-                    container = storageFactory.open(name);
-                }
-                byte[] bytes = readLogRecordData(container, lsn);
-                ByteBuffer bb = ByteBuffer.wrap(bytes);
-                return doRead(lsn, bb);
-            } finally {
-                if (!archived) {
+                    if (readLocks[fileno].tryLock()) {
+                        return new LogFileReadHandle(new ContainerLogFile(
+                                files[0][fileno]), fileno);
+                    }
                     /*
-                     * If we obtained a read lock then we need to release the
-                     * lock
+                     * Log file is being archived, and we could not obtain a
+                     * lock on the file, so we need to retry.
                      */
-                    if (readlocked) {
-                        assert readLocks[fileno].isHeldByCurrentThread();
-                        readLocks[fileno].unlock();
-                    }
-                } else {
-                    if (container != null) {
-                        container.close();
+                    continue;
+                }
+            } finally {
+                anchorLock.unlock();
+            }
+
+            String name = getArchivedLogName(lsn.getIndex(), true);
+            if (storageFactory.exists(name)) {
+                return new LogFileReadHandle(inflateArchivedLogFile(lsn
+                        .getIndex(), name), -1);
+            }
+            name = getArchivedLogName(lsn.getIndex(), false);
+            /*
+             * TODO: We need to cache files and avoid opening and closing them
+             * repeatedly.
+             */
+            return new LogFileReadHandle(new ContainerLogFile(storageFactory
+                    .open(name)), -1);
+        }
+    }
+
+    /**
+     * Decompresses an archived log file into memory. The most recently
+     * decompressed log file is retained for subsequent reads.
+     * 
+     * @param logIndex Log index of the archived log file
+     * @param name Name of the compressed archive log file
+     */
+    private InflatedLogFile inflateArchivedLogFile(int logIndex, String name) {
+        InflatedLogFile inflated = lastInflatedLogFile;
+        if (inflated != null && inflated.logIndex == logIndex) {
+            return inflated;
+        }
+        byte[] data = new byte[anchor.logFileSize];
+        int length = 0;
+        StorageContainer archive = storageFactory.open(name);
+        Inflater inflater = new Inflater();
+        try {
+            byte[] in = new byte[Math.min(anchor.logFileSize,
+                    ARCHIVE_BUFFER_SIZE)];
+            long position = 0;
+            while (!inflater.finished() && length < data.length) {
+                if (inflater.needsInput()) {
+                    int n = archive.read(position, in, 0, in.length);
+                    if (n <= 0) {
+                        break;
                     }
+                    position += n;
+                    inflater.setInput(in, 0, n);
                 }
+                length += inflater.inflate(data, length, data.length - length);
+            }
+        } catch (DataFormatException e) {
+            exceptionHandler.errorThrow(getClass(), "inflateArchivedLogFile",
+                    new LogException(new MessageInstance(m_EW0040, name), e));
+        } finally {
+            inflater.end();
+            archive.close();
+        }
+        if (length != data.length) {
+            exceptionHandler.errorThrow(getClass(), "inflateArchivedLogFile",
+                    new LogException(new MessageInstance(m_EW0040, name)));
+        }
+        inflated = new InflatedLogFile(name, logIndex, data);
+        lastInflatedLogFile = inflated;
+        return inflated;
+    }
+
+    /**
+     * Releases a log file obtained via {@link #acquireLogFileForRead(Lsn)}.
+     */
+    private void releaseLogFileForRead(LogFileReadHandle handle) {
+        if (handle.fileno != -1) {
+            assert readLocks[handle.fileno].isHeldByCurrentThread();
+            readLocks[handle.fileno].unlock();
+        } else {
+            handle.file.close();
+        }
+    }
+
+    /**
+     * Reads a block of the log, starting at the specified Lsn. Only the log
+     * records that were durable when the block was read may be parsed from
+     * the block.
+     * 
+     * @param lsn Lsn where the block starts
+     * @param data Array to read the block into
+     * @return The block, or null if nothing could be read
+     * @see LogForwardReaderImpl
+     */
+    final LogBlock readLogBlock(Lsn lsn, byte[] data) {
+        Lsn durableLsn = getDurableLsn();
+        int length = Math.min(data.length, anchor.logFileSize
+                - lsn.getOffset());
+        if (length <= 0 || lsn.compareTo(durableLsn) > 0) {
+            return null;
+        }
+        int n = readLogFile(lsn, data, length);
+        if (n <= 0) {
+            return null;
+        }
+        statistics.readAheadBlocks.increment();
+        return new LogBlock(this, lsn, data, n, durableLsn);
+    }
+
+    /**
+     * Reads the specified durable log record from the cache of flushed log
+     * blocks, loading the block containing the record into the cache if
+     * necessary.
+     * 
+     * @param lsn Lsn of the LogRecord to be read
+     * @return The log record, or null if it straddles the end of the block
+     */
+    private LogRecordImpl readFromCache(Lsn lsn) {
+        int blockSize = readCache.blockSize;
+        Lsn start = new Lsn(lsn.getIndex(), lsn.getOffset() / blockSize
+                * blockSize);
+        LogBlock block = readCache.get(start);
+        if (block != null && block.contains(lsn)) {
+            LogRecordImpl logrec = block.read(this, lsn);
+            if (logrec != null) {
+                statistics.readCacheHits.increment();
+                return logrec;
             }
         }
+        statistics.readCacheMisses.increment();
+        if (block == null || !block.contains(lsn)) {
+            /*
+             * The block is not cached, or was cached before the record was
+             * flushed.
+             */
+            Lsn durableLsn = getDurableLsn();
+            byte[] data = new byte[Math.min(blockSize, anchor.logFileSize
+                    - start.getOffset())];
+            int n = readLogFile(start, data, data.length);
+            if (n <= 0) {
+                return null;
+            }
+            block = new LogBlock(start, data, n, durableLsn);
+            readCache.put(block);
+        }
+        return block.read(this, lsn);
     }
 
     final void validateLogFile(int logIndex, String name) {
-        StorageContainer container = null;
-        container = storageFactory.open(name);
+        LogFileSource container = new ContainerLogFile(storageFactory
+                .open(name));
         Lsn lsn = new Lsn(logIndex, FIRST_LSN.getOffset());
         try {
             while (true) {
@@ -2225,6 +3085,13 @@ public final class LogManagerImpl implements LogManager {
 
     /**
      * Default (forward scanning) implementation of a <code>LogReader</code>.
+     * <p>
+     * Durable log records are parsed from large blocks read sequentially from
+     * the log files; while the records in one block are being consumed, the
+     * next block is read in the background. Two block sized buffers are
+     * reused for the duration of the scan. Records that are not yet durable,
+     * and any record that cannot be parsed from a block, are read via
+     * {@link LogManagerImpl#read(Lsn)}.
      * 
      * @author Dibyendu Majumdar
      * @since Jul 6, 2005
@@ -2241,9 +3108,37 @@ public final class LogManagerImpl implements LogManager {
          */
         Lsn nextLsn;
 
+        /**
+         * Size of the blocks read from the log files, 0 if read ahead is
+         * disabled.
+         */
+        final int blockSize;
+
+        /**
+         * The block from which records are currently being parsed.
+         */
+        LogBlock block;
+
+        /**
+         * Buffer not in use by either the current block or the read ahead;
+         * null if there isn't one.
+         */
+        byte[] spare;
+
+        /**
+         * Read ahead of the block that follows the current block.
+         */
+        FutureTask<LogBlock> readAhead;
+
+        /**
+         * Buffer used by the read ahead.
+         */
+        byte[] readAheadData;
+
         public LogForwardReaderImpl(LogManagerImpl log, Lsn startLsn) {
             this.log = log;
             this.nextLsn = startLsn;
+            this.blockSize = Math.min(log.readAheadSize, log.anchor.logFileSize);
         }
 
         public LogRecord getNext() {
@@ -2255,7 +3150,14 @@ public final class LogManagerImpl implements LogManager {
                         || nextLsn.compareTo(maxLsn) > 0) {
                     return null;
                 }
-                rec = log.read(nextLsn);
+                rec = null;
+                if (blockSize > 0
+                        && nextLsn.compareTo(log.getDurableLsn()) <= 0) {
+                    rec = readFromBlock(nextLsn);
+                }
+                if (rec == null) {
+                    rec = log.read(nextLsn);
+                }
                 if (rec.getDataLength() > 0) {
                     nextLsn = log.advanceToNextRecord(nextLsn, rec.getLength());
                     break;
@@ -2269,7 +3171,106 @@ public final class LogManagerImpl implements LogManager {
             return rec;
         }
 
+        /**
+         * Parses the specified log record from the current block, switching
+         * to the next block if necessary.
+         * 
+         * @return The log record, or null if it is not available in a block
+         */
+        private LogRecordImpl readFromBlock(Lsn lsn) {
+            if (block != null && block.contains(lsn)) {
+                return block.read(log, lsn);
+            }
+            LogBlock next = completeReadAhead(lsn);
+            if (next == null) {
+                next = log.readLogBlock(lsn, getBuffer());
+            }
+            if (block != null) {
+                spare = block.data;
+            }
+            block = next;
+            if (block == null || !block.contains(lsn)) {
+                return null;
+            }
+            startReadAhead();
+            return block.read(log, lsn);
+        }
+
+        /**
+         * Waits for the read ahead to complete, returning the block that was
+         * read if it starts at the specified Lsn. Otherwise the buffer used
+         * by the read ahead is made available for reuse.
+         */
+        private LogBlock completeReadAhead(Lsn lsn) {
+            if (readAhead == null) {
+                return null;
+            }
+            LogBlock next = null;
+            try {
+                /*
+                 * If the read ahead has not been started yet, we run it here
+                 * so that we do not depend upon the scheduler to make
+                 * progress.
+                 */
+                readAhead.run();
+                next = readAhead.get();
+            } catch (InterruptedException e) {
+                log.exceptionHandler.errorThrow(getClass(),
+                        "completeReadAhead", new LogException(
+                                new MessageInstance(m_EW0039, lsn), e));
+            } catch (ExecutionException e) {
+                /*
+                 * The block will be read again synchronously, and any error
+                 * reported then.
+                 */
+            } finally {
+                spare = readAheadData;
+                readAhead = null;
+                readAheadData = null;
+            }
+            if (next != null && !next.start.equals(lsn)) {
+                next = null;
+            }
+            return next;
+        }
+
+        /**
+         * Schedules the read of the block that follows the current block,
+         * provided that the data in it has been flushed.
+         */
+        private void startReadAhead() {
+            final Lsn lsn = block.getNextBlockLsn();
+            if (lsn == null || lsn.compareTo(log.getDurableLsn()) > 0) {
+                return;
+            }
+            final byte[] data = getBuffer();
+            readAheadData = data;
+            readAhead = new FutureTask<LogBlock>(new Callable<LogBlock>() {
+                public LogBlock call() throws Exception {
+                    return log.readLogBlock(lsn, data);
+                }
+            });
+            log.platform.getScheduler().execute(Priority.SERVER_TASK,
+                    readAhead);
+        }
+
+        private byte[] getBuffer() {
+            byte[] data = spare;
+            spare = null;
+            if (data == null) {
+                data = new byte[blockSize];
+            }
+            return data;
+        }
+
         public void close() {
+            if (readAhead != null) {
+                readAhead.cancel(false);
+                readAhead = null;
+                readAheadData = null;
+            }
+            block = null;
+            spare = null;
         }
     }
 
@@ -2379,12 +3380,178 @@ public final class LogManagerImpl implements LogManager {
      * @author Dibyendu Majumdar
      * @since Jul 6, 2005
      */
-    static final class FlushRequest {
+    static final class FlushRequest {
+
+        final Lsn upto;
+
+        /**
+         * If set, the current log file is forced to disk after the log
+         * records have been written.
+         */
+        final boolean force;
+
+        public FlushRequest(Lsn lsn) {
+            this(lsn, false);
+        }
+
+        public FlushRequest(Lsn lsn, boolean force) {
+            this.upto = lsn;
+            this.force = force;
+        }
+    }
+
+    /**
+     * A block of data read from a log file by a forward scanning reader, or
+     * cached for random reads. Only complete log records that were durable at
+     * the time the block was read may be parsed from the block.
+     * 
+     * @see LogForwardReaderImpl
+     * @see LogBlockCache
+     */
+    static final class LogBlock {
+
+        /**
+         * Lsn of the first byte in the block.
+         */
+        final Lsn start;
+
+        final byte[] data;
+
+        /**
+         * Position in data just past the last complete durable log record,
+         * or if the block was not parsed, the number of bytes read.
+         */
+        final int end;
+
+        /**
+         * Set if the block ends with an EOF record.
+         */
+        final boolean eof;
+
+        /**
+         * Lsn of the last durable record at the time the block was read.
+         */
+        final Lsn durableLsn;
+
+        /**
+         * Creates a block that need not start at a log record boundary; log
+         * records that straddle the end of the block cannot be read from it.
+         */
+        LogBlock(Lsn start, byte[] data, int length, Lsn durableLsn) {
+            this.start = start;
+            this.data = data;
+            this.end = length;
+            this.eof = false;
+            this.durableLsn = durableLsn;
+        }
+
+        /**
+         * Creates a block that starts at a log record boundary, and locates
+         * the last complete durable log record in the block.
+         */
+        LogBlock(LogManagerImpl log, Lsn start, byte[] data, int length,
+                Lsn durableLsn) {
+            this.start = start;
+            this.data = data;
+            this.durableLsn = durableLsn;
+            ByteBuffer bb = ByteBuffer.wrap(data, 0, length);
+            int p = 0;
+            boolean eof = false;
+            while (p + TypeSize.INTEGER <= length) {
+                Lsn lsn = new Lsn(start.getIndex(), start.getOffset() + p);
+                if (lsn.compareTo(durableLsn) > 0) {
+                    break;
+                }
+                int reclen = bb.getInt(p);
+                if (reclen < LOGREC_HEADER_SIZE
+                        || reclen > log.getMaxLogRecSize()
+                        || p + reclen > length) {
+                    break;
+                }
+                p += reclen;
+                if (reclen == EOF_LOGREC_SIZE) {
+                    eof = true;
+                    break;
+                }
+            }
+            this.end = p;
+            this.eof = eof;
+        }
+
+        final boolean contains(Lsn lsn) {
+            return lsn.getIndex() == start.getIndex()
+                    && lsn.getOffset() >= start.getOffset()
+                    && lsn.getOffset() < start.getOffset() + end
+                    && lsn.compareTo(durableLsn) <= 0;
+        }
+
+        /**
+         * Parses the log record at the specified Lsn, which must be contained
+         * in this block.
+         * 
+         * @return The log record, or null if the Lsn is not at a record
+         *         boundary within the block
+         */
+        final LogRecordImpl read(LogManagerImpl log, Lsn lsn) {
+            int p = lsn.getOffset() - start.getOffset();
+            if (p + TypeSize.INTEGER > end) {
+                return null;
+            }
+            int reclen = ByteBuffer.wrap(data).getInt(p);
+            if (reclen < LOGREC_HEADER_SIZE || p + reclen > end) {
+                return null;
+            }
+            return log.doRead(lsn, ByteBuffer.wrap(data, p, reclen));
+        }
+
+        /**
+         * Returns the Lsn where the next block should start, or null if no
+         * progress is possible from this block.
+         */
+        final Lsn getNextBlockLsn() {
+            if (eof) {
+                return new Lsn(start.getIndex() + 1, FIRST_LSN.getOffset());
+            }
+            if (end == 0) {
+                return null;
+            }
+            return new Lsn(start.getIndex(), start.getOffset() + end);
+        }
+    }
+
+    /**
+     * A least recently used cache of flushed log blocks. Blocks are aligned
+     * to the block size within each log file, and are keyed by log index and
+     * offset; as log files are never rewritten under the same index, a cached
+     * block only needs to be replaced when it does not cover records flushed
+     * after it was read.
+     */
+    static final class LogBlockCache {
 
-        final Lsn upto;
+        final int blockSize;
 
-        public FlushRequest(Lsn lsn) {
-            this.upto = lsn;
+        final LinkedHashMap<Lsn, LogBlock> blocks;
+
+        LogBlockCache(final int capacity, int blockSize) {
+            this.blockSize = blockSize;
+            this.blocks = new LinkedHashMap<Lsn, LogBlock>(capacity, 0.75f,
+                    true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Lsn, LogBlock> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized LogBlock get(Lsn start) {
+            return blocks.get(start);
+        }
+
+        synchronized void put(LogBlock block) {
+            blocks.put(block.start, block);
         }
     }
 
@@ -2400,11 +3567,6 @@ public final class LogManagerImpl implements LogManager {
          */
         int logIndex;
 
-        /**
-         * Starting position within the LogBuffer for the write.
-         */
-        int startPosition;
-
         /**
          * Number of bytes to be written.
          */
@@ -2416,15 +3578,140 @@ public final class LogManagerImpl implements LogManager {
         long offset;
 
         /**
-         * Buffer that contains the data that is to be written.
+         * Regions of one or more consecutive LogBuffers that contain the data
+         * that is to be written.
          */
-        LogBuffer buffer;
+        final ArrayList<ByteBuffer> regions = new ArrayList<ByteBuffer>();
 
         /**
          * Indicates whether this write would cause the log file to become full.
          * This info can be used to trigger a log archive request.
          */
         boolean logfull;
+
+        LogWriteRequest(int logIndex, long offset) {
+            this.logIndex = logIndex;
+            this.offset = offset;
+        }
+
+        /**
+         * Adds a region of a LogBuffer to the write; the region must follow
+         * on from the previous one in the log file.
+         */
+        void add(ByteBuffer region) {
+            regions.add(region);
+            length += region.remaining();
+        }
+
+        /**
+         * Returns views of the regions to be written; a fresh set of views is
+         * returned each time as writing out a view consumes it.
+         */
+        ByteBuffer[] getBuffers() {
+            ByteBuffer[] buffers = new ByteBuffer[regions.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = regions.get(i).duplicate();
+            }
+            return buffers;
+        }
+    }
+
+    /**
+     * A log file opened for reading by
+     * {@link LogManagerImpl#acquireLogFileForRead(Lsn)}.
+     */
+    static final class LogFileReadHandle {
+
+        final LogFileSource file;
+
+        /**
+         * Index of the current log file that has been read locked, -1 if the
+         * file is an archived log file.
+         */
+        final int fileno;
+
+        LogFileReadHandle(LogFileSource file, int fileno) {
+            this.file = file;
+            this.fileno = fileno;
+        }
+    }
+
+    /**
+     * Read only access to the contents of a log file.
+     */
+    interface LogFileSource {
+
+        /**
+         * Reads upto length bytes from the specified position in the log
+         * file.
+         * 
+         * @return Number of bytes read, or <=0 if no more data available.
+         * @see StorageContainer#read(long, byte[], int, int)
+         */
+        int read(long position, byte[] buffer, int bufferOffset, int length);
+
+        /**
+         * Releases the log file.
+         */
+        void close();
+    }
+
+    /**
+     * A log file held in a StorageContainer.
+     */
+    static final class ContainerLogFile implements LogFileSource {
+
+        final StorageContainer container;
+
+        ContainerLogFile(StorageContainer container) {
+            this.container = container;
+        }
+
+        public int read(long position, byte[] buffer, int bufferOffset,
+                int length) {
+            return container.read(position, buffer, bufferOffset, length);
+        }
+
+        public void close() {
+            container.close();
+        }
+    }
+
+    /**
+     * A read only, in memory image of a decompressed archive log file.
+     * 
+     * @see LogManagerImpl#inflateArchivedLogFile(int, String)
+     */
+    static final class InflatedLogFile implements LogFileSource {
+
+        final String name;
+
+        final int logIndex;
+
+        final byte[] data;
+
+        InflatedLogFile(String name, int logIndex, byte[] data) {
+            this.name = name;
+            this.logIndex = logIndex;
+            this.data = data;
+        }
+
+        public int read(long position, byte[] buffer, int bufferOffset,
+                int length) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = (int) Math.min(length, data.length - position);
+            System.arraycopy(data, (int) position, buffer, bufferOffset, n);
+            return n;
+        }
+
+        /**
+         * The image is retained for later reads, so there is nothing to
+         * release.
+         */
+        public void close() {
+        }
     }
 
     /**
@@ -2896,199 +4183,386 @@ public final class LogManagerImpl implements LogManager {
      * time, each LogRecord is stored in a fully serialized format, ready to be
      * transferred to disk without further conversion. This is done to allow the
      * log writes to be performed in large chunks. To allow easy identification
-     * of the LogRecords contained within a buffer, a separate list of pointers
-     * (LogRecordBuffers) is maintained.
+     * of the LogRecords contained within a buffer, the offset and length of
+     * each LogRecord is maintained in a pair of parallel arrays, ordered by
+     * Lsn, so that LogRecords can be located using binary search.
+     * <p>
+     * All the LogRecords in a LogBuffer belong to the same log file, and are
+     * laid out in the buffer exactly as they will be laid out in the log file,
+     * starting at {@link #startOffset}. This allows inserters to reserve space
+     * in the buffer, and hence the Lsn of the new LogRecord, by atomically
+     * updating {@link #reservation}, without acquiring any locks. Once the
+     * space is reserved, the LogRecord is copied into the buffer in parallel
+     * with other inserters, and then published in Lsn order.
      * 
      * @author Dibyendu Majumdar
+     * @see LogManagerImpl#insert(byte[], int)
      */
     static final class LogBuffer {
 
         static AtomicInteger nextID = new AtomicInteger(0);
 
         /**
-         * The buffer contents.
+         * Returned by {@link #reserve(int, int)} when there isn't enough space
+         * for the LogRecord.
+         */
+        static final long NO_SPACE = -1L;
+
+        /**
+         * Value of the last record offset in {@link #reservation} when no
+         * LogRecord has been reserved yet.
+         */
+        static final int NO_RECORD = -1;
+
+        /**
+         * Bit set in {@link #reservation} when the buffer is sealed.
+         */
+        static final long SEALED = 0x80000000L;
+
+        /**
+         * Initial number of entries in the record arrays; the arrays are
+         * doubled in size when they fill up.
+         */
+        static final int INITIAL_RECORD_SLOTS = 64;
+
+        /**
+         * The buffer contents. This is a direct buffer so that log writes do
+         * not need an intermediate copy. The position and limit of this buffer
+         * are never changed; all access is through views obtained via
+         * {@link #getRegion(int, int)}.
+         */
+        final ByteBuffer buffer;
+
+        /**
+         * The log file to which all the LogRecords in this buffer belong.
          */
-        final byte[] buffer;
+        final int logIndex;
 
         /**
-         * Number of bytes remaining in the buffer.
+         * Offset within the log file that maps to the start of the buffer.
          */
-        volatile int remaining;
+        final int startOffset;
 
         /**
-         * Current position within the buffer.
+         * Lsn of the LogRecord that precedes the first LogRecord in this
+         * buffer.
          */
-        volatile int position;
+        final Lsn startPrevLsn;
 
         /**
-         * List of records that are mapped to this buffer.
+         * Tracks the space reserved in the buffer. The high order 32 bits
+         * contain the offset of the last reserved LogRecord, and the low order
+         * 32 bits the offset where the next LogRecord will go. Once the buffer
+         * is sealed, the {@link #SEALED} bit is set, which causes all further
+         * reservations to fail.
          */
-        final TreeMap<Lsn, LogRecordBuffer> records;
+        final AtomicLong reservation;
+
+        /**
+         * Offset just past the last byte reserved in this buffer, set when the
+         * buffer is sealed. Access protected by
+         * {@link LogManagerImpl#bufferLock}.
+         */
+        int sealedEnd = -1;
+
+        /**
+         * Offset just past the last published LogRecord. Only updated by the
+         * thread that is publishing a LogRecord.
+         */
+        volatile int publishedEnd;
+
+        /**
+         * The LogRecords that have been published in this buffer. A LogRecord
+         * is added only after it has been fully copied into the buffer. The
+         * index is replaced as a whole on each publish, so that readers always
+         * see a count that matches the arrays.
+         */
+        volatile RecordIndex records;
 
         final int id = nextID.incrementAndGet();
 
         /**
-         * Create a LogBuffer of specified size.
+         * Create a LogBuffer using the supplied memory.
          * 
-         * @param size
+         * @param buffer Memory for the buffer
+         * @param startLsn Lsn of the first LogRecord that will go into the
+         *            buffer
+         * @param startPrevLsn Lsn of the LogRecord that precedes startLsn
          */
-        public LogBuffer(int size) {
-            buffer = new byte[size];
-            position = 0;
-            remaining = size;
-            records = new TreeMap<Lsn, LogRecordBuffer>();
+        public LogBuffer(ByteBuffer buffer, Lsn startLsn, Lsn startPrevLsn) {
+            this.buffer = buffer;
+            logIndex = startLsn.getIndex();
+            startOffset = startLsn.getOffset();
+            this.startPrevLsn = startPrevLsn;
+            reservation = new AtomicLong(((long) NO_RECORD << 32)
+                    | startOffset);
+            publishedEnd = startOffset;
+            records = new RecordIndex(new int[INITIAL_RECORD_SLOTS],
+                    new int[INITIAL_RECORD_SLOTS], 0);
         }
 
         /**
          * Returns the number of bytes left in the buffer.
          */
         int getRemaining() {
-            return remaining;
+            int next = (int) (reservation.get() & ~SEALED);
+            return buffer.capacity() - (next - startOffset);
+        }
+
+        /**
+         * Atomically reserves space for a LogRecord of the specified length.
+         * The reservation fails if the buffer is sealed, if the buffer does
+         * not have enough space, or if the LogRecord would go past the
+         * specified end of the log file.
+         * 
+         * @param reclen Length of the LogRecord
+         * @param eofPos Last usable position in the log file
+         * @return The value of {@link #reservation} prior to the update, or
+         *         {@link #NO_SPACE} if the space could not be reserved
+         */
+        long reserve(int reclen, int eofPos) {
+            for (;;) {
+                long r = reservation.get();
+                int next = (int) r;
+                if (next < 0) {
+                    // Sealed
+                    return NO_SPACE;
+                }
+                int end = next + reclen;
+                if (end > eofPos || end - startOffset > buffer.capacity()) {
+                    return NO_SPACE;
+                }
+                if (reservation.compareAndSet(r, ((long) next << 32) | end)) {
+                    return r;
+                }
+            }
+        }
+
+        /**
+         * Seals the buffer so that no more space can be reserved in it. Must
+         * be called with {@link LogManagerImpl#bufferLock} held.
+         * 
+         * @return The value of {@link #reservation} prior to sealing
+         */
+        long seal() {
+            for (;;) {
+                long r = reservation.get();
+                if (reservation.compareAndSet(r, r | SEALED)) {
+                    sealedEnd = (int) r;
+                    return r;
+                }
+            }
+        }
+
+        /**
+         * Returns the Lsn of the LogRecord that will be added to the buffer
+         * given a value of {@link #reservation}.
+         */
+        Lsn getNextLsn(long r) {
+            return new Lsn(logIndex, (int) (r & ~SEALED));
+        }
+
+        /**
+         * Returns the Lsn of the LogRecord that was last reserved given a
+         * value of {@link #reservation}.
+         */
+        Lsn getPrevLsn(long r) {
+            int last = (int) (r >>> 32);
+            if (last == NO_RECORD) {
+                return startPrevLsn;
+            }
+            return new Lsn(logIndex, last);
+        }
+
+        /**
+         * Checks whether all the space reserved in a sealed buffer has been
+         * published. Must be called with {@link LogManagerImpl#bufferLock}
+         * held.
+         */
+        boolean isFullyPublished() {
+            return sealedEnd != -1 && publishedEnd == sealedEnd;
         }
 
         /**
-         * Add a new LogRecord to the buffer. Caller must ensure that there is
-         * enough space to add the record.
+         * Copies a new LogRecord into the space reserved for it. Caller must
+         * ensure that the space has been reserved. The LogRecord is not
+         * visible until it is published.
          * 
          * @param lsn Lsn of the new LogRecord
          * @param b Data contents
          * @param length Length of the data
          * @param prevLsn Lsn of previous LogRecord
          * @see LogManagerImpl#LOGREC_HEADER_SIZE
+         * @see #publish(int, int)
          */
         void insert(Lsn lsn, byte[] b, int length, Lsn prevLsn) {
             int reclen = LogManagerImpl.calculateLogRecordSize(length);
-            assert reclen <= remaining;
-            LogRecordBuffer rec = new LogRecordBuffer(lsn, position, reclen);
-            ByteBuffer bb = ByteBuffer.wrap(buffer, position, reclen);
-            bb.putInt(reclen);
-            lsn.store(bb);
-            prevLsn.store(bb);
+            int position = lsn.getOffset() - startOffset;
+            assert lsn.getIndex() == logIndex;
+            assert position >= 0 && position + reclen <= buffer.capacity();
+            /*
+             * The header is assembled separately so that the checksum can be
+             * calculated without reading back from the direct buffer.
+             */
+            byte[] header = new byte[LOGREC_HEADER_SIZE - TypeSize.LONG];
+            ByteBuffer hb = ByteBuffer.wrap(header);
+            hb.putInt(reclen);
+            lsn.store(hb);
+            prevLsn.store(hb);
+            long checksum = ChecksumCalculator.compute(header, 0,
+                    header.length, b, 0, length);
+            ByteBuffer bb = getRegion(lsn.getOffset(), reclen);
+            bb.put(header);
             bb.put(b, 0, length);
-            long checksum = ChecksumCalculator.compute(buffer, position, reclen
-                    - (Long.SIZE / Byte.SIZE));
             bb.putLong(checksum);
-            position += reclen;
-            remaining -= reclen;
-            records.put(lsn, rec);
         }
 
         /**
-         * Search for a particular log record within this LogBuffer.
+         * Returns a view of the buffer covering the specified range of the log
+         * file. The view has its own position and limit, hence can be used
+         * concurrently with other views.
          * 
-         * @param lsn Lsn of the LogRecord being searched for.
-         * @return LogRecordBuffer for the specified LogRecord if found, else
-         *         null.
+         * @param offset Log file offset where the range starts
+         * @param length Length of the range
          */
-        LogRecordBuffer find(Lsn lsn) {
-            return records.get(lsn);
+        ByteBuffer getRegion(int offset, int length) {
+            ByteBuffer bb = buffer.duplicate();
+            bb.position(offset - startOffset);
+            bb.limit(offset - startOffset + length);
+            return bb;
         }
 
         /**
-         * Determine if the specified Lsn is contained within the LogRecords in
-         * the buffer.
+         * Makes a LogRecord visible to readers and to the log flush. LogRecords
+         * must be published in Lsn order, by one thread at a time.
          * 
-         * @param lsn
-         */
-        int contains(Lsn lsn) {
-            Lsn lsn1 = records.firstKey();
-            if (lsn1 != null) {
-                Lsn lsn2 = records.lastKey();
-                int rc2 = lsn.compareTo(lsn2);
-                if (rc2 > 0) {
-                    return 1;
-                }
-                int rc1 = lsn.compareTo(lsn1);
-                if (rc1 >= 0 && rc2 <= 0) {
-                    return 0;
-                }
-            }
-            return -1;
-        }
-
-        @Override
-        public String toString() {
-            if (records.size() > 0) {
-                Lsn lsn1 = records.firstKey();
-                Lsn lsn2 = records.lastKey();
-                return "LogBuffer(id=" + id + ", firstLsn=" + lsn1
-                        + ", lastLsn=" + lsn2 + ")";
+         * @param offset Offset of the LogRecord within the log file
+         * @param reclen Length of the LogRecord
+         */
+        void publish(int offset, int reclen) {
+            RecordIndex r = records;
+            int n = r.count;
+            int[] offsets = r.offsets;
+            int[] lengths = r.lengths;
+            if (n == offsets.length) {
+                offsets = Arrays.copyOf(offsets, n * 2);
+                lengths = Arrays.copyOf(lengths, n * 2);
             }
-            return "LogBuffer(id=" + id + ")";
+            /*
+             * Entries beyond the count of the current index are not visible
+             * to readers, so they can be filled in place.
+             */
+            offsets[n] = offset;
+            lengths[n] = reclen;
+            records = new RecordIndex(offsets, lengths, n + 1);
+            publishedEnd = offset + reclen;
         }
 
-    }
-
-    /**
-     * LogRecords are initially stored in log buffers, and LogRecordBuffers are
-     * used to maintain information about the position and length of each
-     * LogRecord in the buffer.
-     * 
-     * @author Dibyendu Majumdar
-     */
-    static final class LogRecordBuffer implements Comparable<LogRecordBuffer> {
-
         /**
-         * Position of the log record within the log buffer.
+         * Returns the number of LogRecords published in this buffer.
          */
-        private final int position;
+        int getRecordCount() {
+            return records.count;
+        }
 
         /**
-         * The length of the log record, including the header information.
+         * Returns the log file offset of the LogRecord in the specified slot.
+         * As the index only grows, a slot obtained from an earlier count is
+         * always present.
          */
-        private final int length;
+        int getRecordOffset(int slot) {
+            return records.offsets[slot];
+        }
 
         /**
-         * Lsn of the log record.
+         * Returns the position within the buffer of the LogRecord in the
+         * specified slot.
          */
-        private final Lsn lsn;
-
-        LogRecordBuffer(Lsn lsn, int position, int length) {
-            this.lsn = lsn;
-            this.position = position;
-            this.length = length;
-        }
-
-        public final int getLength() {
-            return length;
+        int getRecordPosition(int slot) {
+            return records.offsets[slot] - startOffset;
         }
 
-        public final Lsn getLsn() {
-            return lsn;
+        /**
+         * Returns the length, including header information, of the LogRecord
+         * in the specified slot.
+         */
+        int getRecordLength(int slot) {
+            return records.lengths[slot];
         }
 
-        public final int getPosition() {
-            return position;
+        /**
+         * Returns the Lsn of the LogRecord in the specified slot.
+         */
+        Lsn getRecordLsn(int slot) {
+            return new Lsn(logIndex, records.offsets[slot]);
         }
 
         /**
-         * Compute that length of the user supplied data content.
+         * Search for a particular log record within this LogBuffer.
+         * 
+         * @param lsn Lsn of the LogRecord being searched for.
+         * @return The slot of the specified LogRecord if found, else -1.
          */
-        public final int getDataLength() {
-            return length - LogManagerImpl.LOGREC_HEADER_SIZE;
+        int find(Lsn lsn) {
+            if (lsn.getIndex() != logIndex || lsn.getOffset() < startOffset
+                    || lsn.getOffset() >= publishedEnd) {
+                return -1;
+            }
+            RecordIndex r = records;
+            int slot = Arrays.binarySearch(r.offsets, 0, r.count, lsn
+                    .getOffset());
+            return slot >= 0 ? slot : -1;
         }
 
-        public int compareTo(LogRecordBuffer o) {
-            return lsn.compareTo(o.lsn);
+        /**
+         * Locates the first LogRecord that follows the specified Lsn.
+         * 
+         * @param lsn The Lsn to search for
+         * @param count Number of LogRecords to search
+         * @return The slot of the first LogRecord with an Lsn greater than the
+         *         specified Lsn, or count if there isn't one
+         */
+        int findNext(Lsn lsn, int count) {
+            if (lsn.getIndex() < logIndex) {
+                return 0;
+            } else if (lsn.getIndex() > logIndex) {
+                return count;
+            }
+            int slot = Arrays.binarySearch(records.offsets, 0, count, lsn
+                    .getOffset());
+            return slot >= 0 ? slot + 1 : -(slot + 1);
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj.getClass() != getClass()) {
-                return false;
+        public String toString() {
+            int n = records.count;
+            if (n > 0) {
+                return "LogBuffer(id=" + id + ", firstLsn=" + getRecordLsn(0)
+                        + ", lastLsn=" + getRecordLsn(n - 1) + ")";
             }
-            LogRecordBuffer other = (LogRecordBuffer) obj;
-            return compareTo(other) == 0;
+            return "LogBuffer(id=" + id + ")";
         }
 
-        @Override
-        public int hashCode() {
-            return lsn.hashCode();
-        }
+    }
+
+    /**
+     * The offsets and lengths of the LogRecords published in a LogBuffer, and
+     * their number. Only the first count entries of the arrays belong to the
+     * index.
+     */
+    static final class RecordIndex {
 
+        final int[] offsets;
+
+        final int[] lengths;
+
+        final int count;
+
+        RecordIndex(int[] offsets, int[] lengths, int count) {
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.count = count;
+        }
     }
 
     static final class ArchiveCleaner implements Runnable {
@@ -3106,8 +4580,12 @@ public final class LogManagerImpl implements LogManager {
             Lsn oldestInterestingLsn = logManager.getOldestInterestingLsn();
             int archivedLogIndex = oldestInterestingLsn.getIndex() - 1;
             while (archivedLogIndex > 0) {
-                String name = logManager.anchor.archivePath.toString() + "/"
-                        + archivedLogIndex + ".log";
+                String name = logManager.getArchivedLogName(archivedLogIndex,
+                        false);
+                if (!logManager.storageFactory.exists(name)) {
+                    name = logManager.getArchivedLogName(archivedLogIndex,
+                            true);
+                }
                 try {
                     logManager.storageFactory.delete(name);
                     if (logManager.logger.isDebugEnabled()) {
@@ -3147,6 +4625,7 @@ public final class LogManagerImpl implements LogManager {
          * @see java.util.concurrent.Callable#call()
          */
         public void run() {
+            logManager.logWriterWakeup.set(false);
             if (logManager.isErrored() || logManager.isStopped()) {
                 return;
             }
@@ -3159,6 +4638,33 @@ public final class LogManagerImpl implements LogManager {
         }
     }
 
+    /**
+     * Services asynchronous flush requests; run periodically by the
+     * {@link LogManagerImpl#asyncFlushService}.
+     * 
+     * @see LogManagerImpl#flushAsync(Lsn)
+     */
+    static final class AsyncFlusher implements Runnable {
+
+        final private LogManagerImpl logManager;
+
+        public AsyncFlusher(LogManagerImpl log) {
+            this.logManager = log;
+        }
+
+        public void run() {
+            if (logManager.isErrored() || logManager.isStopped()) {
+                return;
+            }
+            try {
+                logManager.handleAsyncFlush();
+            } catch (Exception e) {
+                logManager.logException(AsyncFlusher.class, "run",
+                        m_EW0026, e);
+            }
+        }
+    }
+
     /**
      * Handles requests to create archive log files. Archive requests must be
      * handled sequentially in FIFO order to ensure that the logs are archived
@@ -3214,4 +4720,131 @@ public final class LogManagerImpl implements LogManager {
         return disableExplicitFlushRequests;
     }
 
-}
\ No newline at end of file
+    final static class LogManagerStatistics {
+
+        LongStatistic groupCommitFlushes;
+        LongStatistic groupCommitRequests;
+        LongStatistic groupCommitLastGroupSize;
+        LongStatistic groupCommitMaxGroupSize;
+        LongStatistic bufferStalls;
+        LongStatistic bufferStallTime;
+        LongStatistic readAheadBlocks;
+        LongStatistic readCacheHits;
+        LongStatistic readCacheMisses;
+        LongStatistic asyncFlushRequests;
+        LongStatistic asyncFlushes;
+        LongStatistic archivedFiles;
+        LongStatistic archiveLagFiles;
+        LongStatistic archiveLagBytes;
+
+        /**
+         * Total time in nanoseconds spent by inserters waiting for log
+         * buffers.
+         */
+        private long bufferStallNanos = 0;
+
+        LogManagerStatistics(InformationManager im) {
+            groupCommitFlushes = im
+                    .newLongStatistic("logmgr.groupCommit.flushes");
+            groupCommitRequests = im
+                    .newLongStatistic("logmgr.groupCommit.requests");
+            groupCommitLastGroupSize = im
+                    .newLongStatistic("logmgr.groupCommit.lastGroupSize");
+            groupCommitMaxGroupSize = im
+                    .newLongStatistic("logmgr.groupCommit.maxGroupSize");
+            bufferStalls = im.newLongStatistic("logmgr.bufferStalls");
+            bufferStallTime = im.newLongStatistic("logmgr.bufferStallTime");
+            readAheadBlocks = im
+                    .newLongStatistic("logmgr.readAhead.blockReads");
+            readCacheHits = im.newLongStatistic("logmgr.readCache.hits");
+            readCacheMisses = im.newLongStatistic("logmgr.readCache.misses");
+            asyncFlushRequests = im
+                    .newLongStatistic("logmgr.asyncFlush.requests");
+            asyncFlushes = im.newLongStatistic("logmgr.asyncFlush.flushes");
+            archivedFiles = im.newLongStatistic("logmgr.archive.files");
+            archiveLagFiles = im.newLongStatistic("logmgr.archive.lagFiles");
+            archiveLagBytes = im.newLongStatistic("logmgr.archive.lagBytes");
+        }
+
+        /**
+         * Records the completion of a group flush. Only the flusher of a group
+         * calls this, hence updates to the max group size do not race.
+         */
+        void recordGroupCommit(int groupSize) {
+            groupCommitFlushes.increment();
+            groupCommitRequests.set(groupCommitRequests.get() + groupSize);
+            groupCommitLastGroupSize.set(groupSize);
+            if (groupSize > groupCommitMaxGroupSize.get()) {
+                groupCommitMaxGroupSize.set(groupSize);
+            }
+        }
+
+        /**
+         * Records the time an inserter was stalled waiting for log buffers.
+         * The total stall time is maintained in milliseconds.
+         */
+        synchronized void recordBufferStall(long nanos) {
+            bufferStalls.increment();
+            bufferStallNanos += nanos;
+            bufferStallTime.set(TimeUnit.NANOSECONDS
+                    .toMillis(bufferStallNanos));
+        }
+
+        /**
+         * Records the number of full log files waiting to be archived.
+         */
+        void recordArchiveLag(int files, int logFileSize) {
+            archiveLagFiles.set(files);
+            archiveLagBytes.set((long) files * logFileSize);
+        }
+
+        public LongStatistic getGroupCommitFlushes() {
+            return groupCommitFlushes;
+        }
+
+        public LongStatistic getGroupCommitRequests() {
+            return groupCommitRequests;
+        }
+
+        public LongStatistic getBufferStalls() {
+            return bufferStalls;
+        }
+
+        public LongStatistic getBufferStallTime() {
+            return bufferStallTime;
+        }
+
+        public LongStatistic getReadAheadBlocks() {
+            return readAheadBlocks;
+        }
+
+        public LongStatistic getReadCacheHits() {
+            return readCacheHits;
+        }
+
+        public LongStatistic getReadCacheMisses() {
+            return readCacheMisses;
+        }
+
+        public LongStatistic getAsyncFlushRequests() {
+            return asyncFlushRequests;
+        }
+
+        public LongStatistic getAsyncFlushes() {
+            return asyncFlushes;
+        }
+
+        public LongStatistic getArchivedFiles() {
+            return archivedFiles;
+        }
+
+        public LongStatistic getArchiveLagFiles() {
+            return archiveLagFiles;
+        }
+
+        public LongStatistic getArchiveLagBytes() {
+            return archiveLagBytes;
+        }
+    }
+
+}
\ No newline at end of file
@@ -285,8 +285,10 @@ public class Server {
         moduleRegistry = new TransactionalModuleRegistryImpl(platform, props);
         lockManager = lockMgrFactory.create(latchFactory, props);
         logManager = logFactory.getLog();
-        bufferManager = new BufferManagerImpl(platform, logManager,
-                pageFactory, props);
+        BufferManagerImpl bufmgr = new BufferManagerImpl(platform,
+                logManager, pageFactory, props);
+        bufmgr.setStorageFactory(storageFactory);
+        bufferManager = bufmgr;
         transactionManager = new TransactionManagerImpl(platform, logManager,
                 storageFactory, storageManager, bufferManager, lockManager,
                 loggableFactory, latchFactory, objectRegistry, moduleRegistry,
@@ -541,6 +543,15 @@ public class Server {
         return getTransactionManager().begin(isolationMode);
     }
 
+    /**
+     * Begins a new transaction, optionally with asynchronous commit.
+     * 
+     * @see TransactionManager#begin(IsolationMode, boolean)
+     */
+    public Transaction begin(IsolationMode isolationMode, boolean asyncCommit) {
+        return getTransactionManager().begin(isolationMode, asyncCommit);
+    }
+
     /**
      * Creates a new Tuple Container.
      * 
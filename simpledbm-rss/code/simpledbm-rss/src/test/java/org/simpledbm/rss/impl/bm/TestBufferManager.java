@@ -34,15 +34,18 @@ package org.simpledbm.rss.impl.bm;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.Properties;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
+import org.simpledbm.common.api.info.LongStatistic;
 import org.simpledbm.common.api.registry.ObjectRegistry;
 import org.simpledbm.common.impl.registry.ObjectRegistryImpl;
 import org.simpledbm.junit.BaseTestCase;
 import org.simpledbm.rss.api.bm.BufferAccessBlock;
 import org.simpledbm.rss.api.bm.BufferManager;
+import org.simpledbm.rss.api.bm.BufferManagerException;
 import org.simpledbm.rss.api.latch.LatchFactory;
 import org.simpledbm.rss.api.pm.Page;
 import org.simpledbm.rss.api.pm.PageFactory;
@@ -701,6 +704,782 @@ public class TestBufferManager extends BaseTestCase {
         }
     }
 
+    /**
+     * Fixes the page in shared mode and returns true if it was found in the
+     * buffer pool.
+     */
+    private boolean fixAndCheckHit(BufferManagerImpl bufmgr, PageId pageId,
+            int hint) {
+        long hits = bufmgr.statistics.getCacheHits().get();
+        BufferAccessBlock bab = bufmgr.fixShared(pageId, hint);
+        bab.unfix();
+        return bufmgr.statistics.getCacheHits().get() == hits + 1;
+    }
+
+    /**
+     * The modules needed to run a Buffer Manager over newly created
+     * containers of MyPage pages. The containers are named testfile.dat,
+     * testfile2.dat and so on, and registered as containers 1, 2 and so on.
+     */
+    final class Fixture {
+        final Properties properties = new Properties();
+        final StorageContainerFactory storageFactory;
+        final ObjectRegistry objectFactory;
+        final StorageManager storageManager;
+        final PageManager pageFactory;
+        final String[] names;
+
+        /**
+         * @param containers Number of containers to create
+         * @param settings Additional properties, as pairs of name and value
+         */
+        Fixture(int containers, String... settings) {
+            properties.setProperty("storage.basePath",
+                    "testdata/TestBufferManager");
+            properties.setProperty("logging.properties.file",
+                    "classpath:simpledbm.logging.properties");
+            properties.setProperty("logging.properties.type", "log4j");
+            for (int i = 0; i < settings.length; i += 2) {
+                properties.setProperty(settings[i], settings[i + 1]);
+            }
+            storageFactory = new FileStorageContainerFactory(platform,
+                    properties);
+            objectFactory = new ObjectRegistryImpl(platform, properties);
+            storageManager = new StorageManagerImpl(platform, properties);
+            LatchFactory latchFactory = new LatchFactoryImpl(platform,
+                    properties);
+            pageFactory = new PageManagerImpl(platform, objectFactory,
+                    storageManager, latchFactory, properties);
+            objectFactory.registerSingleton(TYPE_MYPAGE,
+                    new MyPage.MyPageFactory(pageFactory));
+            names = new String[containers];
+            for (int c = 0; c < containers; c++) {
+                names[c] = c == 0 ? "testfile.dat" : "testfile" + (c + 1)
+                        + ".dat";
+                new File("testdata/TestBufferManager/" + names[c]).delete();
+                storageManager.register(c + 1, storageFactory
+                        .create(names[c]));
+            }
+        }
+
+        BufferManagerImpl newBufferManager() {
+            return new BufferManagerImpl(platform, null, pageFactory,
+                    properties);
+        }
+
+        void close() {
+            storageManager.shutdown();
+            for (String name : names) {
+                storageFactory.delete(name);
+            }
+        }
+    }
+
+    /**
+     * Creates pages from to to - 1 of the container, each holding its own
+     * page number, and leaves them dirty.
+     */
+    private static void createPages(BufferManager bufmgr, int containerId,
+            int from, int to) {
+        for (int i = from; i < to; i++) {
+            BufferAccessBlock bab = bufmgr.fixExclusive(new PageId(
+                    containerId, i), true, TYPE_MYPAGE, 0);
+            ((MyPage) bab.getPage()).i = i;
+            bab.setDirty(new Lsn());
+            bab.unfix();
+        }
+    }
+
+    /**
+     * Fixes the page in shared mode and checks that it holds the expected
+     * value.
+     */
+    private static void assertPage(BufferManager bufmgr, PageId pageId,
+            int hint, int expected) {
+        BufferAccessBlock bab = bufmgr.fixShared(pageId, hint);
+        try {
+            assertEquals(expected, ((MyPage) bab.getPage()).i);
+        } finally {
+            bab.unfix();
+        }
+    }
+
+    void doTestReplacementPolicy(String policy) throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "10",
+                "bufferpool.replacementPolicy", policy);
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            assertEquals(policy, bufmgr.statistics.replacementPolicy.get());
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 40);
+                bufmgr.writeBuffers();
+                /*
+                 * Make pages 0 and 1 hot.
+                 */
+                for (int i = 0; i < 3; i++) {
+                    fixAndCheckHit(bufmgr, new PageId(1, 0), 0);
+                    fixAndCheckHit(bufmgr, new PageId(1, 1), 0);
+                }
+                /*
+                 * A large sequential scan must not evict the hot pages.
+                 */
+                for (int i = 2; i < 40; i++) {
+                    fixAndCheckHit(bufmgr, new PageId(1, i),
+                            BufferManager.HINT_SEQUENTIAL);
+                }
+                assertTrue(fixAndCheckHit(bufmgr, new PageId(1, 0), 0));
+                assertTrue(fixAndCheckHit(bufmgr, new PageId(1, 1), 0));
+                if (policy.equals("2q")) {
+                    /*
+                     * Pages that are accessed again after eviction are
+                     * admitted to the main queue, after which even a scan
+                     * without the hint cannot evict them.
+                     */
+                    for (int i = 10; i < 22; i++) {
+                        fixAndCheckHit(bufmgr, new PageId(1, i), 0);
+                    }
+                    assertFalse(fixAndCheckHit(bufmgr, new PageId(1, 0), 0));
+                    assertFalse(fixAndCheckHit(bufmgr, new PageId(1, 1), 0));
+                    for (int i = 2; i < 40; i++) {
+                        fixAndCheckHit(bufmgr, new PageId(1, i), 0);
+                    }
+                    assertTrue(fixAndCheckHit(bufmgr, new PageId(1, 0), 0));
+                    assertTrue(fixAndCheckHit(bufmgr, new PageId(1, 1), 0));
+                }
+                assertPage(bufmgr, new PageId(1, 39), 0, 39);
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /*
+     * Test that the replacement policies keep frequently used pages in the
+     * buffer pool when pages are scanned sequentially.
+     */
+    public void testReplacementPolicy() throws Exception {
+        doTestReplacementPolicy("lru");
+        doTestReplacementPolicy("clock");
+        doTestReplacementPolicy("2q");
+    }
+
+    /*
+     * Test concurrent access to a buffer pool divided into partitions, and
+     * that dirty pages of all partitions are written out.
+     */
+    public void testPartitionedBufferPool() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "16",
+                "bufferpool.partitions", "4", "bufferpool.replacementPolicy",
+                "clock");
+        try {
+            final BufferManagerImpl bufmgr = fixture.newBufferManager();
+            assertEquals(4, bufmgr.statistics.partitions.get());
+            bufmgr.start();
+            try {
+                long dirtyBuffers = bufmgr.statistics.getDirtyBuffers().get();
+                createPages(bufmgr, 1, 0, 64);
+                assertTrue(bufmgr.statistics.getDirtyBuffers().get()
+                        > dirtyBuffers);
+                bufmgr.writeBuffers();
+                assertEquals(dirtyBuffers, bufmgr.statistics.getDirtyBuffers()
+                        .get());
+
+                Thread threads[] = new Thread[4];
+                for (int t = 0; t < threads.length; t++) {
+                    final int seed = t;
+                    threads[t] = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                Random random = new Random(seed);
+                                for (int i = 0; i < 1000; i++) {
+                                    int pageNumber = random.nextInt(64);
+                                    assertPage(bufmgr, new PageId(1,
+                                            pageNumber), 0, pageNumber);
+                                }
+                            } catch (Throwable e) {
+                                setThreadFailed(Thread.currentThread(), e);
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread t : threads) {
+                    t.join();
+                }
+                checkThreadFailures();
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Tests that pages survive eviction and reload when page images are held
+     * in off-heap frames.
+     */
+    public void testOffHeapFrames() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "8",
+                "bufferpool.offHeap", "true");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            assertEquals(8L * fixture.pageFactory.getPageSize(),
+                    bufmgr.statistics.offHeapBytes.get());
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 32);
+                /*
+                 * Update every other page, so that frames are reused for
+                 * both reading and writing different pages.
+                 */
+                for (int i = 0; i < 32; i += 2) {
+                    BufferAccessBlock bab = bufmgr.fixExclusive(new PageId(1,
+                            i), false, TYPE_MYPAGE, 0);
+                    assertEquals(i, ((MyPage) bab.getPage()).i);
+                    ((MyPage) bab.getPage()).i = i + 100;
+                    bab.setDirty(new Lsn());
+                    bab.unfix();
+                }
+                bufmgr.writeBuffers();
+                for (int i = 0; i < 32; i++) {
+                    assertPage(bufmgr, new PageId(1, i), 0, i % 2 == 0 ? i + 100
+                            : i);
+                }
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    public void testPrefetch() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "64");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 16);
+            } finally {
+                bufmgr.shutdown();
+            }
+
+            /*
+             * Start with an empty buffer pool, and ask for the pages to be
+             * read in the background. Page 100 does not exist; the request
+             * must be dropped quietly.
+             */
+            bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                bufmgr.prefetch(new PageId(1, 0), new PageId(1, 1),
+                        new PageId(1, 2), new PageId(1, 3), new PageId(1, 100));
+                for (int n = 0; n < 100
+                        && bufmgr.statistics.getPrefetchedPages().get() < 4; n++) {
+                    Thread.sleep(50);
+                }
+                assertEquals(1, bufmgr.statistics.getPrefetchRequests().get());
+                assertEquals(4, bufmgr.statistics.getPrefetchedPages().get());
+                long hits = bufmgr.statistics.getCacheHits().get();
+                for (int i = 0; i < 4; i++) {
+                    assertPage(bufmgr, new PageId(1, i), 0, i);
+                }
+                assertEquals(hits + 4, bufmgr.statistics.getCacheHits().get());
+
+                /*
+                 * Reading the following pages in order should trigger
+                 * read-ahead of pages 8 to 15 without an explicit request.
+                 */
+                for (int i = 4; i < 8; i++) {
+                    assertPage(bufmgr, new PageId(1, i),
+                            BufferManager.HINT_SEQUENTIAL, i);
+                }
+                for (int n = 0; n < 100
+                        && bufmgr.statistics.getPrefetchedPages().get() < 12; n++) {
+                    Thread.sleep(50);
+                }
+                assertEquals(12, bufmgr.statistics.getPrefetchedPages().get());
+                hits = bufmgr.statistics.getCacheHits().get();
+                for (int i = 8; i < 16; i++) {
+                    assertPage(bufmgr, new PageId(1, i),
+                            BufferManager.HINT_SEQUENTIAL, i);
+                }
+                assertEquals(hits + 8, bufmgr.statistics.getCacheHits().get());
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /*
+     * Test that dirty pages are written in page order, with adjacent pages
+     * combined into a single write, and that each container is written by
+     * its own writer thread.
+     */
+    public void testCoalescedWrites() throws Exception {
+        Fixture fixture = new Fixture(2, "bufferpool.numbuffers", "64",
+                "bufferpool.writerSleepInterval", "600000",
+                "bufferpool.writerThreads", "2", "bufferpool.writerMaxPages",
+                "8");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                /*
+                 * Create the pages in reverse order.
+                 */
+                for (int i = 19; i >= 0; i--) {
+                    for (int c = 1; c <= 2; c++) {
+                        BufferAccessBlock bab = bufmgr.fixExclusive(
+                                new PageId(c, i), true, TYPE_MYPAGE, 0);
+                        ((MyPage) bab.getPage()).i = c * 100 + i;
+                        bab.setDirty(new Lsn());
+                        bab.unfix();
+                    }
+                }
+                bufmgr.writeBuffers();
+                /*
+                 * 20 pages per container are written as runs of 8, 8 and 4
+                 * pages.
+                 */
+                assertEquals(40, bufmgr.statistics.getPagesWritten().get());
+                assertEquals(6, bufmgr.statistics.getWriteCalls().get());
+                assertEquals(0, bufmgr.statistics.getDirtyBuffers().get());
+
+                /*
+                 * A page that is in use cannot be written, and splits the
+                 * run; pages 0-9 and 11-19 need two writes each.
+                 */
+                for (int i = 0; i < 20; i++) {
+                    BufferAccessBlock bab = bufmgr.fixExclusive(new PageId(1,
+                            i), false, TYPE_MYPAGE, 0);
+                    ((MyPage) bab.getPage()).i = i;
+                    bab.setDirty(new Lsn());
+                    bab.unfix();
+                }
+                BufferAccessBlock bab = bufmgr.fixShared(new PageId(1, 10), 0);
+                try {
+                    bufmgr.writeBuffers();
+                } finally {
+                    bab.unfix();
+                }
+                assertEquals(59, bufmgr.statistics.getPagesWritten().get());
+                assertEquals(10, bufmgr.statistics.getWriteCalls().get());
+            } finally {
+                bufmgr.shutdown();
+            }
+
+            bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                for (int i = 0; i < 20; i++) {
+                    for (int c = 1; c <= 2; c++) {
+                        assertPage(bufmgr, new PageId(c, i), 0, c == 1 ? i
+                                : c * 100 + i);
+                    }
+                }
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /*
+     * Test that the pages in the buffer pool at shutdown are read back in
+     * when the buffer pool is next started.
+     */
+    public void testWarmup() throws Exception {
+        new File("testdata/TestBufferManager/bufferpool.warmup").delete();
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "64",
+                "bufferpool.warmupFile", "bufferpool.warmup",
+                "bufferpool.warmupSaveInterval", "0");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.setStorageFactory(fixture.storageFactory);
+            bufmgr.start();
+            try {
+                assertEquals(0, bufmgr.statistics.getWarmupPages().get());
+                createPages(bufmgr, 1, 0, 16);
+            } finally {
+                bufmgr.shutdown();
+            }
+            assertTrue(fixture.storageFactory.exists("bufferpool.warmup"));
+
+            bufmgr = fixture.newBufferManager();
+            bufmgr.setStorageFactory(fixture.storageFactory);
+            bufmgr.start();
+            try {
+                assertEquals(16, bufmgr.statistics.getWarmupPages().get());
+                for (int n = 0; n < 100
+                        && bufmgr.statistics.getWarmupPending().get() > 0; n++) {
+                    Thread.sleep(50);
+                }
+                assertEquals(0, bufmgr.statistics.getWarmupPending().get());
+                long hits = bufmgr.statistics.getCacheHits().get();
+                for (int i = 0; i < 16; i++) {
+                    assertPage(bufmgr, new PageId(1, i), 0, i);
+                }
+                assertEquals(hits + 16, bufmgr.statistics.getCacheHits().get());
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+            fixture.storageFactory.delete("bufferpool.warmup");
+        }
+    }
+
+    /*
+     * Test that the buffer pool can be resized while pages are being
+     * accessed, and that clean pages are evicted before dirty ones when it
+     * shrinks.
+     */
+    public void testResize() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "64",
+                "bufferpool.partitions", "2", "bufferpool.prefetchThreads",
+                "0", "bufferpool.writerSleepInterval", "600000");
+        try {
+            final BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 32);
+                bufmgr.writeBuffers();
+                createPages(bufmgr, 1, 32, 64);
+                assertEquals(32, bufmgr.statistics.getDirtyBuffers().get());
+                long written = bufmgr.statistics.getPagesWritten().get();
+                long hashsize = bufmgr.statistics.hashTableSize.get();
+
+                /*
+                 * Removing 16 buffers should only evict clean pages.
+                 */
+                assertEquals(48, bufmgr.resize(48));
+                assertEquals(48, bufmgr.statistics.bufferPoolSize.get());
+                assertEquals(written, bufmgr.statistics.getPagesWritten().get());
+                assertEquals(32, bufmgr.statistics.getDirtyBuffers().get());
+
+                /*
+                 * Now dirty pages must be written out as well.
+                 */
+                assertEquals(16, bufmgr.resize(16));
+                assertEquals(16, bufmgr.statistics.getDirtyBuffers().get());
+                assertEquals(written + 16, bufmgr.statistics
+                        .getPagesWritten().get());
+
+                /*
+                 * Grow the pool, rebuilding the hash tables, while another
+                 * thread reads pages.
+                 */
+                final Throwable[] error = new Throwable[1];
+                Thread reader = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int n = 0; n < 5; n++) {
+                                for (int i = 0; i < 64; i++) {
+                                    assertPage(bufmgr, new PageId(1, i), 0, i);
+                                }
+                            }
+                        } catch (Throwable e) {
+                            error[0] = e;
+                        }
+                    }
+                });
+                reader.start();
+                assertEquals(1000, bufmgr.resize(1000));
+                reader.join();
+                assertNull(error[0]);
+                assertTrue(bufmgr.statistics.hashTableSize.get() > hashsize);
+
+                /*
+                 * Pages evicted before the pool grew are read in again by the
+                 * first pass; after that all the pages must stay cached.
+                 */
+                long hits = 0;
+                for (int n = 0; n < 2; n++) {
+                    hits = bufmgr.statistics.getCacheHits().get();
+                    for (int i = 0; i < 64; i++) {
+                        assertPage(bufmgr, new PageId(1, i), 0, i);
+                    }
+                }
+                assertEquals(hits + 64, bufmgr.statistics.getCacheHits().get());
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Tests that a page fixed optimistically is validated against concurrent
+     * updates.
+     */
+    public void testOptimisticFix() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "10",
+                "bufferpool.prefetchThreads", "0");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                PageId pageId = new PageId(1, 0);
+                createPages(bufmgr, 1, 0, 1);
+
+                /*
+                 * Readers do not disturb an optimistic fix.
+                 */
+                BufferAccessBlock bab = bufmgr.fixOptimistic(pageId, 0);
+                assertFalse(bab.isLatchedShared());
+                assertEquals(0, ((MyPage) bab.getPage()).i);
+                BufferAccessBlock bab2 = bufmgr.fixShared(pageId, 0);
+                bab2.unfix();
+                assertTrue(bab.validate());
+                assertTrue(bab.validateAndLatchShared());
+                assertTrue(bab.isLatchedShared());
+                assertTrue(bab.validate());
+                bab.unfix();
+
+                /*
+                 * A writer invalidates it.
+                 */
+                bab = bufmgr.fixOptimistic(pageId, 0);
+                bab2 = bufmgr.fixExclusive(pageId, false, -1, 0);
+                assertFalse(bab.validate());
+                ((MyPage) bab2.getPage()).i = 2;
+                bab2.setDirty(new Lsn());
+                bab2.unfix();
+                assertFalse(bab.validate());
+                assertFalse(bab.validateAndLatchShared());
+                assertFalse(bab.isLatchedShared());
+                bab.unfix();
+
+                /*
+                 * An update latch that is not upgraded leaves the page as
+                 * it was.
+                 */
+                bab = bufmgr.fixOptimistic(pageId, 0);
+                bab2 = bufmgr.fixForUpdate(pageId, 0);
+                bab2.unfix();
+                assertTrue(bab.validate());
+                assertEquals(2, ((MyPage) bab.getPage()).i);
+                bab.unfix();
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Tests the open addressing hash table used to look up pages.
+     */
+    public void testHashTable() throws Exception {
+        BufferManagerImpl.BufferHashTable table = new BufferManagerImpl.BufferHashTable(
+                16);
+        BufferManagerImpl.BufferControlBlock bcbs[] = new BufferManagerImpl.BufferControlBlock[13];
+        for (int i = 0; i < bcbs.length; i++) {
+            bcbs[i] = new BufferManagerImpl.BufferControlBlock(new PageId(
+                    i % 2, i));
+        }
+        for (int i = 0; i < 12; i++) {
+            assertTrue(table.add(bcbs[i]));
+        }
+        /*
+         * Three quarters of the slots are used, so the table is full.
+         */
+        assertFalse(table.add(bcbs[12]));
+        for (int i = 0; i < 12; i++) {
+            assertSame(bcbs[i], table.find(BufferManagerImpl
+                    .pageKey(new PageId(i % 2, i))));
+        }
+        assertNull(table.find(BufferManagerImpl.pageKey(new PageId(1, 0))));
+
+        /*
+         * Removed slots are reused.
+         */
+        table.remove(bcbs[3]);
+        assertNull(table.find(bcbs[3].key));
+        assertTrue(table.add(bcbs[12]));
+        assertSame(bcbs[12], table.find(bcbs[12].key));
+        assertEquals(12, table.size);
+
+        /*
+         * Invalid BCBs are skipped, so that a page can be read in again
+         * after its container has been invalidated.
+         */
+        bcbs[5].setInvalid(true);
+        assertNull(table.find(bcbs[5].key));
+        table.remove(bcbs[12]);
+        BufferManagerImpl.BufferControlBlock bcb = new BufferManagerImpl.BufferControlBlock(
+                new PageId(1, 5));
+        assertTrue(table.add(bcb));
+        assertSame(bcb, table.find(bcb.key));
+
+        BufferManagerImpl.BufferHashTable bigger = new BufferManagerImpl.BufferHashTable(
+                BufferManagerImpl.BufferHashTable.capacityFor(table.size));
+        table.copyTo(bigger);
+        assertEquals(32, bigger.capacity());
+        assertEquals(12, bigger.size);
+        assertSame(bcb, bigger.find(bcb.key));
+        assertSame(bcbs[0], bigger.find(bcbs[0].key));
+    }
+
+    private long getStatistic(String name) {
+        LongStatistic statistic = (LongStatistic) platform.getInfoManager()
+                .getStatistic(name);
+        return statistic == null ? 0 : statistic.get();
+    }
+
+    /**
+     * Tests the statistics kept for each container and page type.
+     */
+    public void testPageGroupStatistics() throws Exception {
+        Fixture fixture = new Fixture(1, "bufferpool.numbuffers", "4",
+                "bufferpool.prefetchThreads", "0",
+                "bufferpool.writerSleepInterval", "600000",
+                "bufferpool.fixTiming", "true");
+        String container = "bufmgr.container.1.";
+        String pageType = "bufmgr.pageType." + TYPE_MYPAGE + ".";
+        long hits = getStatistic(container + "cacheHits");
+        long misses = getStatistic(container + "misses");
+        long evictions = getStatistic(container + "evictions");
+        long written = getStatistic(container + "pagesWritten");
+        long newPages = getStatistic(container + "newPages");
+        long timedFixes = getStatistic(container + "timedFixes");
+        long typeMisses = getStatistic(pageType + "misses");
+        long typeNewPages = getStatistic(pageType + "newPages");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 6);
+                assertPage(bufmgr, new PageId(1, 5), 0, 5);
+                assertEquals(hits + 1, getStatistic(container + "cacheHits"));
+                /*
+                 * New pages are not read, so they do not count as misses.
+                 */
+                assertEquals(misses, getStatistic(container + "misses"));
+                assertEquals(newPages + 6, getStatistic(container
+                        + "newPages"));
+                assertEquals(typeNewPages + 6, getStatistic(pageType
+                        + "newPages"));
+                /*
+                 * Only four pages fit, so two dirty pages had to be written
+                 * out and evicted.
+                 */
+                assertEquals(evictions + 2, getStatistic(container
+                        + "evictions"));
+                assertEquals(written + 2, getStatistic(container
+                        + "pagesWritten"));
+                /*
+                 * Page 0 was evicted, so it has to be read back.
+                 */
+                assertPage(bufmgr, new PageId(1, 0), 0, 0);
+                assertEquals(misses + 1, getStatistic(container + "misses"));
+                assertEquals(typeMisses + 1, getStatistic(pageType + "misses"));
+                assertTrue(getStatistic(container + "fixWaitNanos") > 0);
+                assertEquals(timedFixes + 8, getStatistic(container
+                        + "timedFixes"));
+                assertTrue(bufmgr.statistics.forPageType(TYPE_MYPAGE)
+                        .getAverageFixWaitNanos() > 0);
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Tests that pages of a container assigned to a named pool are not
+     * evicted by pages of containers in the default pool.
+     */
+    public void testBufferPools() throws Exception {
+        Fixture fixture = new Fixture(2, "bufferpool.numbuffers", "4",
+                "bufferpool.pools", "keep", "bufferpool.pool.keep.numbuffers",
+                "4", "bufferpool.pool.keep.containers", "2",
+                "bufferpool.prefetchThreads", "0",
+                "bufferpool.writerSleepInterval", "600000");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                assertEquals(8, bufmgr.statistics.bufferPoolSize.get());
+                assertEquals(4, getStatistic("bufmgr.pool.keep.bufferPoolSize"));
+                createPages(bufmgr, 2, 0, 4);
+                /*
+                 * Scanning container 1 recycles the default pool only.
+                 */
+                createPages(bufmgr, 1, 0, 20);
+                long hits = getStatistic("bufmgr.container.2.cacheHits");
+                for (int i = 0; i < 4; i++) {
+                    assertPage(bufmgr, new PageId(2, i), 0, i);
+                }
+                assertEquals(hits + 4,
+                        getStatistic("bufmgr.container.2.cacheHits"));
+                assertEquals(0, getStatistic("bufmgr.container.2.evictions"));
+
+                assertEquals(8, bufmgr.resize("keep", 8));
+                assertEquals(12, bufmgr.statistics.bufferPoolSize.get());
+                assertEquals(8, getStatistic("bufmgr.pool.keep.bufferPoolSize"));
+                try {
+                    bufmgr.resize("recycle", 8);
+                    fail("Unexpected success");
+                } catch (BufferManagerException e) {
+                    assertTrue(e.getMessage().contains("recycle"));
+                }
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
+    /**
+     * Tests that the writer keeps several writes in progress when the
+     * containers support asynchronous I/O.
+     */
+    public void testAsyncWrites() throws Exception {
+        Fixture fixture = new Fixture(1, "storage.ioMode", "async",
+                "storage.ioThreads", "4", "bufferpool.numbuffers", "64",
+                "bufferpool.writerMaxPages", "1",
+                "bufferpool.writerQueueDepth", "4",
+                "bufferpool.prefetchThreads", "0",
+                "bufferpool.writerSleepInterval", "600000");
+        try {
+            BufferManagerImpl bufmgr = fixture.newBufferManager();
+            bufmgr.start();
+            try {
+                createPages(bufmgr, 1, 0, 50);
+                long written = bufmgr.statistics.getPagesWritten().get();
+                long calls = bufmgr.statistics.getWriteCalls().get();
+                bufmgr.writeBuffers();
+                assertEquals(0, bufmgr.statistics.getDirtyBuffers().get());
+                assertEquals(written + 50, bufmgr.statistics.getPagesWritten()
+                        .get());
+                assertEquals(calls + 50, bufmgr.statistics.getWriteCalls()
+                        .get());
+                for (int i = 0; i < 50; i++) {
+                    MyPage page = (MyPage) fixture.pageFactory
+                            .retrieve(new PageId(1, i));
+                    assertEquals(i, page.i);
+                }
+            } finally {
+                bufmgr.shutdown();
+            }
+        } finally {
+            fixture.close();
+        }
+    }
+
     public static Test suite() {
         TestSuite suite = new TestSuite();
         suite.addTest(new TestBufferManager("testCase1"));
@@ -710,6 +1489,18 @@ public class TestBufferManager extends BaseTestCase {
         suite.addTest(new TestBufferManager("testCase5"));
         suite.addTest(new TestBufferManager("testCase6"));
         suite.addTest(new TestBufferManager("testCase7"));
+        suite.addTest(new TestBufferManager("testReplacementPolicy"));
+        suite.addTest(new TestBufferManager("testPartitionedBufferPool"));
+        suite.addTest(new TestBufferManager("testOffHeapFrames"));
+        suite.addTest(new TestBufferManager("testPrefetch"));
+        suite.addTest(new TestBufferManager("testCoalescedWrites"));
+        suite.addTest(new TestBufferManager("testWarmup"));
+        suite.addTest(new TestBufferManager("testResize"));
+        suite.addTest(new TestBufferManager("testOptimisticFix"));
+        suite.addTest(new TestBufferManager("testHashTable"));
+        suite.addTest(new TestBufferManager("testPageGroupStatistics"));
+        suite.addTest(new TestBufferManager("testBufferPools"));
+        suite.addTest(new TestBufferManager("testAsyncWrites"));
         return suite;
     }
 
@@ -44,9 +44,12 @@ import org.simpledbm.rss.api.latch.LatchFactory;
 import org.simpledbm.rss.api.pm.PageId;
 import org.simpledbm.rss.api.pm.PageManager;
 import org.simpledbm.rss.api.sp.SlottedPageManager;
+import org.simpledbm.rss.api.st.StorageContainer;
+import org.simpledbm.rss.api.st.StorageContainerFactory;
 import org.simpledbm.rss.api.st.StorageManager;
 import org.simpledbm.rss.impl.latch.LatchFactoryImpl;
 import org.simpledbm.rss.impl.pm.PageManagerImpl;
+import org.simpledbm.rss.impl.st.FileStorageContainerFactory;
 import org.simpledbm.rss.impl.st.StorageManagerImpl;
 
 public class TestSlottedPage extends BaseTestCase {
@@ -195,4 +198,120 @@ public class TestSlottedPage extends BaseTestCase {
         System.out.println(page.toString());
         SlottedPageImpl.TESTING = false;
     }
+
+    void assertSameItems(SlottedPageImpl expected, SlottedPageImpl actual) {
+        assertEquals(expected.getNumberOfSlots(), actual.getNumberOfSlots());
+        assertEquals(expected.getDeletedSlots(), actual.getDeletedSlots());
+        assertEquals(expected.getFreeSpace(), actual.getFreeSpace());
+        for (int i = 0; i < expected.getNumberOfSlots(); i++) {
+            assertEquals(expected.isSlotDeleted(i), actual.isSlotDeleted(i));
+            assertEquals(expected.getFlags(i), actual.getFlags(i));
+            if (!expected.isSlotDeleted(i)) {
+                assertEquals(expected.get(i, stringItemFactory).toString(),
+                        actual.get(i, stringItemFactory).toString());
+            }
+        }
+    }
+
+    /**
+     * Tests that a page read from a frame works directly on the frame's
+     * contents, and that the page is stored correctly when written back to the
+     * same frame.
+     */
+    public void testFrameView() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestSlottedPage");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        final ObjectRegistry objectFactory = new ObjectRegistryImpl(platform,
+                properties);
+        final StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        final StorageManager storageManager = new StorageManagerImpl(platform,
+                properties);
+        final LatchFactory latchFactory = new LatchFactoryImpl(platform,
+                properties);
+        final PageManager pageFactory = new PageManagerImpl(platform,
+                objectFactory, storageManager, latchFactory, properties);
+        final SlottedPageManager spmgr = new SlottedPageManagerImpl(platform,
+                objectFactory, pageFactory, properties);
+        StorageContainer sc = storageFactory.create("testfile.dat");
+        storageManager.register(1, sc);
+        try {
+            PageId pageId = new PageId(1, 0);
+            SlottedPageImpl page = (SlottedPageImpl) pageFactory.getInstance(
+                    spmgr.getPageType(), pageId);
+            page.latchExclusive();
+            for (int i = 0; i < 10; i++) {
+                page.insert(new StringItem("item " + i));
+            }
+            page.insertAt(3, new StringItem("inserted at 3"), false);
+            page.delete(5);
+            page.setFlags(1, (short) 3);
+            page.unlatchExclusive();
+
+            ByteBuffer frame = ByteBuffer.allocateDirect(pageFactory
+                    .getPageSize());
+            pageFactory.store(page, frame);
+            SlottedPageImpl page2 = (SlottedPageImpl) pageFactory.retrieve(
+                    pageId, frame);
+            assertSameItems(page, page2);
+
+            /*
+             * Modify the page in the frame, and write it back.
+             */
+            page2.latchExclusive();
+            page2.purge(0);
+            assertTrue(page2.isSlotDeleted(4));
+            page2.insertAt(4, new StringItem("reuses deleted slot"), false);
+            page2.insertAt(1, new StringItem("a longer item inserted at 1"),
+                    true);
+            page2.unlatchExclusive();
+            pageFactory.store(page2, frame);
+            SlottedPageImpl page3 = (SlottedPageImpl) pageFactory
+                    .retrieve(pageId);
+            assertSameItems(page2, page3);
+            assertEquals("reuses deleted slot", page3.get(4,
+                    stringItemFactory).toString());
+            assertEquals(3, page3.getFlags(0));
+        } finally {
+            storageManager.shutdown();
+            storageFactory.delete("testfile.dat");
+        }
+    }
+
+    /**
+     * Tests that peek returns null for invalid slots instead of reporting an
+     * error.
+     */
+    public void testPeek() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestSlottedPage");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        final ObjectRegistry objectFactory = new ObjectRegistryImpl(platform,
+                properties);
+        final StorageManager storageManager = new StorageManagerImpl(platform,
+                properties);
+        final LatchFactory latchFactory = new LatchFactoryImpl(platform,
+                properties);
+        final PageManager pageFactory = new PageManagerImpl(platform,
+                objectFactory, storageManager, latchFactory, properties);
+        final SlottedPageManager spmgr = new SlottedPageManagerImpl(platform,
+                objectFactory, pageFactory, properties);
+        SlottedPageImpl page = (SlottedPageImpl) pageFactory.getInstance(
+                spmgr.getPageType(), new PageId(1, 0));
+        page.latchExclusive();
+        for (int i = 0; i < 3; i++) {
+            page.insert(new StringItem("item " + i));
+        }
+        page.unlatchExclusive();
+        assertEquals("item 1", page.peek(1, stringItemFactory).toString());
+        assertNull(page.peek(-1, stringItemFactory));
+        assertNull(page.peek(3, stringItemFactory));
+        storageManager.shutdown();
+    }
 }
+
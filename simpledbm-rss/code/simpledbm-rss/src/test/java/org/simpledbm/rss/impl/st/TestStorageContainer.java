@@ -32,11 +32,16 @@
 package org.simpledbm.rss.impl.st;
 
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.simpledbm.junit.BaseTestCase;
+import org.simpledbm.rss.api.st.AsyncStorageContainer;
 import org.simpledbm.rss.api.st.StorageContainer;
 import org.simpledbm.rss.api.st.StorageContainerFactory;
 import org.simpledbm.rss.api.st.StorageContainerInfo;
@@ -122,6 +127,296 @@ public class TestStorageContainer extends BaseTestCase {
         assertFalse(file.exists());
     }
 
+    public void testGatheringWrite() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestStorageContainer");
+        final StorageContainerFactory factory = new FileStorageContainerFactory(
+                platform, properties);
+        StorageContainer sc = factory.create("testfile");
+        try {
+            ByteBuffer b1 = ByteBuffer.allocateDirect(10);
+            ByteBuffer b2 = ByteBuffer.allocate(20);
+            for (int i = 0; i < 10; i++) {
+                b1.put((byte) i);
+            }
+            for (int i = 10; i < 30; i++) {
+                b2.put((byte) i);
+            }
+            b1.flip();
+            b2.flip();
+            sc.write(5, new ByteBuffer[] { b1, b2 });
+            assertFalse(b1.hasRemaining());
+            assertFalse(b2.hasRemaining());
+            b1.rewind();
+            sc.write(35, new ByteBuffer[] { b1 });
+            byte[] data = new byte[45];
+            assertEquals(45, sc.read(0, data, 0, 45));
+            for (int i = 0; i < 30; i++) {
+                assertEquals(i, data[i + 5]);
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, data[i + 35]);
+            }
+        } finally {
+            sc.close();
+            factory.delete("testfile");
+        }
+    }
+
+    /**
+     * Tests the channel based container, with several threads reading and
+     * writing different parts of the same container at the same time.
+     */
+    public void testChannelContainer() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestStorageContainer");
+        properties.setProperty("storage.ioMode", "channel");
+        final StorageContainerFactory factory = new FileStorageContainerFactory(
+                platform, properties);
+        final StorageContainer sc = factory.create("testfile");
+        try {
+            assertTrue(sc instanceof ChannelStorageContainer);
+            ByteBuffer b1 = ByteBuffer.allocateDirect(10);
+            ByteBuffer b2 = ByteBuffer.allocate(20);
+            for (int i = 0; i < 30; i++) {
+                (i < 10 ? b1 : b2).put((byte) i);
+            }
+            b1.flip();
+            b2.flip();
+            sc.write(5, new ByteBuffer[] { b1, b2 });
+            byte[] data = new byte[35];
+            assertEquals(35, sc.read(0, data, 0, 35));
+            for (int i = 0; i < 30; i++) {
+                assertEquals(i, data[i + 5]);
+            }
+
+            final int blockSize = 512;
+            final int blocksPerThread = 50;
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int base = t * blocksPerThread;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            byte[] block = new byte[blockSize];
+                            for (int n = 0; n < 5; n++) {
+                                for (int i = base; i < base + blocksPerThread; i++) {
+                                    java.util.Arrays.fill(block, (byte) (i + n));
+                                    sc.write((long) i * blockSize, block, 0,
+                                            blockSize);
+                                    ByteBuffer buffer = ByteBuffer
+                                            .allocate(blockSize);
+                                    assertEquals(blockSize, sc.read((long) i
+                                            * blockSize, buffer));
+                                    for (int j = 0; j < blockSize; j++) {
+                                        assertEquals((byte) (i + n), buffer
+                                                .get(j));
+                                    }
+                                }
+                            }
+                        } catch (Throwable e) {
+                            setThreadFailed(Thread.currentThread(), e);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            checkThreadFailures();
+            assertEquals((long) threads.length * blocksPerThread * blockSize, sc
+                    .size());
+        } finally {
+            sc.close();
+            factory.delete("testfile");
+        }
+
+        properties.setProperty("storage.ioMode", "unknown");
+        try {
+            new FileStorageContainerFactory(platform, properties);
+            fail("Unexpected success");
+        } catch (StorageException e) {
+            assertEquals(25, e.getErrorCode());
+        }
+    }
+
+    /**
+     * Tests that a reader that is interrupted does not close the channel
+     * container for other threads.
+     */
+    public void testInterruptedRead() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestStorageContainer");
+        properties.setProperty("storage.ioMode", "channel");
+        final StorageContainerFactory factory = new FileStorageContainerFactory(
+                platform, properties);
+        final StorageContainer sc = factory.create("testfile");
+        try {
+            final int blockSize = 256;
+            final int blocks = 100;
+            byte[] block = new byte[blockSize];
+            for (int i = 0; i < blocks; i++) {
+                java.util.Arrays.fill(block, (byte) i);
+                sc.write((long) i * blockSize, block, 0, blockSize);
+            }
+            sc.lock();
+
+            /*
+             * A read by an interrupted thread succeeds, and the thread is
+             * still interrupted afterwards.
+             */
+            Thread.currentThread().interrupt();
+            ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+            assertEquals(blockSize, sc.read(blockSize, buffer));
+            assertTrue(Thread.interrupted());
+            assertEquals(1, buffer.get(0));
+
+            final Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int n = 0; n < 2000; n++) {
+                                int i = n % blocks;
+                                ByteBuffer buffer = ByteBuffer
+                                        .allocate(blockSize);
+                                assertEquals(blockSize, sc.read((long) i
+                                        * blockSize, buffer));
+                                for (int j = 0; j < blockSize; j++) {
+                                    assertEquals((byte) i, buffer.get(j));
+                                }
+                                Thread.interrupted();
+                            }
+                        } catch (Throwable e) {
+                            setThreadFailed(Thread.currentThread(), e);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (int n = 0; n < 20 && threads[0].isAlive(); n++) {
+                threads[0].interrupt();
+                Thread.sleep(1);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            checkThreadFailures();
+            assertEquals((long) blocks * blockSize, sc.size());
+            sc.unlock();
+        } finally {
+            sc.close();
+            factory.delete("testfile");
+        }
+    }
+
+    /**
+     * Tests asynchronous reads and writes, with many requests in progress at
+     * the same time.
+     */
+    public void testAsyncContainer() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestStorageContainer");
+        properties.setProperty("storage.ioMode", "async");
+        properties.setProperty("storage.ioThreads", "4");
+        final StorageContainerFactory factory = new FileStorageContainerFactory(
+                platform, properties);
+        StorageContainer sc = factory.create("testfile");
+        try {
+            assertTrue(sc instanceof AsyncStorageContainer);
+            AsyncStorageContainer asc = (AsyncStorageContainer) sc;
+            int blockSize = 256;
+            List<Future<Integer>> writes = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer buffer = ByteBuffer.allocate(blockSize);
+                while (buffer.hasRemaining()) {
+                    buffer.put((byte) i);
+                }
+                buffer.flip();
+                writes.add(asc.writeAsync((long) i * blockSize,
+                        new ByteBuffer[] { buffer }));
+            }
+            for (Future<Integer> write : writes) {
+                assertEquals(blockSize, write.get().intValue());
+            }
+            List<Future<Integer>> reads = new ArrayList<Future<Integer>>();
+            List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+            for (int i = 0; i < 100; i++) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(blockSize);
+                buffers.add(buffer);
+                reads.add(asc.readAsync((long) i * blockSize, buffer));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(blockSize, reads.get(i).get().intValue());
+                for (int j = 0; j < blockSize; j++) {
+                    assertEquals((byte) i, buffers.get(i).get(j));
+                }
+            }
+            assertEquals(-1, asc.readAsync(100 * blockSize,
+                    ByteBuffer.allocate(blockSize)).get().intValue());
+        } finally {
+            sc.close();
+            factory.delete("testfile");
+        }
+    }
+
+    /**
+     * Tests reads from a memory mapped container, including reads of data
+     * written after the file was mapped, and reads that span two mapped
+     * segments.
+     */
+    public void testMappedContainer() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestStorageContainer");
+        properties.setProperty("storage.mappedContainers", "other, testfile");
+        final StorageContainerFactory factory = new FileStorageContainerFactory(
+                platform, properties);
+        StorageContainer sc = factory.create("testfile");
+        try {
+            assertTrue(sc.toString().contains("mapped=true"));
+            byte[] data = new byte[100];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+            sc.write(0, data, 0, 50);
+            byte[] result = new byte[100];
+            assertEquals(50, sc.read(0, result, 0, 100));
+            assertEquals(49, result[49]);
+            sc.write(50, data, 50, 50);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(60);
+            assertEquals(60, sc.read(40, buffer));
+            for (int i = 0; i < 60; i++) {
+                assertEquals(i + 40, buffer.get(i));
+            }
+            assertEquals(-1, sc.read(100, ByteBuffer.allocate(10)));
+
+            long boundary = ChannelStorageContainer.MAP_SEGMENT_SIZE;
+            sc.write(boundary - 50, data, 0, 100);
+            assertEquals(boundary + 50, sc.size());
+            buffer = ByteBuffer.allocate(100);
+            assertEquals(100, sc.read(boundary - 50, buffer));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, buffer.get(i));
+            }
+            sc.close();
+
+            sc = factory.open("testfile");
+            assertTrue(sc.toString().contains("mapped=true"));
+            buffer = ByteBuffer.allocate(100);
+            assertEquals(100, sc.read(boundary - 50, buffer));
+            assertEquals(99, buffer.get(99));
+        } finally {
+            sc.close();
+            factory.delete("testfile");
+        }
+    }
+
     public void testCase3() throws Exception {
         Properties properties = new Properties();
         properties.setProperty("storage.basePath",
@@ -181,6 +476,11 @@ public class TestStorageContainer extends BaseTestCase {
         suite.addTest(new TestStorageContainer("testCreate"));
         suite.addTest(new TestStorageContainer("testCase2"));
         suite.addTest(new TestStorageContainer("testCase3"));
+        suite.addTest(new TestStorageContainer("testGatheringWrite"));
+        suite.addTest(new TestStorageContainer("testChannelContainer"));
+        suite.addTest(new TestStorageContainer("testInterruptedRead"));
+        suite.addTest(new TestStorageContainer("testAsyncContainer"));
+        suite.addTest(new TestStorageContainer("testMappedContainer"));
         return suite;
     }
 
@@ -1191,6 +1191,84 @@ public class TestTransactionManager2 extends BaseTestCase {
 
     }
 
+    public void testAsyncCommit() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath",
+                "testdata/TestTransactionManager2");
+        properties.setProperty("log.asyncFlush.interval", "20");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        final StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        final LogFactoryImpl logFactory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        final ObjectRegistry objectFactory = new ObjectRegistryImpl(platform,
+                properties);
+        final StorageManager storageManager = new StorageManagerImpl(platform,
+                properties);
+        final LatchFactory latchFactory = new LatchFactoryImpl(platform,
+                properties);
+        final PageManager pageFactory = new PageManagerImpl(platform,
+                objectFactory, storageManager, latchFactory, properties);
+        setupObjectFactory(objectFactory, pageFactory);
+        final LockMgrFactory lockmgrFactory = new LockManagerFactoryImpl(
+                platform, properties);
+        final LockManager lockmgr = lockmgrFactory.create(latchFactory,
+                properties);
+        final LogManager logmgr = logFactory.getLog();
+        logmgr.start();
+        final BufferManager bufmgr = new BufferManagerImpl(platform, logmgr,
+                pageFactory, 3, 11);
+        bufmgr.start();
+        final LoggableFactory loggableFactory = new LoggableFactoryImpl(
+                platform, objectFactory, properties);
+        final TransactionalModuleRegistry moduleRegistry = new TransactionalModuleRegistryImpl(
+                platform, properties);
+        final TransactionManagerImpl trxmgr = new TransactionManagerImpl(
+                platform, logmgr, storageFactory, storageManager, bufmgr,
+                lockmgr, loggableFactory, latchFactory, objectFactory,
+                moduleRegistry, properties);
+        OneBitMgr bitmgr = new OneBitMgr(storageFactory, storageManager,
+                pageFactory, bufmgr, loggableFactory, trxmgr, objectFactory);
+        moduleRegistry.registerModule(OneBitMgr.moduleId, bitmgr);
+        StorageContainer sc = storageFactory.open("dual");
+        storageManager.register(999, sc);
+        sc = storageFactory.open("bit.dat");
+        storageManager.register(1, sc);
+
+        try {
+            trxmgr.start();
+            Transaction trx = trxmgr.begin(IsolationMode.SERIALIZABLE, true);
+            bitmgr.changeBit(trx, 7, 55);
+            trx.commit();
+            /*
+             * The commit did not wait for the log flush, but the commit record
+             * must become durable in the background.
+             */
+            Lsn commitLsn = trx.getLastLsn();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (logmgr.getDurableLsn().compareTo(commitLsn) < 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(logmgr.getDurableLsn().compareTo(commitLsn) >= 0);
+
+            trx = trxmgr.begin(IsolationMode.SERIALIZABLE);
+            try {
+                assertEquals(55, bitmgr.getBit(trx, 7));
+            } finally {
+                trx.commit();
+            }
+        } finally {
+            trxmgr.shutdown();
+            bufmgr.shutdown();
+            logmgr.shutdown();
+            storageManager.shutdown();
+        }
+    }
+
     public static Test suite() {
         TestSuite suite = new TestSuite();
         suite.addTest(new TestTransactionManager2("testTrxMgrStart"));
@@ -1198,6 +1276,7 @@ public class TestTransactionManager2 extends BaseTestCase {
         suite.addTest(new TestTransactionManager2("testBitMgrSingleThread"));
         suite.addTest(new TestTransactionManager2("testBitMgrSingleThreadRestart"));
         suite.addTest(new TestTransactionManager2("testTrxLocking"));
+        suite.addTest(new TestTransactionManager2("testAsyncCommit"));
         return suite;
     }
 
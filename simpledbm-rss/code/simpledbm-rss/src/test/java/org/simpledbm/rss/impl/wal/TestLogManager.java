@@ -31,14 +31,17 @@
  */
 package org.simpledbm.rss.impl.wal;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.Properties;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.simpledbm.common.api.info.LongStatistic;
 import org.simpledbm.common.api.registry.Storable;
 import org.simpledbm.junit.BaseTestCase;
+import org.simpledbm.rss.api.st.StorageContainer;
 import org.simpledbm.rss.api.st.StorageContainerFactory;
 import org.simpledbm.rss.api.wal.LogFactory;
 import org.simpledbm.rss.api.wal.LogManager;
@@ -346,6 +349,674 @@ public class TestLogManager extends BaseTestCase {
         }
     }
 
+    public void testGroupCommit() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("log.groupCommit", "true");
+        properties.setProperty("log.groupCommit.maxWait", "1000");
+        properties.setProperty("log.groupCommit.maxBatch", "4");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory, properties);
+        final LogManager log = factory.getLog();
+        log.start();
+        try {
+            final int nthreads = 8;
+            final int n = 50;
+            Thread threads[] = new Thread[nthreads];
+            for (int t = 0; t < nthreads; t++) {
+                final int startNo = t * n;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            byte[] data = new byte[22];
+                            ByteBuffer bb = ByteBuffer.wrap(data);
+                            MyRecord trec = new MyRecord(0);
+                            for (int i = startNo; i < startNo + n; i++) {
+                                bb.clear();
+                                trec.id = i;
+                                trec.store(bb);
+                                Lsn lsn = log.insert(data, data.length);
+                                log.flush(lsn);
+                                assertTrue(lsn.compareTo(log.getDurableLsn()) <= 0);
+                            }
+                        } catch (Throwable e) {
+                            setThreadFailed(Thread.currentThread(), e);
+                        }
+                    }
+                }, "Committer" + t);
+            }
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].start();
+            }
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].join();
+            }
+            checkThreadFailures();
+            long flushes = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.groupCommit.flushes")).get();
+            assertTrue(flushes > 0);
+            assertTrue(flushes <= nthreads * n);
+            /*
+             * Requesters that found their Lsn durable must have withdrawn
+             * from the pending group.
+             */
+            assertEquals(0, ((LogManagerImpl) log)
+                    .getGroupCommitPendingCount());
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    /**
+     * Storage container factory that records the durable Lsn of the log at
+     * the first time a container is forced.
+     */
+    static class ForceRecordingFactory implements StorageContainerFactory {
+        final StorageContainerFactory factory;
+        volatile LogManager log;
+        volatile Lsn durableAtForce;
+
+        ForceRecordingFactory(StorageContainerFactory factory) {
+            this.factory = factory;
+        }
+
+        StorageContainer wrap(final StorageContainer sc) {
+            return new StorageContainer() {
+                public String getName() {
+                    return sc.getName();
+                }
+
+                public void write(long position, byte[] buffer,
+                        int bufferOffset, int length) {
+                    sc.write(position, buffer, bufferOffset, length);
+                }
+
+                public void write(long position, ByteBuffer[] buffers) {
+                    sc.write(position, buffers);
+                }
+
+                public int read(long position, byte[] buffer,
+                        int bufferOffset, int length) {
+                    return sc.read(position, buffer, bufferOffset, length);
+                }
+
+                public int read(long position, ByteBuffer buffer) {
+                    return sc.read(position, buffer);
+                }
+
+                public long size() {
+                    return sc.size();
+                }
+
+                public void flush() {
+                    LogManager l = log;
+                    if (l != null && durableAtForce == null) {
+                        durableAtForce = l.getDurableLsn();
+                    }
+                    sc.flush();
+                }
+
+                public void lock() {
+                    sc.lock();
+                }
+
+                public void unlock() {
+                    sc.unlock();
+                }
+
+                public void close() {
+                    sc.close();
+                }
+            };
+        }
+
+        public void init() {
+            factory.init();
+        }
+
+        public StorageContainer create(String name) {
+            return wrap(factory.create(name));
+        }
+
+        public StorageContainer createIfNotExisting(String name) {
+            return wrap(factory.createIfNotExisting(name));
+        }
+
+        public StorageContainer open(String name) {
+            return wrap(factory.open(name));
+        }
+
+        public boolean exists(String name) {
+            return factory.exists(name);
+        }
+
+        public void delete(String name) {
+            factory.delete(name);
+        }
+
+        public void drop() {
+            factory.drop();
+        }
+    }
+
+    /**
+     * Tests that a group commit publishes the durable Lsn only after the log
+     * file has been forced.
+     */
+    public void testGroupCommitForce() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("log.groupCommit", "true");
+        properties.setProperty("log.groupCommit.maxWait", "0");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        ForceRecordingFactory storageFactory = new ForceRecordingFactory(
+                new FileStorageContainerFactory(platform, properties));
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        LogManager log = factory.getLog();
+        log.start();
+        storageFactory.log = log;
+        try {
+            byte[] data = new byte[22];
+            ByteBuffer bb = ByteBuffer.wrap(data);
+            MyRecord trec = new MyRecord(0);
+            int forces = 0;
+            for (int i = 0; i < 20; i++) {
+                bb.clear();
+                trec.id = i;
+                trec.store(bb);
+                Lsn lsn = log.insert(data, data.length);
+                storageFactory.durableAtForce = null;
+                log.flush(lsn);
+                assertTrue(lsn.compareTo(log.getDurableLsn()) <= 0);
+                Lsn durableAtForce = storageFactory.durableAtForce;
+                if (durableAtForce != null) {
+                    /*
+                     * The log may also have been written by the log writer,
+                     * in which case there is nothing to force.
+                     */
+                    assertTrue(durableAtForce.compareTo(lsn) < 0);
+                    forces++;
+                }
+            }
+            assertTrue(forces > 0);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testConcurrentInserts() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory, properties);
+        final LogManager log = factory.getLog();
+        log.start();
+        try {
+            final int nthreads = 8;
+            final int n = 100;
+            Thread threads[] = new Thread[nthreads];
+            for (int t = 0; t < nthreads; t++) {
+                final int startNo = t * n;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            byte[] data = new byte[22];
+                            ByteBuffer bb = ByteBuffer.wrap(data);
+                            MyRecord trec = new MyRecord(0);
+                            Lsn prevLsn = new Lsn();
+                            for (int i = startNo; i < startNo + n; i++) {
+                                bb.clear();
+                                trec.id = i;
+                                trec.store(bb);
+                                Lsn lsn = log.insert(data, data.length);
+                                assertTrue(lsn.compareTo(prevLsn) > 0);
+                                prevLsn = lsn;
+                            }
+                        } catch (Throwable e) {
+                            setThreadFailed(Thread.currentThread(), e);
+                        }
+                    }
+                }, "Inserter" + t);
+            }
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].start();
+            }
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].join();
+            }
+            checkThreadFailures();
+            log.flush();
+
+            // Every record must be present exactly once, in Lsn order
+            boolean found[] = new boolean[nthreads * n];
+            int count = 0;
+            Lsn lastLsn = new Lsn();
+            LogReader reader = log.getForwardScanningReader(null);
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                assertTrue(rec.getLsn().compareTo(lastLsn) > 0);
+                lastLsn = rec.getLsn();
+                if (rec.getDataLength() != 22) {
+                    // record created by testCreate()
+                    continue;
+                }
+                MyRecord trec = new MyRecord(0);
+                trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                assertFalse(found[trec.id]);
+                found[trec.id] = true;
+                count++;
+            }
+            reader.close();
+            assertEquals(nthreads * n, count);
+            assertEquals(log.getMaxLsn(), lastLsn);
+
+            // The prevLsn chain must link all the records
+            int backwardCount = 0;
+            reader = log.getBackwardScanningReader(log.getMaxLsn());
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                if (rec.getDataLength() == 22) {
+                    backwardCount++;
+                }
+            }
+            reader.close();
+            assertEquals(count, backwardCount);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testLogBufferStalls() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("log.buffer.limit", "2");
+        properties.setProperty("log.flush.interval", "30");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory, properties);
+        final LogManager log = factory.getLog();
+        log.start();
+        try {
+            final int nthreads = 4;
+            final int n = 200;
+            Thread threads[] = new Thread[nthreads];
+            for (int t = 0; t < nthreads; t++) {
+                final int startNo = t * n;
+                threads[t] = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            insertRecords(log, startNo, startNo + n);
+                        } catch (Throwable e) {
+                            setThreadFailed(Thread.currentThread(), e);
+                        }
+                    }
+                }, "Inserter" + t);
+            }
+            long startTime = System.currentTimeMillis();
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].start();
+            }
+            for (int t = 0; t < nthreads; t++) {
+                threads[t].join();
+            }
+            checkThreadFailures();
+            /*
+             * The periodic Log Writer would not have run yet, so the inserters
+             * must have woken it up when they ran out of buffers.
+             */
+            assertTrue(System.currentTimeMillis() - startTime < 30000);
+            long stalls = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.bufferStalls")).get();
+            assertTrue(stalls > 0);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testLogBufferIndex() throws Exception {
+        Lsn startLsn = new Lsn(5, LogManagerImpl.FIRST_LSN.getOffset());
+        LogManagerImpl.LogBuffer buf = new LogManagerImpl.LogBuffer(ByteBuffer
+                .allocateDirect(65536), startLsn, new Lsn());
+        byte[] data = new byte[22];
+        int n = 1000;
+        Lsn lsns[] = new Lsn[n];
+        for (int i = 0; i < n; i++) {
+            long r = buf.reserve(LogManagerImpl.calculateLogRecordSize(i % 23),
+                    Integer.MAX_VALUE);
+            assertTrue(r != LogManagerImpl.LogBuffer.NO_SPACE);
+            lsns[i] = buf.getNextLsn(r);
+            buf.insert(lsns[i], data, i % 23, buf.getPrevLsn(r));
+            buf.publish(lsns[i].getOffset(), LogManagerImpl
+                    .calculateLogRecordSize(i % 23));
+        }
+        assertEquals(n, buf.getRecordCount());
+        for (int i = 0; i < n; i++) {
+            int slot = buf.find(lsns[i]);
+            assertEquals(i, slot);
+            assertEquals(lsns[i], buf.getRecordLsn(slot));
+            assertEquals(LogManagerImpl.calculateLogRecordSize(i % 23), buf
+                    .getRecordLength(slot));
+            assertEquals(i + 1, buf.findNext(lsns[i], n));
+            assertEquals(-1, buf.find(new Lsn(lsns[i].getIndex(), lsns[i]
+                    .getOffset() + 1)));
+        }
+        assertEquals(-1, buf.find(new Lsn(4, lsns[0].getOffset())));
+        assertEquals(0, buf.findNext(new Lsn(), n));
+        assertEquals(n, buf.findNext(new Lsn(6, 0), n));
+    }
+
+    public void testReadAhead() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        /*
+         * Use a block size that is not a multiple of the record size, so that
+         * records straddle blocks.
+         */
+        properties.setProperty("log.readAhead.size", "500");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        final int n = 1000;
+        LogManager log = factory.getLog();
+        log.start();
+        try {
+            insertRecords(log, 0, n);
+        } finally {
+            log.shutdown();
+        }
+
+        log = factory.getLog();
+        log.start();
+        try {
+            int count = 0;
+            Lsn lastLsn = new Lsn();
+            LogReader reader = log.getForwardScanningReader(null);
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                assertTrue(rec.getLsn().compareTo(lastLsn) > 0);
+                lastLsn = rec.getLsn();
+                if (rec.getDataLength() != 22) {
+                    // record created by testCreate()
+                    continue;
+                }
+                MyRecord trec = new MyRecord(0);
+                trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                assertEquals(count, trec.id);
+                count++;
+            }
+            reader.close();
+            assertEquals(n, count);
+            assertEquals(log.getMaxLsn(), lastLsn);
+            long blocks = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.readAhead.blockReads")).get();
+            assertTrue(blocks > 0);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testReadCache() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        /*
+         * Use a block size that is not a multiple of the record size, so that
+         * records straddle blocks, and few enough blocks to cause evictions.
+         */
+        properties.setProperty("log.readCache.blocks", "4");
+        properties.setProperty("log.readCache.blockSize", "500");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        final int n = 1000;
+        LogManager log = factory.getLog();
+        log.start();
+        try {
+            insertRecords(log, 0, n);
+            log.flush();
+            for (int pass = 0; pass < 2; pass++) {
+                int count = 0;
+                LogReader reader = log.getBackwardScanningReader(log
+                        .getMaxLsn());
+                for (;;) {
+                    LogRecord rec = reader.getNext();
+                    if (rec == null) {
+                        break;
+                    }
+                    if (rec.getDataLength() != 22) {
+                        // record created by testCreate()
+                        continue;
+                    }
+                    MyRecord trec = new MyRecord(0);
+                    trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                    assertEquals(n - count - 1, trec.id);
+                    count++;
+                }
+                reader.close();
+                assertEquals(n, count);
+            }
+            long hits = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.readCache.hits")).get();
+            long misses = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.readCache.misses")).get();
+            assertTrue(hits > misses);
+            assertTrue(misses > 0);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testFlushAsync() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("log.asyncFlush.interval", "20");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        LogManager log = factory.getLog();
+        log.start();
+        try {
+            byte[] data = new byte[22];
+            Lsn lsn = null;
+            for (int i = 0; i < 10; i++) {
+                lsn = log.insert(data, data.length);
+                log.flushAsync(lsn);
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (log.getDurableLsn().compareTo(lsn) < 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(lsn, log.getDurableLsn());
+            long flushes = ((LongStatistic) platform.getInfoManager()
+                    .getStatistic("logmgr.asyncFlush.flushes")).get();
+            assertTrue(flushes > 0);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testLogFilePreallocation() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("log.ctl.1", "ctl.a");
+        properties.setProperty("log.ctl.2", "ctl.b");
+        properties.setProperty("log.groups.1.path", ".");
+        properties.setProperty("log.archive.path", ".");
+        properties.setProperty("log.group.files", "3");
+        properties.setProperty("log.file.size", "65536");
+        properties.setProperty("log.buffer.size", "16384");
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        factory.createLog();
+        for (int i = 0; i < 3; i++) {
+            File file = new File("testdata/TestLogManager/a." + i);
+            assertEquals(65536, file.length());
+        }
+
+        LogManager log = factory.getLog();
+        log.start();
+        final int n = 3000; // enough to recycle the log files
+        try {
+            insertRecords(log, 0, n);
+            log.flush();
+        } finally {
+            log.shutdown();
+        }
+        for (int i = 0; i < 3; i++) {
+            File file = new File("testdata/TestLogManager/a." + i);
+            assertEquals(65536, file.length());
+        }
+
+        log = factory.getLog();
+        log.start();
+        try {
+            int count = 0;
+            LogReader reader = log.getForwardScanningReader(null);
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                MyRecord trec = new MyRecord(0);
+                trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                assertEquals(count, trec.id);
+                count++;
+            }
+            reader.close();
+            assertEquals(n, count);
+        } finally {
+            log.shutdown();
+        }
+    }
+
+    public void testArchiveCompression() throws Exception {
+        testCreate(); // create a fresh log.
+
+        Properties properties = new Properties();
+        properties.setProperty("storage.basePath", "testdata/TestLogManager");
+        properties.setProperty("log.archive.compress", "true");
+        properties.setProperty("log.archive.threads", "3");
+        properties.setProperty("logging.properties.file",
+                "classpath:simpledbm.logging.properties");
+        properties.setProperty("logging.properties.type", "log4j");
+        StorageContainerFactory storageFactory = new FileStorageContainerFactory(
+                platform, properties);
+        LogFactory factory = new LogFactoryImpl(platform, storageFactory,
+                properties);
+        final int n = 1000;
+        LogManager log = factory.getLog();
+        log.start();
+        try {
+            insertRecords(log, 0, n);
+            log.flush();
+        } finally {
+            log.shutdown();
+        }
+        assertTrue(storageFactory.exists("./1.log.z"));
+        long archived = ((LongStatistic) platform.getInfoManager()
+                .getStatistic("logmgr.archive.files")).get();
+        assertTrue(archived > 0);
+
+        /*
+         * Read all the records, most of which are now in compressed archive
+         * log files, forwards and backwards.
+         */
+        log = factory.getLog();
+        log.start();
+        try {
+            int count = 0;
+            LogReader reader = log.getForwardScanningReader(null);
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                if (rec.getDataLength() != 22) {
+                    // record created by testCreate()
+                    continue;
+                }
+                MyRecord trec = new MyRecord(0);
+                trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                assertEquals(count, trec.id);
+                count++;
+            }
+            reader.close();
+            assertEquals(n, count);
+            reader = log.getBackwardScanningReader(log.getMaxLsn());
+            for (;;) {
+                LogRecord rec = reader.getNext();
+                if (rec == null) {
+                    break;
+                }
+                if (rec.getDataLength() != 22) {
+                    continue;
+                }
+                MyRecord trec = new MyRecord(0);
+                trec.retrieve(ByteBuffer.wrap(rec.getData()));
+                count--;
+                assertEquals(count, trec.id);
+            }
+            reader.close();
+            assertEquals(0, count);
+        } finally {
+            log.shutdown();
+        }
+    }
+
     public static Test suite() {
         TestSuite suite = new TestSuite();
         suite.addTest(new TestLogManager("testCreate2"));
@@ -355,6 +1026,16 @@ public class TestLogManager extends BaseTestCase {
         suite.addTest(new TestLogManager("testReadOne"));
         suite.addTest(new TestLogManager("testLogSwitch"));
         suite.addTest(new TestLogManager("testReadAfterLogSwitch"));
+        suite.addTest(new TestLogManager("testGroupCommit"));
+        suite.addTest(new TestLogManager("testGroupCommitForce"));
+        suite.addTest(new TestLogManager("testConcurrentInserts"));
+        suite.addTest(new TestLogManager("testLogBufferStalls"));
+        suite.addTest(new TestLogManager("testLogBufferIndex"));
+        suite.addTest(new TestLogManager("testReadAhead"));
+        suite.addTest(new TestLogManager("testReadCache"));
+        suite.addTest(new TestLogManager("testFlushAsync"));
+        suite.addTest(new TestLogManager("testLogFilePreallocation"));
+        suite.addTest(new TestLogManager("testArchiveCompression"));
         //		suite.addTest(new LogTests("testMultipleThreads"));
         return suite;
     }
@@ -516,4 +1197,4 @@ class MyRecord implements Storable {
     }
 
 
-}
\ No newline at end of file
+}
\ No newline at end of file